@@ -0,0 +1,217 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.jogl.DDSImage;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Non-blocking variants of the {@link JDDS} entry points, returning {@link CompletableFuture}s.
+ * Files are read and written with {@link AsynchronousFileChannel}s whose completion handlers run on
+ * the I/O executor, parsing, decoding and compressing run on the CPU executor, so no event loop thread
+ * is blocked. A bounded CPU executor, e.g. a ThreadPoolExecutor with a bounded queue, limits the
+ * textures processed at once: submissions beyond it fail with a RejectedExecutionException.
+ * <p>
+ * Requires Java 8, the blocking methods of {@link JDDS} keep working on Java 7.
+ * Instances are immutable and thread-safe.
+ */
+public final class JDDSAsync {
+
+	private static final Set<StandardOpenOption> READ = EnumSet.of(StandardOpenOption.READ);
+	private static final Set<StandardOpenOption> WRITE = EnumSet.of(StandardOpenOption.WRITE,
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+	private final ExecutorService ioExecutor;
+	private final Executor cpuExecutor;
+
+	/**
+	 * Uses the default thread pool of the asynchronous channels and the common {@link ForkJoinPool}.
+	 */
+	public JDDSAsync() {
+		this(null, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param ioExecutor  runs the completion handlers of the file channels, null for the default thread pool
+	 * @param cpuExecutor runs parsing, decoding and compressing
+	 */
+	public JDDSAsync(final ExecutorService ioExecutor, final Executor cpuExecutor) {
+		if (cpuExecutor == null)
+			throw new NullPointerException("cpuExecutor");
+		this.ioExecutor = ioExecutor;
+		this.cpuExecutor = cpuExecutor;
+	}
+
+	/**
+	 * Reads a dds-file into memory and parses it.
+	 */
+	public CompletableFuture<DDSImage> readAsync(final Path file) {
+		return readFile(file).thenApplyAsync(data -> {
+			try {
+				return DDSImage.read(data);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, cpuExecutor);
+	}
+
+	/**
+	 * Reads a dds-file into memory and decodes its topmost MipMap, like {@link JDDS#read(File)}.
+	 */
+	public CompletableFuture<BufferedImage> readImageAsync(final Path file) {
+		return readFile(file).thenApplyAsync(data -> {
+			try {
+				return JDDS.loadBufferedImage(DDSImage.read(data));
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, cpuExecutor);
+	}
+
+	/**
+	 * Compresses an image into a {@link DDSImage} held in memory.
+	 *
+	 * @see JDDS#createDDSImage(BufferedImage, int, boolean)
+	 */
+	public CompletableFuture<DDSImage> compressAsync(final BufferedImage image,
+													 final int pixelformat,
+													 final boolean generateMipMaps) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return JDDS.createDDSImage(image, pixelformat, generateMipMaps);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, cpuExecutor);
+	}
+
+	/**
+	 * Writes the image to a file, replacing it if it exists.
+	 * The future completes once the file is forced to the storage device.
+	 */
+	public CompletableFuture<Void> writeAsync(final Path file, final DDSImage image) {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		try {
+			AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, WRITE, ioExecutor);
+			write(channel, image.getFileBuffers(), 0, 0, result);
+		} catch (IOException | RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Compresses an image and writes it to a file, like {@link JDDS#write(File, BufferedImage, int, boolean)}.
+	 */
+	public CompletableFuture<Void> writeAsync(final Path file,
+											  final BufferedImage image,
+											  final int pixelformat,
+											  final boolean generateMipMaps) {
+		return compressAsync(image, pixelformat, generateMipMaps).thenCompose(dds -> writeAsync(file, dds));
+	}
+
+	private CompletableFuture<ByteBuffer> readFile(final Path file) {
+		CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+		try {
+			AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, READ, ioExecutor);
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				close(channel, null);
+				throw new IOException(file + " is too large: " + size + " bytes");
+			}
+			read(channel, ByteBuffer.allocate((int) size), result);
+		} catch (IOException | RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads until the target is full, then closes the channel and completes the result with the flipped target.
+	 */
+	private static void read(final AsynchronousFileChannel channel,
+							 final ByteBuffer target,
+							 final CompletableFuture<ByteBuffer> result) {
+		if (!target.hasRemaining()) {
+			target.flip();
+			if (close(channel, result))
+				result.complete(target);
+			return;
+		}
+		channel.read(target, target.position(), null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(final Integer count, final Void attachment) {
+				if (count < 0) {
+					failed(new EOFException("File ended " + target.remaining() + " bytes early"), null);
+					return;
+				}
+				read(channel, target, result);
+			}
+
+			@Override
+			public void failed(final Throwable e, final Void attachment) {
+				close(channel, null);
+				result.completeExceptionally(e);
+			}
+		});
+	}
+
+	/**
+	 * Writes the buffers one after another starting at position,
+	 * then forces and closes the channel and completes the result.
+	 */
+	private static void write(final AsynchronousFileChannel channel,
+							  final ByteBuffer[] buffers,
+							  int index,
+							  final long position,
+							  final CompletableFuture<Void> result) {
+		while (index < buffers.length && !buffers[index].hasRemaining())
+			index++;
+		if (index == buffers.length) {
+			try {
+				channel.force(true);
+			} catch (IOException e) {
+				close(channel, null);
+				result.completeExceptionally(e);
+				return;
+			}
+			if (close(channel, result))
+				result.complete(null);
+			return;
+		}
+		final int current = index;
+		channel.write(buffers[current], position, null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(final Integer count, final Void attachment) {
+				write(channel, buffers, current, position + count, result);
+			}
+
+			@Override
+			public void failed(final Throwable e, final Void attachment) {
+				close(channel, null);
+				result.completeExceptionally(e);
+			}
+		});
+	}
+
+	/**
+	 * @param result completed exceptionally if closing fails, may be null
+	 * @return true if the channel was closed
+	 */
+	private static boolean close(final AsynchronousFileChannel channel, final CompletableFuture<?> result) {
+		try {
+			channel.close();
+			return true;
+		} catch (IOException e) {
+			if (result != null)
+				result.completeExceptionally(e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package me.nallar.jdds.internal.jfr;
+
+import jdk.jfr.*;
+import me.nallar.jdds.JDDSMetrics;
+import me.nallar.jdds.internal.ddsutil.PixelFormats;
+
+
+/**
+ * Emits a Java Flight Recorder event for every stage, named jdds.FileRead, jdds.HeaderParse,
+ * jdds.Decode, jdds.Convert, jdds.MipGenerate, jdds.Encode and jdds.FileWrite.
+ * Stages of event types which aren't enabled in a running recording create no event.
+ * <p>
+ * Only loaded by {@link me.nallar.jdds.internal.ddsutil.StageTimer} if jdk.jfr is available.
+ */
+public final class JFRMetrics implements JDDSMetrics {
+
+	private final EventType[] types = new EventType[Stage.values().length];
+
+	public JFRMetrics() {
+		for (Stage stage : Stage.values())
+			types[stage.ordinal()] = EventType.getEventType(create(stage).getClass());
+	}
+
+	private static StageEvent create(final Stage stage) {
+		switch (stage) {
+			case READ:
+				return new StageEvent.FileRead();
+			case HEADER:
+				return new StageEvent.HeaderParse();
+			case DECODE:
+				return new StageEvent.Decode();
+			case CONVERT:
+				return new StageEvent.Convert();
+			case MIPMAPS:
+				return new StageEvent.MipGenerate();
+			case COMPRESS:
+				return new StageEvent.Encode();
+			default:
+				return new StageEvent.FileWrite();
+		}
+	}
+
+	@Override
+	public Object begin(final Stage stage) {
+		if (!types[stage.ordinal()].isEnabled())
+			return null;
+		StageEvent event = create(stage);
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void end(final Object context, final Stage stage, final long nanos,
+					final int format, final int width, final int height, final int level, final long bytes) {
+		if (context == null)
+			return;
+		StageEvent event = (StageEvent) context;
+		event.end();
+		if (event.shouldCommit()) {
+			event.format = format == 0 ? null : PixelFormats.verbosePixelformat(format);
+			event.width = width;
+			event.height = height;
+			event.level = level;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package me.nallar.jdds.internal.jfr;
+
+import jdk.jfr.*;
+
+
+/**
+ * Fields shared by the events of all stages, see {@link JFRMetrics}.
+ */
+@Category("JDDS")
+@StackTrace(false)
+abstract class StageEvent extends Event {
+
+	@Label("Format")
+	@Description("Pixelformat of the texture")
+	String format;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("MipMap Level")
+	@Description("-1 if the whole texture is processed")
+	int level;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Name("jdds.FileRead")
+	@Label("Texture File Read")
+	static final class FileRead extends StageEvent {
+	}
+
+	@Name("jdds.HeaderParse")
+	@Label("Texture Header Parse")
+	static final class HeaderParse extends StageEvent {
+	}
+
+	@Name("jdds.Decode")
+	@Label("Texture Decode")
+	static final class Decode extends StageEvent {
+	}
+
+	@Name("jdds.Convert")
+	@Label("Texture Convert")
+	@Description("Reading the pixels of a BufferedImage")
+	static final class Convert extends StageEvent {
+	}
+
+	@Name("jdds.MipGenerate")
+	@Label("MipMap Generation")
+	static final class MipGenerate extends StageEvent {
+	}
+
+	@Name("jdds.Encode")
+	@Label("Texture Encode")
+	@Description("Compressing one MipMap")
+	static final class Encode extends StageEvent {
+	}
+
+	@Name("jdds.FileWrite")
+	@Label("Texture File Write")
+	static final class FileWrite extends StageEvent {
+	}
+}
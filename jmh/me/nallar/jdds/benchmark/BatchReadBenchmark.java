@@ -0,0 +1,68 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.JDDS;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Reading many small files with {@link JDDS#readAll(File[], ExecutorService)}, either on a shared pool
+ * of platform threads or on the temporary executor, which uses one virtual thread per file on Java 21.
+ * Run it with -Djdds.virtualThreads=false to compare the temporary executor with platform threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchReadBenchmark {
+
+	@Param({"1000"})
+	public int files;
+
+	@Param({"64"})
+	public int size;
+
+	@Param({"platformPool", "temporary"})
+	public String executor;
+
+	private File directory;
+	private File[] batch;
+	private ExecutorService pool;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = File.createTempFile("jdds-benchmark", "");
+		if (!directory.delete() || !directory.mkdir())
+			throw new IOException("Can't create " + directory);
+		byte[] file = Textures.ddsFile(size, size, Squish.CompressionType.DXT1);
+		batch = new File[files];
+		for (int i = 0; i < files; i++) {
+			batch[i] = new File(directory, i + ".dds");
+			try (FileOutputStream out = new FileOutputStream(batch[i])) {
+				out.write(file);
+			}
+		}
+		if (executor.equals("platformPool"))
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (pool != null)
+			pool.shutdownNow();
+		for (File file : batch)
+			file.delete();
+		directory.delete();
+	}
+
+	@Benchmark
+	public BufferedImage[] readAll() throws IOException {
+		return JDDS.readAll(batch, pool);
+	}
+}
@@ -0,0 +1,68 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.JDDS;
+import me.nallar.jdds.internal.compression.ChannelOrder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.*;
+import java.util.concurrent.*;
+
+
+/**
+ * DXT compression, once through {@link JDDS#compressTexture} which always uses the cluster fit,
+ * and once through jsquish directly for each {@link Squish.CompressionMethod}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressBenchmark {
+
+	@Param({"256", "1024"})
+	public int size;
+
+	@Param({"DXT1", "DXT3", "DXT5"})
+	public Squish.CompressionType type;
+
+	@Param({"CLUSTER_FIT", "RANGE_FIT"})
+	public Squish.CompressionMethod method;
+
+	private byte[] rgba;
+	private byte[] blocks;
+	private ByteBuffer source;
+	private ByteBuffer target;
+
+	@Setup
+	public void setup() {
+		rgba = Textures.rgba(size, size);
+		blocks = new byte[Squish.getStorageRequirements(size, size, type)];
+		source = ByteBuffer.wrap(rgba);
+		target = ByteBuffer.wrap(new byte[blocks.length]);
+	}
+
+	@Benchmark
+	public byte[] squishCompressImage() {
+		return Squish.compressImage(rgba, size, size, blocks, type, method);
+	}
+
+	/**
+	 * Independent of the method parameter, compare it with squishCompressImage at CLUSTER_FIT.
+	 */
+	@Benchmark
+	public ByteBuffer compressTexture() {
+		return JDDS.compressTexture(ByteBuffer.wrap(rgba), size, size, size * 4, ChannelOrder.RGBA, type);
+	}
+
+	/**
+	 * compressTexture into a reused target, gc.alloc.rate.norm should be 0.
+	 */
+	@Benchmark
+	public ByteBuffer compressTextureInto() {
+		target.clear();
+		JDDS.compressTexture(source, size, size, size * 4, ChannelOrder.RGBA, type, target);
+		return target;
+	}
+}
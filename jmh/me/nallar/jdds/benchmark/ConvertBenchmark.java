@@ -0,0 +1,48 @@
+package me.nallar.jdds.benchmark;
+
+import me.nallar.jdds.internal.ddsutil.ByteBufferedImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Reading the pixels of a {@link BufferedImage} with {@link ByteBufferedImage#convertBIintoARGBArray}.
+ * Only images with four byte components are supported by the conversion.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertBenchmark {
+
+	@Param({"256", "1024", "4096"})
+	public int size;
+
+	@Param({"TYPE_4BYTE_ABGR", "TYPE_4BYTE_ABGR_PRE", "ByteBufferedImage"})
+	public String imageType;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setup() {
+		switch (imageType) {
+			case "TYPE_4BYTE_ABGR":
+				image = Textures.image(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+				break;
+			case "TYPE_4BYTE_ABGR_PRE":
+				image = Textures.image(size, size, BufferedImage.TYPE_4BYTE_ABGR_PRE);
+				break;
+			default:
+				image = Textures.byteImage(size, size);
+		}
+	}
+
+	@Benchmark
+	public byte[] convertBIintoARGBArray() {
+		return ByteBufferedImage.convertBIintoARGBArray(image);
+	}
+}
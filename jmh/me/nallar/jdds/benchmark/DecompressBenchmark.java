@@ -0,0 +1,40 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.JDDS;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.*;
+import java.nio.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Decoding DXT blocks with {@link JDDS#decompressTexture(ByteBuffer, int, int, Squish.CompressionType)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecompressBenchmark {
+
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"DXT1", "DXT3", "DXT5"})
+	public Squish.CompressionType type;
+
+	private ByteBuffer blocks;
+
+	@Setup
+	public void setup() {
+		blocks = Textures.compressed(size, size, type);
+	}
+
+	@Benchmark
+	public BufferedImage decompressTexture() {
+		return JDDS.decompressTexture(blocks, size, size, type);
+	}
+}
@@ -0,0 +1,79 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.internal.compression.DXTBlockDecoder;
+import me.nallar.jdds.internal.compression.DXTBlockEncoder;
+import me.nallar.jdds.internal.compression.Kernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.*;
+import java.util.concurrent.*;
+
+
+/**
+ * The scalar against the Vector API {@link Kernels}, the simd kernels need
+ * -PjmhJvmArgs=--add-modules=jdk.incubator.vector on Java 17 or later.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KernelsBenchmark {
+
+	@Param({"scalar", "simd"})
+	public String kernels;
+
+	@Param({"256", "1024", "4096"})
+	public int size;
+
+	@Param({"DXT1", "DXT3", "DXT5"})
+	public Squish.CompressionType type;
+
+	private Kernels implementation;
+	private ByteBuffer blocks;
+	private byte[] rgba;
+	// receives the decoded or reversed pixels
+	private byte[] pixels;
+	private DXTBlockEncoder encoder;
+	private byte[] block;
+	private byte[] compressed;
+
+	@Setup
+	public void setup() {
+		implementation = "simd".equals(kernels) ? Kernels.get() : Kernels.scalar();
+		if ("simd".equals(kernels) && !implementation.isSimd())
+			throw new IllegalStateException("SIMD kernels not available, run on Java 17+ with --add-modules jdk.incubator.vector");
+		blocks = Textures.compressed(size, size, type);
+		rgba = Textures.rgba(size, size);
+		pixels = new byte[size * size * 4];
+		encoder = new DXTBlockEncoder(implementation);
+		block = new byte[64];
+		compressed = new byte[size / 4 * type.blockSize];
+	}
+
+	@Benchmark
+	public byte[] decompressImage() {
+		return DXTBlockDecoder.decompressImage(blocks, size, size, type, pixels, implementation);
+	}
+
+	@Benchmark
+	public byte[] reversePixelBytes() {
+		implementation.reversePixelBytes(rgba, 0, pixels, 0, size * size);
+		return pixels;
+	}
+
+	/**
+	 * Only the first row of blocks, the cluster fit of a whole 4096x4096 image takes seconds
+	 */
+	@Benchmark
+	public byte[] compressBlockRow() {
+		for (int x = 0; x < size; x += 4) {
+			for (int y = 0; y < 4; y++)
+				System.arraycopy(rgba, 4 * (y * size + x), block, 16 * y, 16);
+			encoder.compressBlock(block, 0xFFFF, type, compressed, x / 4 * type.blockSize);
+		}
+		return compressed;
+	}
+}
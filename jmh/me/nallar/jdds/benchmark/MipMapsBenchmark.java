@@ -0,0 +1,37 @@
+package me.nallar.jdds.benchmark;
+
+import me.nallar.jdds.internal.model.MipMaps;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Generating the full MipMap chain with {@link MipMaps#generateMipMaps(BufferedImage)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MipMapsBenchmark {
+
+	@Param({"256", "1024", "4096"})
+	public int size;
+
+	private BufferedImage topmost;
+
+	@Setup
+	public void setup() {
+		topmost = Textures.image(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+	}
+
+	@Benchmark
+	public MipMaps generateMipMaps() {
+		MipMaps mipMaps = new MipMaps();
+		mipMaps.generateMipMaps(topmost);
+		return mipMaps;
+	}
+}
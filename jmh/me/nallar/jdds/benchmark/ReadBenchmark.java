@@ -0,0 +1,40 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.JDDS;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Parsing and decoding a whole dds file from memory with {@link JDDS#readDDS(byte[])}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"DXT1", "DXT3", "DXT5"})
+	public Squish.CompressionType type;
+
+	private byte[] file;
+
+	@Setup
+	public void setup() throws IOException {
+		file = Textures.ddsFile(size, size, type);
+	}
+
+	@Benchmark
+	public BufferedImage readDDS() {
+		return JDDS.readDDS(file);
+	}
+}
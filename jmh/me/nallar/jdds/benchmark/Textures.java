@@ -0,0 +1,107 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.internal.ddsutil.ByteBufferedImage;
+import me.nallar.jdds.internal.jogl.DDSImage;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+
+/**
+ * Deterministic benchmark inputs, the same size always gives the same pixels.
+ * The textures are smooth gradients with noise, so neighbouring blocks differ
+ * but still compress like photographs rather than random data.
+ */
+final class Textures {
+
+	private static final long SEED = 0x4A444453L;
+
+	private Textures() {
+	}
+
+	/**
+	 * Pixels in RGBA-order.
+	 */
+	static byte[] rgba(final int width, final int height) {
+		Random random = new Random(SEED ^ (31L * width + height));
+		byte[] rgba = new byte[width * height * 4];
+		int i = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int noise = random.nextInt(33) - 16;
+				rgba[i++] = (byte) clamp(x * 255 / width + noise);
+				rgba[i++] = (byte) clamp(y * 255 / height + noise);
+				rgba[i++] = (byte) ((x ^ y) & 0xFF);
+				rgba[i++] = (byte) clamp(255 - (x + y) * 255 / (width + height) + noise);
+			}
+		}
+		return rgba;
+	}
+
+	/**
+	 * A {@link BufferedImage} of the given type holding the pixels of {@link #rgba(int, int)}.
+	 */
+	static BufferedImage image(final int width, final int height, final int type) {
+		byte[] rgba = rgba(width, height);
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0, i = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, i += 4) {
+				image.setRGB(x, y, (rgba[i + 3] & 0xFF) << 24 | (rgba[i] & 0xFF) << 16
+						| (rgba[i + 1] & 0xFF) << 8 | (rgba[i + 2] & 0xFF));
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * The pixels of {@link #rgba(int, int)} as {@link ByteBufferedImage}.
+	 */
+	static BufferedImage byteImage(final int width, final int height) {
+		return new ByteBufferedImage(width, height, ByteBuffer.wrap(rgba(width, height)));
+	}
+
+	/**
+	 * The texture compressed with the fast range fit, so large inputs are set up quickly.
+	 */
+	static ByteBuffer compressed(final int width, final int height, final Squish.CompressionType type) {
+		byte[] blocks = Squish.compressImage(rgba(width, height), width, height, null, type,
+				Squish.CompressionMethod.RANGE_FIT);
+		return ByteBuffer.wrap(blocks);
+	}
+
+	/**
+	 * A single-level dds file of the compressed texture.
+	 */
+	static DDSImage ddsImage(final int width, final int height, final Squish.CompressionType type) {
+		return DDSImage.createFromData(d3dFormat(type), width, height,
+				new ByteBuffer[]{compressed(width, height, type)});
+	}
+
+	/**
+	 * The bytes of {@link #ddsImage(int, int, Squish.CompressionType)}.
+	 */
+	static byte[] ddsFile(final int width, final int height, final Squish.CompressionType type) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ddsImage(width, height, type).write(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	static int d3dFormat(final Squish.CompressionType type) {
+		switch (type) {
+			case DXT1:
+				return DDSImage.D3DFMT_DXT1;
+			case DXT3:
+				return DDSImage.D3DFMT_DXT3;
+			default:
+				return DDSImage.D3DFMT_DXT5;
+		}
+	}
+
+	private static int clamp(final int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
@@ -0,0 +1,48 @@
+package me.nallar.jdds.benchmark;
+
+import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.internal.jogl.DDSImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Writing an already compressed texture to disk with {@link DDSImage#write(File)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+	@Param({"256", "1024", "4096"})
+	public int size;
+
+	@Param({"DXT1", "DXT5"})
+	public Squish.CompressionType type;
+
+	private DDSImage image;
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		image = Textures.ddsImage(size, size, type);
+		file = File.createTempFile("jdds-benchmark", ".dds");
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (!file.delete())
+			file.deleteOnExit();
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		image.write(file);
+		return file.length();
+	}
+}
@@ -2,14 +2,32 @@ package me.nallar.jdds;
 
 
 import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.JDDSMetrics.Stage;
+import me.nallar.jdds.internal.compression.BC7BlockCodec;
+import me.nallar.jdds.internal.compression.BC7Encoder;
+import me.nallar.jdds.internal.compression.BandDecoder;
+import me.nallar.jdds.internal.compression.BandSink;
+import me.nallar.jdds.internal.compression.BitMaskBufferDecompressor;
+import me.nallar.jdds.internal.compression.BitMaskDecoder;
+import me.nallar.jdds.internal.compression.BlockCache;
+import me.nallar.jdds.internal.compression.BufferDecompressor;
+import me.nallar.jdds.internal.compression.ChannelOrder;
+import me.nallar.jdds.internal.compression.CompressionQuality;
 import me.nallar.jdds.internal.compression.DXTBufferCompressor;
-import me.nallar.jdds.internal.compression.DXTBufferDecompressor;
+import me.nallar.jdds.internal.compression.StreamDecompressor;
+import me.nallar.jdds.internal.ddsutil.AlphaClassifier;
 import me.nallar.jdds.internal.ddsutil.ByteBufferedImage;
 import me.nallar.jdds.internal.ddsutil.PixelFormats;
+import me.nallar.jdds.internal.ddsutil.StageTimer;
+import me.nallar.jdds.internal.ddsutil.TaskExecutors;
 import me.nallar.jdds.internal.ddsutil.TextureFactory;
 import me.nallar.jdds.internal.jogl.DDSImage;
+import me.nallar.jdds.internal.jogl.MipSlice;
 import me.nallar.jdds.internal.jogl.TEXImage;
+import me.nallar.jdds.internal.model.MipMaps;
+import me.nallar.jdds.internal.model.SingleTextureMap;
 import me.nallar.jdds.internal.model.TextureMap;
+import me.nallar.jdds.internal.model.TextureSurface;
 
 import javax.activation.UnsupportedDataTypeException;
 import java.awt.*;
@@ -17,6 +35,9 @@ import java.awt.image.*;
 import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
 
 
 /**
@@ -26,18 +47,128 @@ import java.nio.channels.*;
  */
 @SuppressWarnings("unused")
 public class JDDS {
+	/**
+	 * Pixelformat for {@link #write(File, BufferedImage, int, boolean)} and {@link #createDDSImage(BufferedImage, int, boolean)}
+	 * choosing the smallest format keeping the alpha channel of the image: D3DFMT_DXT1 for opaque images and images
+	 * whose pixels are either opaque or fully transparent, D3DFMT_DXT5 for partially transparent images, and
+	 * D3DFMT_R8G8B8 or D3DFMT_A8R8G8B8 if those aren't larger, as for images of only a few pixels.
+	 * The alpha channel is classified while the image is converted for compression.
+	 */
+	public static final int AUTO = -1;
+
+	/**
+	 * Installs the {@link JDDSMetrics} receiving the timings of all following stages.
+	 *
+	 * @param metrics e.g. a {@link JDDSStatistics}, null to stop reporting
+	 */
+	public static void setMetrics(final JDDSMetrics metrics) {
+		StageTimer.setMetrics(metrics);
+	}
+
+	/**
+	 * @return the installed {@link JDDSMetrics}, {@link JDDSMetrics#NONE} by default
+	 */
+	public static JDDSMetrics getMetrics() {
+		return StageTimer.getMetrics();
+	}
+
 	/**
 	 * Create a {@link BufferedImage} from a DXT-compressed
 	 * dds-texture {@link FileLockInterruptionException}.
 	 * @throws IOException
 	 */
 	public static BufferedImage read(final File file) throws IOException {
-		if (file.getName().endsWith(".dds"))
-			return loadBufferedImage(DDSImage.read(file));
-		else
+		if (file.getName().endsWith(".dds")) {
+			// the decoded image doesn't need the file, only its mapping, which stays valid
+			DDSImage image = DDSImage.read(file);
+			try {
+				return loadBufferedImage(image);
+			} finally {
+				image.close();
+			}
+		} else
 			return loadBufferedImage(TEXImage.read(file));
 	}
 
+	/**
+	 * Create a {@link BufferedImage} from each dds or tex {@link File}, the files are read and decoded in parallel.
+	 *
+	 * @param executor executor reading the files, if null a temporary pool is used,
+	 *                 which starts one virtual thread per file on Java 21 and later
+	 * @throws IOException
+	 * @see #read(File)
+	 */
+	public static BufferedImage[] readAll(final File[] files, final ExecutorService executor) throws IOException {
+		List<Callable<BufferedImage>> tasks = new ArrayList<>(files.length);
+		for (final File file : files) {
+			tasks.add(new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() throws IOException {
+					return read(file);
+				}
+			});
+		}
+		return invokeAll(tasks, executor).toArray(new BufferedImage[files.length]);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} from the topmost MipMap of a dds-texture read from a stream,
+	 * e.g. a HTTP body or zip entry. The header is parsed first, then the MipMap is read
+	 * and decoded band by band, without buffering the file.
+	 * The stream is not closed and is left positioned after the topmost MipMap.
+	 * @throws IOException
+	 */
+	public static BufferedImage read(final InputStream stream) throws IOException {
+		return read(Channels.newChannel(stream));
+	}
+
+	/**
+	 * Create a {@link BufferedImage} from the topmost MipMap of a dds-texture read from a channel.
+	 * The channel is not closed and is left positioned after the topmost MipMap.
+	 * @throws IOException
+	 * @see #read(InputStream)
+	 */
+	public static BufferedImage read(final ReadableByteChannel channel) throws IOException {
+		DDSImage image = DDSImage.readHeader(channel);
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		BufferedImage decoded = new StreamDecompressor(channel, image.getWidth(), image.getHeight(),
+				bandDecoder(image)).getImage();
+		if (timer != null)
+			StageTimer.stop(timer, image.getPixelFormat(), image.getWidth(), image.getHeight(), 0,
+					image.mipMapSizeInBytes(0));
+		return decoded;
+	}
+
+	/**
+	 * Decodes the topmost MipMap of a {@link DDSImage} band by band into the sink,
+	 * without creating the whole image. Only one band of 4 rows is held in memory.
+	 * @throws UnsupportedDataTypeException
+	 * @see me.nallar.jdds.internal.compression.BandSinks
+	 */
+	public static void decodeBands(final DDSImage image, final BandSink sink) throws UnsupportedDataTypeException {
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		bandDecoder(image).decode(image.getMipMap(0).getData(), image.getWidth(), image.getHeight(), sink);
+		if (timer != null)
+			StageTimer.stop(timer, image.getPixelFormat(), image.getWidth(), image.getHeight(), 0,
+					image.mipMapSizeInBytes(0));
+	}
+
+	/**
+	 * Reads the topmost MipMap following a header read with {@link DDSImage#readHeader(ReadableByteChannel)}
+	 * from the channel and decodes it band by band into the sink.
+	 * The channel is not closed and is left positioned after the topmost MipMap.
+	 * @throws IOException
+	 */
+	public static void decodeBands(final ReadableByteChannel channel,
+								   final DDSImage header,
+								   final BandSink sink) throws IOException {
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		StreamDecompressor.decode(channel, header.getWidth(), header.getHeight(), bandDecoder(header), sink);
+		if (timer != null)
+			StageTimer.stop(timer, header.getPixelFormat(), header.getWidth(), header.getHeight(), 0,
+					header.mipMapSizeInBytes(0));
+	}
+
 	public static BufferedImage readDDS(byte[] data) {
 		return readDDS(ByteBuffer.wrap(data));
 	}
@@ -56,44 +187,210 @@ public class JDDS {
 	 * @throws UnsupportedDataTypeException
 	 */
 	public static BufferedImage loadBufferedImage(final DDSImage image) throws UnsupportedDataTypeException {
+		return loadBufferedImage(image, image.getMipMap(0).getData(), image.getWidth(), image.getHeight(), 0);
+	}
+
+	/**
+	 * @param level MipMap level of the data reported to the {@link JDDSMetrics}, -1 if it is the whole texture
+	 */
+	private static BufferedImage loadBufferedImage(final DDSImage image,
+												   final ByteBuffer data,
+												   final int width,
+												   final int height,
+												   final int level) throws UnsupportedDataTypeException {
 		if (image.isCompressed())
-			return decompressTexture(
-					image.getMipMap(0).getData(),
-					image.getWidth(),
-					image.getHeight(),
-					findCompressionFormat(image));
+			return decompress(data, width, height, image.getPixelFormat(), level);
 		else
-			return loadBufferedImageFromByteBuffer(
-					image.getMipMap(0).getData(),
-					image.getWidth(),
-					image.getHeight(),
-					image);
+			return decodeUncompressed(data, width, height, image, level);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} for each side of a cubemap dds-texture {@link File}.
+	 * @throws IOException
+	 * @see #loadCubemap(DDSImage, ExecutorService)
+	 */
+	public static BufferedImage[] readCubemap(final File file) throws IOException {
+		DDSImage image = DDSImage.read(file);
+		try {
+			return loadCubemap(image, null);
+		} finally {
+			image.close();
+		}
+	}
+
+	/**
+	 * Create a {@link BufferedImage} for the topmost MipMap of each side of a cubemap {@link DDSImage}.
+	 * The sides are decoded in parallel.
+	 *
+	 * @param executor executor decoding the sides, if null a temporary pool is used
+	 * @return the sides in the order +X, -X, +Y, -Y, +Z, -Z, null for sides which are not present
+	 * @throws IOException
+	 */
+	public static BufferedImage[] loadCubemap(final DDSImage image, final ExecutorService executor) throws IOException {
+		if (!image.isCubemap())
+			throw new IllegalArgumentException("Not a cubemap");
+
+		final ByteBuffer[] sides = new ByteBuffer[DDSImage.CUBEMAP_SIDES];
+		for (int i = 0; i < sides.length; i++) {
+			int side = DDSImage.DDSCAPS2_CUBEMAP_POSITIVEX << i;
+			if (image.isCubemapSidePresent(side))
+				sides[i] = image.getMipMap(side, 0).getData();
+		}
+		return decodeAll(image, sides, executor);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} for each slice of a volume dds-texture {@link File}.
+	 * @throws IOException
+	 * @see #loadVolume(DDSImage, ExecutorService)
+	 */
+	public static BufferedImage[] readVolume(final File file) throws IOException {
+		DDSImage image = DDSImage.read(file);
+		try {
+			return loadVolume(image, null);
+		} finally {
+			image.close();
+		}
 	}
 
+	/**
+	 * Create a {@link BufferedImage} for each slice of the topmost MipMap of a volume {@link DDSImage}.
+	 * The slices are decoded in parallel.
+	 *
+	 * @param executor executor decoding the slices, if null a temporary pool is used
+	 * @throws IOException
+	 */
+	public static BufferedImage[] loadVolume(final DDSImage image, final ExecutorService executor) throws IOException {
+		if (!image.isVolume())
+			throw new IllegalArgumentException("Not a volume texture");
+
+		final ByteBuffer[] slices = new ByteBuffer[image.getVolumeDepth()];
+		for (int i = 0; i < slices.length; i++) {
+			slices[i] = image.getVolumeSlice(0, i).getData();
+		}
+		return decodeAll(image, slices, executor);
+	}
+
+	private static BufferedImage[] decodeAll(final DDSImage image,
+											 final ByteBuffer[] surfaces,
+											 final ExecutorService executor) throws IOException {
+		List<Callable<BufferedImage>> tasks = new ArrayList<>(surfaces.length);
+		for (final ByteBuffer surface : surfaces) {
+			tasks.add(surface == null ? null : new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() throws IOException {
+					return loadBufferedImage(image, surface, image.getWidth(), image.getHeight(), 0);
+				}
+			});
+		}
+		return invokeAll(tasks, executor).toArray(new BufferedImage[surfaces.length]);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} from uncompressed pixels,
+	 * decoded according to the bit masks of the {@link DDSImage}.
+	 */
 	public static BufferedImage loadBufferedImageFromByteBuffer(
 			ByteBuffer data, int width, int height,
 			DDSImage ddsimage) {
+		return decodeUncompressed(data, width, height, ddsimage, -1);
+	}
 
-		// check pixelformat
-		if (ddsimage.getPixelFormat() == DDSImage.D3DFMT_A8R8G8B8) {
-			// data in buffer in 4 byte chunks ordered ARGB
-			return new ByteBufferedImage(width, height, data);
+	private static BufferedImage decodeUncompressed(final ByteBuffer data,
+													final int width,
+													final int height,
+													final DDSImage ddsimage,
+													final int level) {
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		BufferedImage decoded = new BitMaskBufferDecompressor(data, width, height, BitMaskDecoder.get(ddsimage)).getImage();
+		if (timer != null)
+			StageTimer.stop(timer, ddsimage.getPixelFormat(), width, height, level, data.remaining());
+		return decoded;
+	}
+
+	/**
+	 * Returns the decoder for bands of the topmost MipMap of the {@link DDSImage}.
+	 */
+	private static BandDecoder bandDecoder(final DDSImage image) throws UnsupportedDataTypeException {
+		int pixelformat = image.getPixelFormat();
+		if (image.isCompressed())
+			return bandDecoder(pixelformat);
+		return BandDecoder.bitMask(BitMaskDecoder.get(image));
+	}
+
+	/**
+	 * Returns the decoder for bands of a block compressed pixelformat.
+	 */
+	private static BandDecoder bandDecoder(final int pixelformat) throws UnsupportedDataTypeException {
+		if (PixelFormats.isRGTCCompressed(pixelformat))
+			return BandDecoder.rgtc(pixelformat == DDSImage.D3DFMT_ATI2);
+		if (PixelFormats.isBC7Compressed(pixelformat))
+			return BandDecoder.bc7();
+		return BandDecoder.dxt(PixelFormats.getSquishCompressionFormat(pixelformat));
+	}
 
-		}
 
-		throw new UnsupportedOperationException("Unknown pixel format: " + ddsimage.getPixelFormat());
+	/**
+	 * Create a {@link BufferedImage} from the first image embedded in a {@link TEXImage}
+	 * @throws IOException if the embedded image is invalid or unsupported
+	 */
+	public static BufferedImage loadBufferedImage(final TEXImage image) throws IOException {
+		DDSImage embedded = image.getEmbeddedMaps(0);
+		return loadBufferedImage(embedded, embedded.getMipMap(0).getData(), image.getWidth(), image.getHeight(), 0);
 	}
 
 	/**
-	 * Create a {@link BufferedImage} from a DXT-compressed {@link TEXImage}
+	 * Create an off-heap {@link TextureSurface} from a dds or tex {@link File}.
+	 * Unlike {@link #read(File)} no {@link BufferedImage} is created.
+	 * @throws IOException
+	 */
+	public static TextureSurface readSurface(final File file) throws IOException {
+		if (file.getName().endsWith(".dds")) {
+			DDSImage image = DDSImage.read(file);
+			try {
+				return loadSurface(image);
+			} finally {
+				image.close();
+			}
+		} else
+			return loadSurface(TEXImage.read(file).getEmbeddedMaps(0));
+	}
+
+	/**
+	 * Maps a dds or tex {@link File} and returns the raw data of every MipMap of every side
+	 * as read-only slices of the mapped file, e.g. for glCompressedTexImage2D.
+	 * Nothing is decoded or copied.
+	 * @throws IOException
+	 * @see DDSImage#getMipSlices()
+	 */
+	public static List<MipSlice> readMipSlices(final File file) throws IOException {
+		if (file.getName().endsWith(".dds")) {
+			// the slices are views of the mapping, which stays valid after the file is closed
+			DDSImage image = DDSImage.read(file);
+			try {
+				return image.getMipSlices();
+			} finally {
+				image.close();
+			}
+		} else
+			return TEXImage.read(file).getEmbeddedMaps(0).getMipSlices();
+	}
+
+	/**
+	 * Create an off-heap {@link TextureSurface} from the topmost MipMap of a {@link DDSImage}
 	 * @throws UnsupportedDataTypeException
 	 */
-	public static BufferedImage loadBufferedImage(final TEXImage image) throws UnsupportedDataTypeException {
-		return decompressTexture(
-				image.getEmbeddedMaps(0).getMipMap(0).getData(),
-				image.getWidth(),
-				image.getHeight(),
-				findCompressionFormat(image.getEmbeddedMaps(0)));
+	public static TextureSurface loadSurface(final DDSImage image) throws UnsupportedDataTypeException {
+		ByteBuffer data = image.getMipMap(0).getData();
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		BufferDecompressor decompressor = image.isCompressed()
+				? BufferDecompressor.forPixelFormat(data, image.getWidth(), image.getHeight(), image.getPixelFormat())
+				: new BitMaskBufferDecompressor(data, image.getWidth(), image.getHeight(), BitMaskDecoder.get(image));
+		// decoded band by band straight into the off-heap surface
+		TextureSurface surface = decompressor.getSurface();
+		if (timer != null)
+			StageTimer.stop(timer, image.getPixelFormat(), image.getWidth(), image.getHeight(), 0, data.remaining());
+		return surface;
 	}
 
 	/**
@@ -103,7 +400,7 @@ public class JDDS {
 												  final int width,
 												  final int height,
 												  final Squish.CompressionType compressionType) {
-		return new DXTBufferDecompressor(compressedData, width, height, compressionType).getImage();
+		return decompressTexture(ByteBuffer.wrap(compressedData), width, height, compressionType);
 	}
 
 	/**
@@ -113,7 +410,12 @@ public class JDDS {
 												  final int width,
 												  final int height,
 												  final Squish.CompressionType compressionType) {
-		return new DXTBufferDecompressor(textureBuffer, width, height, compressionType).getImage();
+		try {
+			return decompress(textureBuffer, width, height, PixelFormats.getD3DFormat(compressionType), -1);
+		} catch (UnsupportedDataTypeException e) {
+			// every CompressionType has a DXT pixelformat
+			throw new IllegalStateException(e);
+		}
 	}
 
 	/**
@@ -125,8 +427,95 @@ public class JDDS {
 												  final int width,
 												  final int height,
 												  final int pixelformat) throws UnsupportedDataTypeException {
-		Squish.CompressionType compressionType = PixelFormats.getSquishCompressionFormat(pixelformat);
-		return new DXTBufferDecompressor(textureBuffer, width, height, compressionType).getImage();
+		return decompress(textureBuffer, width, height, pixelformat, -1);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} of the rectangular region x, y, regionWidth, regionHeight
+	 * of a DXT-compressed ByteBuffer. Only the 4x4 blocks overlapping the region are decoded.
+	 *
+	 * @param width  width of the whole texture
+	 * @param height height of the whole texture
+	 */
+	public static BufferedImage decompressRegion(final ByteBuffer textureBuffer,
+												 final int width,
+												 final int height,
+												 final Squish.CompressionType compressionType,
+												 final int x,
+												 final int y,
+												 final int regionWidth,
+												 final int regionHeight) {
+		return regionImage(BandDecoder.dxt(compressionType), PixelFormats.getD3DFormat(compressionType),
+				textureBuffer, width, height, -1, x, y, regionWidth, regionHeight);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} of the rectangular region x, y, regionWidth, regionHeight
+	 * of a block compressed ByteBuffer, e.g. DXT5, ATI2 or BC7.
+	 * Only the 4x4 blocks overlapping the region are decoded.
+	 *
+	 * @param width  width of the whole texture
+	 * @param height height of the whole texture
+	 * @throws UnsupportedDataTypeException
+	 */
+	public static BufferedImage decompressRegion(final ByteBuffer textureBuffer,
+												 final int width,
+												 final int height,
+												 final int pixelformat,
+												 final int x,
+												 final int y,
+												 final int regionWidth,
+												 final int regionHeight) throws UnsupportedDataTypeException {
+		return regionImage(bandDecoder(pixelformat), pixelformat, textureBuffer, width, height, -1,
+				x, y, regionWidth, regionHeight);
+	}
+
+	/**
+	 * Create a {@link BufferedImage} of the rectangular region x, y, regionWidth, regionHeight
+	 * of the topmost MipMap of a {@link DDSImage}, decoded straight from its (mapped) data.
+	 * Only the blocks or pixels overlapping the region are decoded.
+	 * @throws UnsupportedDataTypeException
+	 */
+	public static BufferedImage loadRegion(final DDSImage image,
+										   final int x,
+										   final int y,
+										   final int regionWidth,
+										   final int regionHeight) throws UnsupportedDataTypeException {
+		return regionImage(bandDecoder(image), image.getPixelFormat(), image.getMipMap(0).getData(),
+				image.getWidth(), image.getHeight(), 0, x, y, regionWidth, regionHeight);
+	}
+
+	/**
+	 * @param level MipMap level of the data reported to the {@link JDDSMetrics}, -1 if it is the whole texture
+	 */
+	private static BufferedImage regionImage(final BandDecoder decoder,
+											 final int pixelformat,
+											 final ByteBuffer data,
+											 final int width,
+											 final int height,
+											 final int level,
+											 final int x,
+											 final int y,
+											 final int regionWidth,
+											 final int regionHeight) {
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		byte[] rgba = decoder.decodeRegion(data, width, height, x, y, regionWidth, regionHeight, null);
+		StageTimer.stop(timer, pixelformat, regionWidth, regionHeight, level, 0);
+		return new ByteBufferedImage(regionWidth, regionHeight, ByteBuffer.wrap(rgba));
+	}
+
+	/**
+	 * @param level MipMap level of the data reported to the {@link JDDSMetrics}, -1 if it is the whole texture
+	 */
+	private static BufferedImage decompress(final ByteBuffer textureBuffer,
+											final int width,
+											final int height,
+											final int pixelformat,
+											final int level) throws UnsupportedDataTypeException {
+		StageTimer timer = StageTimer.start(Stage.DECODE);
+		BufferedImage decoded = BufferDecompressor.forPixelFormat(textureBuffer, width, height, pixelformat).getImage();
+		StageTimer.stop(timer, pixelformat, width, height, level, textureBuffer.remaining());
+		return decoded;
 	}
 
 	/**
@@ -134,39 +523,419 @@ public class JDDS {
 	 */
 	public static ByteBuffer compressTexture(final BufferedImage image,
 											 final Squish.CompressionType compressionType) {
-		return new DXTBufferCompressor(image, compressionType).getByteBuffer();
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		ByteBuffer compressed = new DXTBufferCompressor(image, compressionType).getByteBuffer();
+		if (timer != null)
+			StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType), image.getWidth(), image.getHeight(), -1,
+					compressed.remaining());
+		return compressed;
+	}
+
+	/**
+	 * Compresses a {@link BufferedImage} into a {@link ByteBuffer},
+	 * measuring the error of the compressed pixels while they are encoded.
+	 *
+	 * @param quality receives the error of the compressed pixels
+	 */
+	public static ByteBuffer compressTexture(final BufferedImage image,
+											 final Squish.CompressionType compressionType,
+											 final CompressionQuality quality) {
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		ByteBuffer compressed = new DXTBufferCompressor(image, compressionType).getByteBuffer(quality);
+		if (timer != null)
+			StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType), image.getWidth(), image.getHeight(), -1,
+					compressed.remaining());
+		return compressed;
 	}
 
 	public static byte[] compressTextureToArray(final BufferedImage image,
 												final Squish.CompressionType compressionType) {
-		return new DXTBufferCompressor(image, compressionType).getArray();
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		byte[] compressed = new DXTBufferCompressor(image, compressionType).getArray();
+		if (timer != null)
+			StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType), image.getWidth(), image.getHeight(), -1,
+					compressed.length);
+		return compressed;
+	}
+
+	/**
+	 * Compresses a {@link BufferedImage} into a {@link ByteBuffer},
+	 * reusing already compressed blocks from the {@link BlockCache}.
+	 * The cache can be shared between textures, e.g. all tiles of an atlas.
+	 */
+	public static ByteBuffer compressTexture(final BufferedImage image,
+											 final Squish.CompressionType compressionType,
+											 final BlockCache blockCache) {
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		ByteBuffer compressed = new DXTBufferCompressor(image, compressionType, blockCache).getByteBuffer();
+		if (timer != null)
+			StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType), image.getWidth(), image.getHeight(), -1,
+					compressed.remaining());
+		return compressed;
+	}
+
+	public static byte[] compressTextureToArray(final BufferedImage image,
+												final Squish.CompressionType compressionType,
+												final BlockCache blockCache) {
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		byte[] compressed = new DXTBufferCompressor(image, compressionType, blockCache).getArray();
+		if (timer != null)
+			StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType), image.getWidth(), image.getHeight(), -1,
+					compressed.length);
+		return compressed;
+	}
+
+	/**
+	 * Compresses uncompressed pixels from a {@link ByteBuffer} into a new direct {@link ByteBuffer}.
+	 *
+	 * @param stride       distance between the start of two rows in bytes
+	 * @param channelOrder layout of a pixel in the source buffer
+	 */
+	public static ByteBuffer compressTexture(final ByteBuffer pixels,
+											 final int width,
+											 final int height,
+											 final int stride,
+											 final ChannelOrder channelOrder,
+											 final Squish.CompressionType compressionType) {
+		ByteBuffer target = ByteBuffer.allocateDirect(Squish.getStorageRequirements(width, height, compressionType));
+		compressTexture(pixels, width, height, stride, channelOrder, compressionType, target);
+		target.flip();
+		return target;
+	}
+
+	/**
+	 * Compresses uncompressed pixels from a {@link ByteBuffer} into the given target,
+	 * neither buffer has to be backed by an array.
+	 * The compressed data is written at the target's position, which is advanced past it.
+	 *
+	 * @param stride       distance between the start of two rows in bytes
+	 * @param channelOrder layout of a pixel in the source buffer
+	 */
+	public static void compressTexture(final ByteBuffer pixels,
+									   final int width,
+									   final int height,
+									   final int stride,
+									   final ChannelOrder channelOrder,
+									   final Squish.CompressionType compressionType,
+									   final ByteBuffer target) {
+		compressTexture(pixels, width, height, stride, channelOrder, compressionType, target, null);
+	}
+
+	/**
+	 * Compresses uncompressed pixels from a {@link ByteBuffer} into the given target,
+	 * measuring the error of the compressed pixels while they are encoded.
+	 *
+	 * @param stride       distance between the start of two rows in bytes
+	 * @param channelOrder layout of a pixel in the source buffer
+	 * @param quality      receives the error of the compressed pixels, may be null
+	 */
+	public static void compressTexture(final ByteBuffer pixels,
+									   final int width,
+									   final int height,
+									   final int stride,
+									   final ChannelOrder channelOrder,
+									   final Squish.CompressionType compressionType,
+									   final ByteBuffer target,
+									   final CompressionQuality quality) {
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		DXTBufferCompressor.compressBuffer(pixels, width, height, stride, channelOrder, compressionType, null, target,
+				quality);
+		StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType), width, height, -1,
+				Squish.getStorageRequirements(width, height, compressionType));
+	}
+
+	/**
+	 * Compresses a {@link BufferedImage} into BC7 blocks,
+	 * the blocks are compressed in parallel on a temporary pool.
+	 *
+	 * @param encoder search budget of the encoder, e.g. {@link BC7Encoder#DEFAULT}
+	 */
+	public static ByteBuffer compressTexture(final BufferedImage image,
+											 final BC7Encoder encoder) {
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		byte[] rgba = ByteBufferedImage.convertBIintoARGBArray(image);
+		ByteBuffer target = ByteBuffer.allocate(BC7BlockCodec.getStorageRequirements(image.getWidth(), image.getHeight()));
+		encoder.compressImage(ByteBuffer.wrap(rgba), image.getWidth(), image.getHeight(), image.getWidth() * 4,
+				ChannelOrder.RGBA, target);
+		target.flip();
+		StageTimer.stop(timer, DDSImage.D3DFMT_BC7, image.getWidth(), image.getHeight(), -1, target.remaining());
+		return target;
+	}
+
+	/**
+	 * Compresses uncompressed pixels from a {@link ByteBuffer} into BC7 blocks in a new direct {@link ByteBuffer}.
+	 *
+	 * @param stride       distance between the start of two rows in bytes
+	 * @param channelOrder layout of a pixel in the source buffer
+	 * @param encoder      search budget of the encoder, e.g. {@link BC7Encoder#DEFAULT}
+	 * @param executor     executor compressing the blocks, if null a temporary pool is used
+	 */
+	public static ByteBuffer compressTexture(final ByteBuffer pixels,
+											 final int width,
+											 final int height,
+											 final int stride,
+											 final ChannelOrder channelOrder,
+											 final BC7Encoder encoder,
+											 final ExecutorService executor) {
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		ByteBuffer target = ByteBuffer.allocateDirect(BC7BlockCodec.getStorageRequirements(width, height));
+		encoder.compressImage(pixels, width, height, stride, channelOrder, target, executor);
+		target.flip();
+		StageTimer.stop(timer, DDSImage.D3DFMT_BC7, width, height, -1, target.remaining());
+		return target;
 	}
 
 	/**
 	 * Writes a DDS-Image file to disk.
+	 * {@link DDSImage#D3DFMT_BC7} is compressed with {@link BC7Encoder#DEFAULT} and written with the DX10 header.
+	 *
+	 * @param pixelformat e.g. {@link DDSImage#D3DFMT_DXT5}, or {@link #AUTO} to choose it by the alpha of the image
 	 */
 	public static void write(final File destinationfile,
 							 BufferedImage sourceImage,
 							 final int pixelformat,
 							 boolean generateMipMaps) throws IOException {
 
-		int width = sourceImage.getWidth();
-		int height = sourceImage.getHeight();
+		createDDSImage(sourceImage, pixelformat, generateMipMaps).write(destinationfile);
+	}
 
+	/**
+	 * Compresses a {@link BufferedImage} into a {@link DDSImage} held in memory,
+	 * as {@link #write(File, BufferedImage, int, boolean)} writes it.
+	 * @throws UnsupportedDataTypeException
+	 */
+	public static DDSImage createDDSImage(final BufferedImage sourceImage,
+										  final int pixelformat,
+										  final boolean generateMipMaps) throws UnsupportedDataTypeException {
+		return createDDSImage(sourceImage, pixelformat, generateMipMaps, null);
+	}
+
+	/**
+	 * Compresses a {@link BufferedImage} into a {@link DDSImage} held in memory like
+	 * {@link #createDDSImage(BufferedImage, int, boolean)}, measuring the error of each MipMap while it is compressed.
+	 * The pixels of D3DFMT_DXT1, D3DFMT_DXT3 and D3DFMT_DXT5 are measured, other pixelformats add nothing.
+	 *
+	 * @param qualities receives the error of each MipMap, from the largest to the smallest,
+	 *                  combine them with {@link CompressionQuality#add(CompressionQuality)} for the whole image,
+	 *                  may be null
+	 * @throws UnsupportedDataTypeException
+	 */
+	public static DDSImage createDDSImage(final BufferedImage sourceImage,
+										  final int pixelformat,
+										  final boolean generateMipMaps,
+										  final List<CompressionQuality> qualities) throws UnsupportedDataTypeException {
+		AlphaClassifier alpha = pixelformat == AUTO ? new AlphaClassifier() : null;
+		TextureMap maps = createTextureMap(sourceImage, generateMipMaps, alpha);
+		int format = alpha == null ? pixelformat
+				: PixelFormats.selectPixelFormat(alpha.getAlpha(), sourceImage.getWidth(), sourceImage.getHeight());
+
+		ByteBuffer[] mipmapBuffer;
+		if (qualities != null && (format == DDSImage.D3DFMT_DXT1 || format == DDSImage.D3DFMT_DXT3
+				|| format == DDSImage.D3DFMT_DXT5))
+			mipmapBuffer = maps.getDXTCompressedBuffer(PixelFormats.getSquishCompressionFormat(format), qualities);
+		else
+			mipmapBuffer = compressMaps(maps, format);
+
+		return DDSImage.createFromData(format, sourceImage.getWidth(), sourceImage.getHeight(), mipmapBuffer);
+	}
+
+	/**
+	 * Writes a cubemap DDS-Image file to disk.
+	 * The sides are converted and compressed in parallel.
+	 *
+	 * @param sides    the six sides in the order +X, -X, +Y, -Y, +Z, -Z
+	 * @param executor executor compressing the sides, if null a temporary pool is used
+	 */
+	public static void writeCubemap(final File destinationfile,
+									final BufferedImage[] sides,
+									final int pixelformat,
+									final boolean generateMipMaps,
+									final ExecutorService executor) throws IOException {
+		if (sides.length != DDSImage.CUBEMAP_SIDES)
+			throw new IllegalArgumentException("A cubemap needs " + DDSImage.CUBEMAP_SIDES + " sides, got " + sides.length);
+
+		ByteBuffer[][] sideBuffers = compressAll(sides, pixelformat, generateMipMaps, executor);
+		DDSImage.createCubemapFromData(pixelformat, sides[0].getWidth(), sides[0].getHeight(), sideBuffers)
+				.write(destinationfile);
+	}
+
+	/**
+	 * Writes a volume DDS-Image file without MipMaps to disk.
+	 * The slices are converted and compressed in parallel.
+	 *
+	 * @param slices   the slices from front to back
+	 * @param executor executor compressing the slices, if null a temporary pool is used
+	 */
+	public static void writeVolume(final File destinationfile,
+								   final BufferedImage[] slices,
+								   final int pixelformat,
+								   final ExecutorService executor) throws IOException {
+		ByteBuffer[][] sliceBuffers = compressAll(slices, pixelformat, false, executor);
+
+		int size = 0;
+		for (ByteBuffer[] slice : sliceBuffers) {
+			size += slice[0].remaining();
+		}
+		ByteBuffer volume = ByteBuffer.allocate(size);
+		for (ByteBuffer[] slice : sliceBuffers) {
+			volume.put(slice[0]);
+		}
+		volume.flip();
+
+		DDSImage.createVolumeFromData(pixelformat, slices[0].getWidth(), slices[0].getHeight(), slices.length,
+				new ByteBuffer[]{volume}).write(destinationfile);
+	}
+
+	/**
+	 * Writes a TEX-file to disk, embedding the MipMaps of one {@link TextureMap} in several pixelformats.
+	 * Each pixelformat is stored in its own table, see {@link TEXImage#tableOf(int)},
+	 * with one embedded dds per MipMap. A TEX-table holds at most
+	 * {@link TEXImage#MAPS_PER_TABLE} MipMaps, smaller ones are left out.
+	 * Uncompressed pixelformats are stored in the byte order of their bit masks, e.g. BGRA for D3DFMT_A8R8G8B8.
+	 * The pixelformats are compressed in parallel and then streamed into the file.
+	 *
+	 * @param pixelformats e.g. D3DFMT_R8G8B8, D3DFMT_A8R8G8B8, D3DFMT_DXT1, D3DFMT_DXT3, D3DFMT_DXT5
+	 * @param executor     executor compressing the pixelformats, if null a temporary pool is used
+	 * @throws IOException
+	 */
+	public static void writeTEX(final File destinationfile,
+								final TextureMap map,
+								final int[] pixelformats,
+								final ExecutorService executor) throws IOException {
+		List<Callable<DDSImage[]>> tasks = new ArrayList<>(pixelformats.length);
+		final int[] tables = new int[pixelformats.length];
+		for (int i = 0; i < pixelformats.length; i++) {
+			final int pixelformat = pixelformats[i];
+			tables[i] = TEXImage.tableOf(pixelformat);
+			if (tables[i] < 0)
+				throw new IllegalArgumentException("A TEX-file can't hold pixelformat " + PixelFormats.verbosePixelformat(pixelformat));
+			for (int j = 0; j < i; j++) {
+				if (tables[j] == tables[i])
+					throw new IllegalArgumentException(PixelFormats.verbosePixelformat(pixelformats[j]) + " and " +
+							PixelFormats.verbosePixelformat(pixelformat) + " share TEX-table " + tables[i]);
+			}
+			tasks.add(new Callable<DDSImage[]>() {
+				@Override
+				public DDSImage[] call() throws IOException {
+					ByteBuffer[] mipmaps = compressMaps(map, pixelformat);
+					DDSImage[] images = new DDSImage[Math.min(mipmaps.length, TEXImage.MAPS_PER_TABLE)];
+					for (int level = 0; level < images.length; level++) {
+						images[level] = DDSImage.createFromData(pixelformat,
+								Math.max(map.getWidth() >> level, 1),
+								Math.max(map.getHeight() >> level, 1),
+								new ByteBuffer[]{mipmaps[level]});
+					}
+					return images;
+				}
+			});
+		}
+
+		List<DDSImage[]> compressed = invokeAll(tasks, executor);
+		DDSImage[][] tableImages = new DDSImage[TEXImage.TABLES][];
+		for (int i = 0; i < tables.length; i++) {
+			tableImages[tables[i]] = compressed.get(i);
+		}
+		TEXImage.write(destinationfile, map.getWidth(), map.getHeight(), tableImages);
+	}
+
+	private static ByteBuffer[][] compressAll(final BufferedImage[] images,
+											  final int pixelformat,
+											  final boolean generateMipMaps,
+											  final ExecutorService executor) throws IOException {
+		List<Callable<ByteBuffer[]>> tasks = new ArrayList<>(images.length);
+		for (final BufferedImage image : images) {
+			if (image.getWidth() != images[0].getWidth() || image.getHeight() != images[0].getHeight())
+				throw new IllegalArgumentException("All images must have the same dimensions");
+			tasks.add(new Callable<ByteBuffer[]>() {
+				@Override
+				public ByteBuffer[] call() throws IOException {
+					return compressMaps(image, pixelformat, generateMipMaps);
+				}
+			});
+		}
+		return invokeAll(tasks, executor).toArray(new ByteBuffer[images.length][]);
+	}
+
+	private static ByteBuffer[] compressMaps(final BufferedImage sourceImage,
+											 final int pixelformat,
+											 final boolean generateMipMaps) throws UnsupportedDataTypeException {
+		return compressMaps(createTextureMap(sourceImage, generateMipMaps, null), pixelformat);
+	}
+
+	/**
+	 * @param alpha receives the alpha of the image if not null, its topmost MipMap is then converted right away
+	 */
+	private static TextureMap createTextureMap(BufferedImage sourceImage,
+											   final boolean generateMipMaps,
+											   final AlphaClassifier alpha) {
 		//convert RGB to RGBA image
 		if (!sourceImage.getColorModel().hasAlpha())
 			sourceImage = convert(sourceImage, BufferedImage.TYPE_4BYTE_ABGR);
+		else if (alpha != null)
+			return createClassifiedTextureMap(sourceImage, generateMipMaps, alpha);
 
-		TextureMap maps = TextureFactory.createTextureMap(generateMipMaps, sourceImage);
+		return TextureFactory.createTextureMap(generateMipMaps, sourceImage);
+	}
 
-		ByteBuffer[] mipmapBuffer;
+	/**
+	 * Classifies the alpha while converting the topmost MipMap, which is kept as the surface compressed later on,
+	 * so choosing the pixelformat doesn't convert the image twice.
+	 */
+	private static TextureMap createClassifiedTextureMap(final BufferedImage sourceImage,
+														 final boolean generateMipMaps,
+														 final AlphaClassifier alpha) {
+		TextureSurface topmost = TextureSurface.wrap(sourceImage.getWidth(), sourceImage.getHeight(),
+				ByteBuffer.wrap(ByteBufferedImage.convertBIintoARGBArray(sourceImage, alpha)));
+		if (!generateMipMaps)
+			return new SingleTextureMap(topmost);
+
+		MipMaps maps = new MipMaps();
+		maps.generateMipMaps(sourceImage);
+		maps.setMipMap(MipMaps.TOP_MOST_MIP_MAP, topmost);
+		return maps;
+	}
 
-		if (PixelFormats.isDXTCompressed(pixelformat)) {
-			mipmapBuffer = maps.getDXTCompressedBuffer(pixelformat);
-		} else
-			mipmapBuffer = maps.getUncompressedBuffer();
+	private static ByteBuffer[] compressMaps(final TextureMap maps,
+											 final int pixelformat) throws UnsupportedDataTypeException {
+		if (PixelFormats.isDXTCompressed(pixelformat))
+			return maps.getDXTCompressedBuffer(pixelformat);
+		else
+			return maps.getUncompressedBuffer(pixelformat);
+	}
 
-		writeDDSImage(destinationfile, mipmapBuffer, width, height, pixelformat);
+	/**
+	 * Runs all tasks on the executor and returns their results in order, null tasks have a null result.
+	 */
+	private static <T> List<T> invokeAll(final List<Callable<T>> tasks, ExecutorService executor) throws IOException {
+		boolean temporaryExecutor = executor == null;
+		if (temporaryExecutor)
+			executor = TaskExecutors.newTemporaryExecutor(Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+		try {
+			List<Future<T>> futures = new ArrayList<>(tasks.size());
+			for (Callable<T> task : tasks) {
+				futures.add(task == null ? null : executor.submit(task));
+			}
+			List<T> results = new ArrayList<>(tasks.size());
+			for (Future<T> future : futures) {
+				results.add(future == null ? null : future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		} finally {
+			if (temporaryExecutor)
+				executor.shutdownNow();
+		}
 	}
 
 	/**
@@ -213,10 +982,6 @@ public class JDDS {
 		return DDSImage.read(file).getPixelFormat();
 	}
 
-	private static Squish.CompressionType findCompressionFormat(DDSImage ddsimage) throws UnsupportedDataTypeException {
-		int pixelFormat = ddsimage.getPixelFormat();
-		return PixelFormats.getSquishCompressionFormat(pixelFormat);
-	}
 
 	/**
 	 * Returns true for file formats supported by this library.
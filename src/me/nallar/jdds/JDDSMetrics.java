@@ -0,0 +1,85 @@
+package me.nallar.jdds;
+
+/**
+ * Listener receiving the timings of the stages of reading, decoding, compressing and writing textures.
+ * Install an implementation with {@link JDDS#setMetrics(JDDSMetrics)}, by default {@link #NONE} is used.
+ * <p>
+ * {@link #begin} is called on the working thread before a stage starts, {@link #end} on the same thread
+ * once it completed. If the stage fails end is not called. Stages may nest, e.g. a
+ * {@link Stage#COMPRESS} of every MipMap while a texture is written, and run on many threads at once,
+ * so implementations must be thread-safe. They must not throw, as that would fail the stage.
+ * <p>
+ * Independent of the installed metrics, every stage is also emitted as Java Flight Recorder event
+ * (jdds.FileRead, jdds.HeaderParse, jdds.Decode, jdds.Convert, jdds.MipGenerate, jdds.Encode and
+ * jdds.FileWrite) when running on Java 11 or later, unless the system property jdds.jfr is false.
+ */
+public interface JDDSMetrics {
+
+	enum Stage {
+		/**
+		 * Parsing the header of a dds or TEX-file
+		 */
+		HEADER,
+		/**
+		 * Mapping a file into memory
+		 */
+		READ,
+		/**
+		 * Decoding compressed or uncompressed pixels into RGBA
+		 */
+		DECODE,
+		/**
+		 * Reading the pixels of a BufferedImage into RGBA
+		 */
+		CONVERT,
+		/**
+		 * Generating the MipMaps below a topmost MipMap
+		 */
+		MIPMAPS,
+		/**
+		 * Compressing or encoding one MipMap
+		 */
+		COMPRESS,
+		/**
+		 * Writing a dds or TEX-file
+		 */
+		WRITE
+	}
+
+	/**
+	 * Ignores all stages.
+	 */
+	JDDSMetrics NONE = new JDDSMetrics() {
+		@Override
+		public Object begin(final Stage stage) {
+			return null;
+		}
+
+		@Override
+		public void end(final Object context, final Stage stage, final long nanos,
+						final int format, final int width, final int height, final int level, final long bytes) {
+		}
+	};
+
+	/**
+	 * Called before the stage starts.
+	 *
+	 * @param stage
+	 * @return context passed to {@link #end}, e.g. a span of a tracer, may be null
+	 */
+	Object begin(Stage stage);
+
+	/**
+	 * Called after the stage completed.
+	 *
+	 * @param context value returned by {@link #begin}
+	 * @param stage
+	 * @param nanos   elapsed time
+	 * @param format  pixelformat (D3DFMT_*) of the texture, 0 if it has none, e.g. a BufferedImage
+	 * @param width   width of the processed pixels, so width * height is the pixel count
+	 * @param height
+	 * @param level   MipMap level, -1 if the stage handles the whole texture
+	 * @param bytes   bytes read, written or produced, 0 if the stage doesn't move bytes
+	 */
+	void end(Object context, Stage stage, long nanos, int format, int width, int height, int level, long bytes);
+}
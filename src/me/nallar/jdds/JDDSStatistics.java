@@ -0,0 +1,105 @@
+package me.nallar.jdds;
+
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * {@link JDDSMetrics} summing up count, time, bytes and pixels of every stage,
+ * e.g. to export them periodically to a monitoring system.
+ * <pre>
+ * JDDSStatistics statistics = new JDDSStatistics();
+ * JDDS.setMetrics(statistics);
+ * ...
+ * long decodeNanos = statistics.getNanos(JDDSMetrics.Stage.DECODE);
+ * </pre>
+ * Nested stages are counted in both stages. Instances are thread-safe.
+ */
+public class JDDSStatistics implements JDDSMetrics {
+
+	private static final int COUNT = 0;
+	private static final int NANOS = 1;
+	private static final int MAX_NANOS = 2;
+	private static final int BYTES = 3;
+	private static final int PIXELS = 4;
+	private static final int VALUES = 5;
+
+	private final AtomicLongArray values = new AtomicLongArray(Stage.values().length * VALUES);
+
+	@Override
+	public Object begin(final Stage stage) {
+		return null;
+	}
+
+	@Override
+	public void end(final Object context, final Stage stage, final long nanos,
+					final int format, final int width, final int height, final int level, final long bytes) {
+		final int index = stage.ordinal() * VALUES;
+		values.incrementAndGet(index + COUNT);
+		values.addAndGet(index + NANOS, nanos);
+		values.addAndGet(index + BYTES, bytes);
+		values.addAndGet(index + PIXELS, (long) width * height);
+		long max;
+		do {
+			max = values.get(index + MAX_NANOS);
+		} while (nanos > max && !values.compareAndSet(index + MAX_NANOS, max, nanos));
+	}
+
+	/**
+	 * Number of completed stages
+	 */
+	public long getCount(final Stage stage) {
+		return get(stage, COUNT);
+	}
+
+	/**
+	 * Total time spent in the stage
+	 */
+	public long getNanos(final Stage stage) {
+		return get(stage, NANOS);
+	}
+
+	/**
+	 * Longest time a single stage took
+	 */
+	public long getMaxNanos(final Stage stage) {
+		return get(stage, MAX_NANOS);
+	}
+
+	public long getBytes(final Stage stage) {
+		return get(stage, BYTES);
+	}
+
+	public long getPixels(final Stage stage) {
+		return get(stage, PIXELS);
+	}
+
+	/**
+	 * Sets all values back to 0, stages completing meanwhile may be partially lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < values.length(); i++)
+			values.set(i, 0);
+	}
+
+	private long get(final Stage stage, final int value) {
+		return values.get(stage.ordinal() * VALUES + value);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("JDDSStatistics{");
+		for (Stage stage : Stage.values()) {
+			long count = getCount(stage);
+			if (count == 0)
+				continue;
+			if (builder.charAt(builder.length() - 1) != '{')
+				builder.append(", ");
+			builder.append(stage).append('=').append(count).append("x ")
+					.append(getNanos(stage) / 1000000).append("ms (max ")
+					.append(getMaxNanos(stage) / 1000000).append("ms) ")
+					.append(getBytes(stage)).append("B ")
+					.append(getPixels(stage)).append("px");
+		}
+		return builder.append('}').toString();
+	}
+}
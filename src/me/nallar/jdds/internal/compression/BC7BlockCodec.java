@@ -0,0 +1,394 @@
+package me.nallar.jdds.internal.compression;
+
+import java.nio.*;
+
+
+/**
+ * Decoder for BC7 (BPTC) blocks and the tables of the format, shared with {@link BC7Encoder}.
+ * Every 16 byte block starts with its mode, one of eight layouts which differ
+ * in the number of subsets, endpoint precision, p-bits and index precision.
+ * <p>
+ * All methods are thread-safe and, apart from the result arrays, do not allocate.
+ */
+public final class BC7BlockCodec {
+
+	/**
+	 * Size of one compressed block.
+	 */
+	public static final int BLOCK_SIZE = 16;
+
+	/**
+	 * Size of the scratch space needed by {@link #decompressBlock}.
+	 */
+	public static final int SCRATCH_SIZE = 6 * 4 + 2 * 16;
+
+	// per mode: subsets, partition bits, rotation bits, index selection bits,
+	// colour bits, alpha bits, endpoint p-bits, shared p-bits, index bits, secondary index bits
+	static final int[] SUBSETS = {3, 2, 3, 2, 1, 1, 1, 2};
+	static final int[] PARTITION_BITS = {4, 6, 6, 6, 0, 0, 0, 6};
+	static final int[] ROTATION_BITS = {0, 0, 0, 0, 2, 2, 0, 0};
+	static final int[] INDEX_SELECTION_BITS = {0, 0, 0, 0, 1, 0, 0, 0};
+	static final int[] COLOUR_BITS = {4, 6, 5, 7, 5, 7, 7, 5};
+	static final int[] ALPHA_BITS = {0, 0, 0, 0, 6, 8, 7, 5};
+	static final int[] ENDPOINT_PBITS = {1, 0, 0, 1, 0, 0, 1, 1};
+	static final int[] SHARED_PBITS = {0, 1, 0, 0, 0, 0, 0, 0};
+	static final int[] INDEX_BITS = {3, 3, 2, 2, 2, 2, 4, 2};
+	static final int[] SECONDARY_INDEX_BITS = {0, 0, 0, 0, 3, 2, 0, 0};
+
+	/**
+	 * Interpolation weights, indexed by the number of index bits.
+	 */
+	static final int[][] WEIGHTS = {
+			null,
+			null,
+			{0, 21, 43, 64},
+			{0, 9, 18, 27, 37, 46, 55, 64},
+			{0, 4, 9, 13, 17, 21, 26, 30, 34, 38, 43, 47, 51, 55, 60, 64}
+	};
+
+	/**
+	 * Two subset partitions, bit i is set if pixel i belongs to the second subset.
+	 */
+	private static final int[] PARTITIONS_2 = {
+			0xCCCC, 0x8888, 0xEEEE, 0xECC8, 0xC880, 0xFEEC, 0xFEC8, 0xEC80,
+			0xC800, 0xFFEC, 0xFE80, 0xE800, 0xFFE8, 0xFF00, 0xFFF0, 0xF000,
+			0xF710, 0x008E, 0x7100, 0x08CE, 0x008C, 0x7310, 0x3100, 0x8CCE,
+			0x088C, 0x3110, 0x6666, 0x366C, 0x17E8, 0x0FF0, 0x718E, 0x399C,
+			0xAAAA, 0xF0F0, 0x5A5A, 0x33CC, 0x3C3C, 0x55AA, 0x9696, 0xA55A,
+			0x73CE, 0x13C8, 0x324C, 0x3BDC, 0x6996, 0xC33C, 0x9966, 0x0660,
+			0x0272, 0x04E4, 0x4E40, 0x2720, 0xC936, 0x936C, 0x39C6, 0x639C,
+			0x9336, 0x9CC6, 0x817E, 0xE718, 0xCCF0, 0x0FCC, 0x7744, 0xEE22
+	};
+
+	/**
+	 * Three subset partitions, two bits per pixel holding its subset, pixel 0 in the lowest bits.
+	 */
+	private static final int[] PARTITIONS_3 = {
+			partition3("0011001102212222"), partition3("0001001122112221"),
+			partition3("0000200122112211"), partition3("0222002200110111"),
+			partition3("0000000011221122"), partition3("0011001100220022"),
+			partition3("0022002211111111"), partition3("0011001122112211"),
+			partition3("0000000011112222"), partition3("0000111111112222"),
+			partition3("0000111122222222"), partition3("0012001200120012"),
+			partition3("0112011201120112"), partition3("0122012201220122"),
+			partition3("0011011211221222"), partition3("0011200122002220"),
+			partition3("0001001101121122"), partition3("0111001120012200"),
+			partition3("0000112211221122"), partition3("0022002200221111"),
+			partition3("0111011102220222"), partition3("0001000122212221"),
+			partition3("0000001101220122"), partition3("0000110022102210"),
+			partition3("0122012200110000"), partition3("0012001211222222"),
+			partition3("0110122112210110"), partition3("0000011012211221"),
+			partition3("0022110211020022"), partition3("0110011020022222"),
+			partition3("0011012201220011"), partition3("0000200022112221"),
+			partition3("0000000211221222"), partition3("0222002200120011"),
+			partition3("0011001200220222"), partition3("0120012001200120"),
+			partition3("0000111122220000"), partition3("0120120120120120"),
+			partition3("0120201212010120"), partition3("0011220011220011"),
+			partition3("0011112222000011"), partition3("0101010122222222"),
+			partition3("0000000021212121"), partition3("0022112200221122"),
+			partition3("0022001100220011"), partition3("0220122102201221"),
+			partition3("0101222222220101"), partition3("0000212121212121"),
+			partition3("0101010101012222"), partition3("0222011102220111"),
+			partition3("0002111200021112"), partition3("0000211221122112"),
+			partition3("0222011101110222"), partition3("0002111211120002"),
+			partition3("0110011001102222"), partition3("0000000021122112"),
+			partition3("0110011022222222"), partition3("0022001100110022"),
+			partition3("0022112211220022"), partition3("0000000000002112"),
+			partition3("0002000100020001"), partition3("0222122202221222"),
+			partition3("0101222222222222"), partition3("0111201122012220")
+	};
+
+	/**
+	 * Anchor pixel of the second subset of the two subset partitions.
+	 */
+	private static final int[] ANCHORS_2 = {
+			15, 15, 15, 15, 15, 15, 15, 15,
+			15, 15, 15, 15, 15, 15, 15, 15,
+			15, 2, 8, 2, 2, 8, 8, 15,
+			2, 8, 2, 2, 8, 8, 2, 2,
+			15, 15, 6, 8, 2, 8, 15, 15,
+			2, 8, 2, 2, 2, 15, 15, 6,
+			6, 2, 6, 8, 15, 15, 2, 2,
+			15, 15, 15, 15, 15, 2, 2, 15
+	};
+
+	/**
+	 * Anchor pixel of the second subset of the three subset partitions.
+	 */
+	private static final int[] ANCHORS_3_SECOND = {
+			3, 3, 15, 15, 8, 3, 15, 15,
+			8, 8, 6, 6, 6, 5, 3, 3,
+			3, 3, 8, 15, 3, 3, 6, 10,
+			5, 8, 8, 6, 8, 5, 15, 15,
+			8, 15, 3, 5, 6, 10, 8, 15,
+			15, 3, 15, 5, 15, 15, 15, 15,
+			3, 15, 5, 5, 5, 8, 5, 10,
+			5, 10, 8, 13, 15, 12, 3, 3
+	};
+
+	/**
+	 * Anchor pixel of the third subset of the three subset partitions.
+	 */
+	private static final int[] ANCHORS_3_THIRD = {
+			15, 8, 8, 3, 15, 15, 3, 8,
+			15, 15, 15, 15, 15, 15, 15, 8,
+			15, 8, 15, 3, 15, 8, 15, 8,
+			3, 15, 6, 10, 15, 15, 10, 8,
+			15, 3, 15, 10, 10, 8, 9, 10,
+			6, 15, 8, 15, 3, 6, 6, 8,
+			15, 3, 15, 15, 15, 15, 15, 15,
+			15, 15, 15, 15, 3, 15, 15, 8
+	};
+
+	private BC7BlockCodec() {
+	}
+
+	private static int partition3(final String subsets) {
+		int partition = 0;
+		for (int i = 0; i < 16; i++)
+			partition |= (subsets.charAt(i) - '0') << (2 * i);
+		return partition;
+	}
+
+	/**
+	 * Number of bytes needed to compress an image of the given size.
+	 */
+	public static int getStorageRequirements(final int width, final int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_SIZE;
+	}
+
+	/**
+	 * Subset of pixel i in the partition.
+	 *
+	 * @param subsets   1, 2 or 3
+	 * @param partition partition number
+	 * @param pixel     0..15
+	 */
+	static int subset(final int subsets, final int partition, final int pixel) {
+		switch (subsets) {
+			case 2:
+				return (PARTITIONS_2[partition] >> pixel) & 1;
+			case 3:
+				return (PARTITIONS_3[partition] >> (2 * pixel)) & 3;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Pixel whose index is stored with one bit less, its most significant bit is implicitly 0.
+	 */
+	static int anchor(final int subsets, final int partition, final int subset) {
+		if (subset == 0)
+			return 0;
+		if (subsets == 2)
+			return ANCHORS_2[partition];
+		return subset == 1 ? ANCHORS_3_SECOND[partition] : ANCHORS_3_THIRD[partition];
+	}
+
+	/**
+	 * Expands an endpoint component of the given precision to 8 bits.
+	 */
+	static int unquantize(final int value, final int bits) {
+		return (value << (8 - bits)) | (value >> (2 * bits - 8));
+	}
+
+	static int interpolate(final int e0, final int e1, final int weight) {
+		return ((64 - weight) * e0 + weight * e1 + 32) >> 6;
+	}
+
+	/**
+	 * Decompresses BC7 blocks into RGBA-pixels.
+	 *
+	 * @param blocks compressed data, read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param rgba   array receiving the pixels, allocated if null or too small
+	 * @return rgba
+	 */
+	public static byte[] decompressImage(final ByteBuffer blocks,
+										 final int width,
+										 final int height,
+										 byte[] rgba) {
+		if (blocks.remaining() < getStorageRequirements(width, height))
+			throw new IllegalArgumentException("Invalid source image data specified.");
+		if (rgba == null || rgba.length < width * height * 4)
+			rgba = new byte[width * height * 4];
+
+		final int[] scratch = new int[SCRATCH_SIZE];
+		int sourceBlock = blocks.position();
+		for (int y = 0; y < height; y += 4) {
+			final int blockHeight = Math.min(4, height - y);
+			for (int x = 0; x < width; x += 4) {
+				decompressBlock(blocks, sourceBlock, scratch,
+						rgba, 4 * (width * y + x), width * 4, Math.min(4, width - x), blockHeight);
+				sourceBlock += BLOCK_SIZE;
+			}
+		}
+		return rgba;
+	}
+
+	/**
+	 * Decompresses a single block into the RGBA-array, pixels outside of
+	 * blockWidth/blockHeight are skipped. Blocks with an invalid mode decode to transparent black.
+	 *
+	 * @param blocks      compressed data
+	 * @param offset      absolute offset of the block in blocks
+	 * @param scratch     scratch space of at least {@link #SCRATCH_SIZE} ints
+	 * @param rgba        target array
+	 * @param rgbaOffset  offset of the top left pixel of the block in rgba
+	 * @param rgbaStride  distance between two rows in rgba in bytes
+	 * @param blockWidth  number of columns to write, 1..4
+	 * @param blockHeight number of rows to write, 1..4
+	 */
+	public static void decompressBlock(final ByteBuffer blocks,
+									   final int offset,
+									   final int[] scratch,
+									   final byte[] rgba,
+									   final int rgbaOffset,
+									   final int rgbaStride,
+									   final int blockWidth,
+									   final int blockHeight) {
+		final long low = blocks.order() == ByteOrder.LITTLE_ENDIAN ?
+				blocks.getLong(offset) : Long.reverseBytes(blocks.getLong(offset));
+		final long high = blocks.order() == ByteOrder.LITTLE_ENDIAN ?
+				blocks.getLong(offset + 8) : Long.reverseBytes(blocks.getLong(offset + 8));
+
+		final int mode = Long.numberOfTrailingZeros(low);
+		if (mode >= 8) {
+			for (int py = 0; py < blockHeight; ++py) {
+				int target = rgbaOffset + py * rgbaStride;
+				for (int px = 0; px < 4 * blockWidth; ++px)
+					rgba[target++] = 0;
+			}
+			return;
+		}
+
+		int position = mode + 1;
+		final int partition = bits(low, high, position, PARTITION_BITS[mode]);
+		position += PARTITION_BITS[mode];
+		final int rotation = bits(low, high, position, ROTATION_BITS[mode]);
+		position += ROTATION_BITS[mode];
+		final int indexSelection = bits(low, high, position, INDEX_SELECTION_BITS[mode]);
+		position += INDEX_SELECTION_BITS[mode];
+
+		// endpoints, scratch[4 * endpoint + channel]
+		final int subsets = SUBSETS[mode];
+		final int endpoints = 2 * subsets;
+		final int colourBits = COLOUR_BITS[mode];
+		final int alphaBits = ALPHA_BITS[mode];
+		for (int channel = 0; channel < 3; channel++) {
+			for (int e = 0; e < endpoints; e++) {
+				scratch[4 * e + channel] = bits(low, high, position, colourBits);
+				position += colourBits;
+			}
+		}
+		for (int e = 0; e < endpoints; e++) {
+			scratch[4 * e + 3] = bits(low, high, position, alphaBits);
+			position += alphaBits;
+		}
+		int pbits = 0;
+		if (ENDPOINT_PBITS[mode] != 0) {
+			for (int e = 0; e < endpoints; e++) {
+				addPBit(scratch, e, bits(low, high, position++, 1));
+			}
+			pbits = 1;
+		} else if (SHARED_PBITS[mode] != 0) {
+			for (int s = 0; s < subsets; s++) {
+				int pbit = bits(low, high, position++, 1);
+				addPBit(scratch, 2 * s, pbit);
+				addPBit(scratch, 2 * s + 1, pbit);
+			}
+			pbits = 1;
+		}
+		for (int e = 0; e < endpoints; e++) {
+			for (int channel = 0; channel < 3; channel++)
+				scratch[4 * e + channel] = unquantize(scratch[4 * e + channel], colourBits + pbits);
+			scratch[4 * e + 3] = alphaBits == 0 ? 255 : unquantize(scratch[4 * e + 3], alphaBits + pbits);
+		}
+
+		// indices, scratch[24 + pixel] and scratch[40 + pixel]
+		final int indexBits = INDEX_BITS[mode];
+		for (int i = 0; i < 16; i++) {
+			int bits = indexBits;
+			for (int s = 0; s < subsets; s++) {
+				if (anchor(subsets, partition, s) == i)
+					bits--;
+			}
+			scratch[24 + i] = bits(low, high, position, bits);
+			position += bits;
+		}
+		final int secondaryBits = SECONDARY_INDEX_BITS[mode];
+		if (secondaryBits != 0) {
+			for (int i = 0; i < 16; i++) {
+				int bits = i == 0 ? secondaryBits - 1 : secondaryBits;
+				scratch[40 + i] = bits(low, high, position, bits);
+				position += bits;
+			}
+		}
+
+		// store out the pixels
+		final int[] colourWeights = WEIGHTS[indexSelection == 0 ? indexBits : secondaryBits];
+		final int[] alphaWeights = WEIGHTS[secondaryBits == 0 || indexSelection != 0 ? indexBits : secondaryBits];
+		final int colourIndices = indexSelection == 0 ? 24 : 40;
+		final int alphaIndices = secondaryBits == 0 || indexSelection != 0 ? 24 : 40;
+		for (int py = 0; py < blockHeight; ++py) {
+			int target = rgbaOffset + py * rgbaStride;
+			for (int px = 0; px < blockWidth; ++px) {
+				final int i = 4 * py + px;
+				final int e0 = 8 * subset(subsets, partition, i);
+				final int colourWeight = colourWeights[scratch[colourIndices + i]];
+				final int alphaWeight = alphaWeights[scratch[alphaIndices + i]];
+				int r = interpolate(scratch[e0], scratch[e0 + 4], colourWeight);
+				int g = interpolate(scratch[e0 + 1], scratch[e0 + 5], colourWeight);
+				int b = interpolate(scratch[e0 + 2], scratch[e0 + 6], colourWeight);
+				int a = interpolate(scratch[e0 + 3], scratch[e0 + 7], alphaWeight);
+				switch (rotation) {
+					case 1: {
+						int swap = r;
+						r = a;
+						a = swap;
+						break;
+					}
+					case 2: {
+						int swap = g;
+						g = a;
+						a = swap;
+						break;
+					}
+					case 3: {
+						int swap = b;
+						b = a;
+						a = swap;
+						break;
+					}
+				}
+				rgba[target++] = (byte) r;
+				rgba[target++] = (byte) g;
+				rgba[target++] = (byte) b;
+				rgba[target++] = (byte) a;
+			}
+		}
+	}
+
+	private static void addPBit(final int[] endpoints, final int endpoint, final int pbit) {
+		for (int channel = 0; channel < 4; channel++)
+			endpoints[4 * endpoint + channel] = (endpoints[4 * endpoint + channel] << 1) | pbit;
+	}
+
+	/**
+	 * Reads count bits starting at bit position of the 128 bit block, lowest bit first.
+	 */
+	private static int bits(final long low, final long high, final int position, final int count) {
+		if (count == 0)
+			return 0;
+		long value;
+		if (position >= 64)
+			value = high >>> (position - 64);
+		else if (position + count <= 64)
+			value = low >>> position;
+		else
+			value = (low >>> position) | (high << (64 - position));
+		return (int) (value & ((1L << count) - 1));
+	}
+}
@@ -0,0 +1,26 @@
+package me.nallar.jdds.internal.compression;
+
+import java.nio.*;
+
+
+/**
+ * Decompressor for the BC7 format
+ */
+public class BC7BufferDecompressor extends BufferDecompressor {
+
+	/**
+	 * @param compressedBuffer
+	 * @param width
+	 * @param height
+	 */
+	public BC7BufferDecompressor(final ByteBuffer compressedBuffer,
+								 final int width, final int height) {
+		super(compressedBuffer, width, height, BandDecoder.bc7());
+	}
+
+	@Override
+	protected byte[] decompressImage() {
+		return BC7BlockCodec.decompressImage(this.compressedBuffer, this.dimension.width, this.dimension.height, null);
+	}
+
+}
@@ -0,0 +1,722 @@
+package me.nallar.jdds.internal.compression;
+
+import me.nallar.jdds.internal.ddsutil.TaskExecutors;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static me.nallar.jdds.internal.compression.BC7BlockCodec.*;
+
+
+/**
+ * Pure java BC7 encoder.
+ * <p>
+ * Every block is fitted with each enabled mode, partitioned modes only try the
+ * partitions which a quick principal axis estimate ranks best, so the mode mask,
+ * the partition budget and the number of endpoint refinements trade speed for quality.
+ * {@link #FAST}, {@link #DEFAULT} and {@link #BEST} are the usual presets.
+ * <p>
+ * Instances are immutable and thread-safe, images are compressed with several threads, one block row band each.
+ */
+public final class BC7Encoder {
+
+	/**
+	 * Mode mask enabling all eight modes.
+	 */
+	public static final int ALL_MODES = 0xFF;
+
+	/**
+	 * Mode 6 only, a single subset with 4 bit indices.
+	 */
+	public static final BC7Encoder FAST = new BC7Encoder(1 << 6, 0, 1);
+	/**
+	 * Modes 1, 3, 5, 6 and 7 with the 8 most promising partitions.
+	 */
+	public static final BC7Encoder DEFAULT = new BC7Encoder((1 << 1) | (1 << 3) | (1 << 5) | (1 << 6) | (1 << 7), 8, 2);
+	/**
+	 * All modes and partitions.
+	 */
+	public static final BC7Encoder BEST = new BC7Encoder(ALL_MODES, 64, 4);
+
+	private final int modes;
+	private final int partitionBudget;
+	private final int refinements;
+
+	/**
+	 * @param modes           bit i enables mode i, blocks with alpha are always fitted with mode 6 if
+	 *                        no enabled mode supports alpha
+	 * @param partitionBudget number of partitions tried by the modes with 2 or 3 subsets, 0..64,
+	 *                        0 disables these modes
+	 * @param refinements     maximum number of least squares endpoint refinements per subset
+	 */
+	public BC7Encoder(final int modes, final int partitionBudget, final int refinements) {
+		if (modes <= 0 || modes > ALL_MODES)
+			throw new IllegalArgumentException("Invalid mode mask: " + modes);
+		if (partitionBudget < 0 || partitionBudget > 64)
+			throw new IllegalArgumentException("partitionBudget must be 0..64: " + partitionBudget);
+		if (refinements < 0)
+			throw new IllegalArgumentException("refinements must not be negative: " + refinements);
+		this.modes = modes;
+		this.partitionBudget = partitionBudget;
+		this.refinements = refinements;
+	}
+
+	public int getModes() {
+		return modes;
+	}
+
+	public int getPartitionBudget() {
+		return partitionBudget;
+	}
+
+	public int getRefinements() {
+		return refinements;
+	}
+
+	/**
+	 * Compresses uncompressed pixels into BC7 blocks, using a temporary thread pool.
+	 *
+	 * @see #compressImage(ByteBuffer, int, int, int, ChannelOrder, ByteBuffer, ExecutorService)
+	 */
+	public ByteBuffer compressImage(final ByteBuffer source,
+									final int width,
+									final int height,
+									final int stride,
+									final ChannelOrder channelOrder,
+									final ByteBuffer target) {
+		return compressImage(source, width, height, stride, channelOrder, target, null);
+	}
+
+	/**
+	 * Compresses uncompressed pixels into BC7 blocks.
+	 * Bands of block rows are compressed in parallel on the executor.
+	 *
+	 * @param source       pixels read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param stride       distance between the start of two rows in bytes
+	 * @param channelOrder layout of a pixel in the source buffer
+	 * @param target       buffer receiving the blocks at its position, which is advanced past them
+	 * @param executor     executor compressing the bands, if null a temporary pool is used
+	 * @return target
+	 */
+	public ByteBuffer compressImage(final ByteBuffer source,
+									final int width,
+									final int height,
+									final int stride,
+									final ChannelOrder channelOrder,
+									final ByteBuffer target,
+									ExecutorService executor) {
+		final int bytesPerPixel = channelOrder.bytesPerPixel;
+		if (stride < width * bytesPerPixel)
+			throw new IllegalArgumentException("stride " + stride + " is smaller than a row of " + width + " pixels");
+		final int length = stride * (height - 1) + width * bytesPerPixel;
+		if (source.remaining() < length)
+			throw new IllegalArgumentException("unexpected length:" + source.remaining() + " instead of " + length);
+		final int storageRequirements = getStorageRequirements(width, height);
+		if (target.remaining() < storageRequirements)
+			throw new IllegalArgumentException("target has " + target.remaining() + " bytes remaining, " +
+					storageRequirements + " are required");
+
+		final int blockRows = (height + 3) / 4;
+		final int threads = Runtime.getRuntime().availableProcessors();
+		if (executor == null && (blockRows == 1 || threads == 1)) {
+			byte[] blocks = new byte[storageRequirements];
+			compressRows(source, width, height, stride, channelOrder, 0, blockRows, blocks, new Context());
+			target.put(blocks);
+			return target;
+		}
+
+		// a few bands per thread, so uneven bands even out
+		final int rowsPerBand = Math.max(1, blockRows / (4 * threads));
+		boolean temporaryExecutor = executor == null;
+		if (temporaryExecutor)
+			executor = TaskExecutors.newTemporaryExecutor(Math.min(threads, (blockRows + rowsPerBand - 1) / rowsPerBand));
+		try {
+			List<Future<byte[]>> bands = new ArrayList<>();
+			for (int row = 0; row < blockRows; row += rowsPerBand) {
+				final int firstRow = row;
+				final int lastRow = Math.min(blockRows, row + rowsPerBand);
+				final ByteBuffer band = source.duplicate();
+				bands.add(executor.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() {
+						byte[] blocks = new byte[(lastRow - firstRow) * ((width + 3) / 4) * BLOCK_SIZE];
+						compressRows(band, width, height, stride, channelOrder, firstRow, lastRow, blocks, new Context());
+						return blocks;
+					}
+				}));
+			}
+			for (Future<byte[]> band : bands) {
+				target.put(band.get());
+			}
+			return target;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} finally {
+			if (temporaryExecutor)
+				executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Compresses a single 4x4 block.
+	 *
+	 * @param rgba   16 pixels in RGBA-order, row by row
+	 * @param block  target array
+	 * @param offset offset in block
+	 */
+	public void compressBlock(final byte[] rgba, final byte[] block, final int offset) {
+		Context context = new Context();
+		for (int i = 0; i < 64; i++)
+			context.pixels[i] = rgba[i] & 0xFF;
+		compressBlock(context, block, offset);
+	}
+
+	private void compressRows(final ByteBuffer source,
+							  final int width,
+							  final int height,
+							  final int stride,
+							  final ChannelOrder channelOrder,
+							  final int firstRow,
+							  final int lastRow,
+							  final byte[] blocks,
+							  final Context context) {
+		final int base = source.position();
+		final int bytesPerPixel = channelOrder.bytesPerPixel;
+		final int[] pixels = context.pixels;
+		int targetBlock = 0;
+		for (int y = 4 * firstRow; y < 4 * lastRow; y += 4) {
+			for (int x = 0; x < width; x += 4) {
+				// pixels outside of the image repeat the last row and column
+				int targetPixel = 0;
+				for (int py = 0; py < 4; py++) {
+					int row = base + Math.min(y + py, height - 1) * stride;
+					for (int px = 0; px < 4; px++) {
+						int sourcePixel = row + Math.min(x + px, width - 1) * bytesPerPixel;
+						pixels[targetPixel++] = source.get(sourcePixel + channelOrder.red) & 0xFF;
+						pixels[targetPixel++] = source.get(sourcePixel + channelOrder.green) & 0xFF;
+						pixels[targetPixel++] = source.get(sourcePixel + channelOrder.blue) & 0xFF;
+						pixels[targetPixel++] = channelOrder.alpha < 0 ? 255 : source.get(sourcePixel + channelOrder.alpha) & 0xFF;
+					}
+				}
+				compressBlock(context, blocks, targetBlock);
+				targetBlock += BLOCK_SIZE;
+			}
+		}
+	}
+
+	private void compressBlock(final Context c, final byte[] block, final int offset) {
+		boolean opaque = true;
+		for (int i = 3; i < 64; i += 4) {
+			if (c.pixels[i] != 255) {
+				opaque = false;
+				break;
+			}
+		}
+
+		c.bestError = Long.MAX_VALUE;
+		System.arraycopy(c.pixels, 0, c.work, 0, 64);
+		if (partitionBudget > 0 && (modes & TWO_SUBSET_MODES) != 0)
+			rankPartitions(c, 2, opaque ? 3 : 4, c.ranking2);
+		if (partitionBudget > 0 && opaque && (modes & THREE_SUBSET_MODES) != 0)
+			rankPartitions(c, 3, 3, c.ranking3);
+		for (int mode = 0; mode < 8 && c.bestError > 0; mode++) {
+			if ((modes & (1 << mode)) == 0 || (!opaque && ALPHA_BITS[mode] == 0))
+				continue;
+			if (ROTATION_BITS[mode] != 0) {
+				for (int rotation = 0; rotation < 4; rotation++) {
+					for (int indexSelection = 0; indexSelection <= INDEX_SELECTION_BITS[mode]; indexSelection++)
+						encodeSeparateAlpha(c, mode, rotation, indexSelection);
+				}
+			} else if (SUBSETS[mode] == 1) {
+				encode(c, mode, 0);
+			} else {
+				int[] ranking = SUBSETS[mode] == 2 ? c.ranking2 : c.ranking3;
+				int tried = 0;
+				for (int i = 0; i < 64 && tried < partitionBudget; i++) {
+					if (ranking[i] < (1 << PARTITION_BITS[mode])) {
+						encode(c, mode, ranking[i]);
+						tried++;
+					}
+				}
+			}
+		}
+		if (c.bestError == Long.MAX_VALUE)
+			encode(c, 6, 0);
+		System.arraycopy(c.best, 0, block, offset, BLOCK_SIZE);
+	}
+
+	/**
+	 * Sorts the partitions by the error of fitting a line through each of their subsets.
+	 */
+	private static void rankPartitions(final Context c, final int subsets, final int channels, final int[] ranking) {
+		for (int partition = 0; partition < 64; partition++) {
+			float error = 0;
+			for (int s = 0; s < subsets; s++) {
+				int members = 0;
+				for (int i = 0; i < 16; i++) {
+					if (subset(subsets, partition, i) == s)
+						members |= 1 << i;
+				}
+				error += principalAxis(c, members, 0, channels);
+			}
+			c.partitionErrors[partition] = error;
+			ranking[partition] = partition;
+		}
+		// insertion sort, the array is tiny
+		for (int i = 1; i < 64; i++) {
+			int partition = ranking[i];
+			float error = c.partitionErrors[partition];
+			int j = i - 1;
+			while (j >= 0 && c.partitionErrors[ranking[j]] > error) {
+				ranking[j + 1] = ranking[j];
+				j--;
+			}
+			ranking[j + 1] = partition;
+		}
+	}
+
+	/**
+	 * Computes the mean and principal axis of the member pixels into c.mean and c.axis.
+	 *
+	 * @return the squared distance of the pixels to the principal axis
+	 */
+	private static float principalAxis(final Context c, final int members, final int first, final int count) {
+		final int[] pixels = c.work;
+		final float[] mean = c.mean;
+		final float[] axis = c.axis;
+		final float[] covariance = c.covariance;
+		final int n = Integer.bitCount(members);
+		Arrays.fill(mean, 0);
+		Arrays.fill(covariance, 0);
+		for (int i = 0; i < 16; i++) {
+			if ((members & (1 << i)) != 0) {
+				for (int ch = first; ch < first + count; ch++)
+					mean[ch] += pixels[4 * i + ch];
+			}
+		}
+		for (int ch = first; ch < first + count; ch++)
+			mean[ch] /= n;
+
+		float total = 0;
+		for (int i = 0; i < 16; i++) {
+			if ((members & (1 << i)) == 0)
+				continue;
+			for (int a = first; a < first + count; a++) {
+				float da = pixels[4 * i + a] - mean[a];
+				total += da * da;
+				for (int b = a; b < first + count; b++)
+					covariance[4 * a + b] += da * (pixels[4 * i + b] - mean[b]);
+			}
+		}
+		for (int a = first; a < first + count; a++) {
+			for (int b = first; b < a; b++)
+				covariance[4 * a + b] = covariance[4 * b + a];
+		}
+
+		// power iteration, starting along the largest diagonal entry
+		Arrays.fill(axis, 0);
+		int start = first;
+		for (int ch = first; ch < first + count; ch++) {
+			if (covariance[5 * ch] > covariance[5 * start])
+				start = ch;
+		}
+		axis[start] = 1;
+		float eigenvalue = 0;
+		for (int iteration = 0; iteration < 8; iteration++) {
+			float length = 0;
+			for (int a = first; a < first + count; a++) {
+				float value = 0;
+				for (int b = first; b < first + count; b++)
+					value += covariance[4 * a + b] * axis[b];
+				c.scratch[a] = value;
+				length += value * value;
+			}
+			if (length == 0) {
+				Arrays.fill(axis, 0);
+				return total;
+			}
+			length = (float) Math.sqrt(length);
+			eigenvalue = length;
+			for (int a = first; a < first + count; a++)
+				axis[a] = c.scratch[a] / length;
+		}
+		return Math.max(0, total - eigenvalue);
+	}
+
+	/**
+	 * Encodes the block with one of the modes which share their indices between colour and alpha.
+	 */
+	private void encode(final Context c, final int mode, final int partition) {
+		System.arraycopy(c.pixels, 0, c.work, 0, 64);
+		final int subsets = SUBSETS[mode];
+		final int channels = ALPHA_BITS[mode] == 0 ? 3 : 4;
+		final int pbitMode = ENDPOINT_PBITS[mode] != 0 ? PBITS_ENDPOINT : SHARED_PBITS[mode] != 0 ? PBITS_SHARED : PBITS_NONE;
+		long error = 0;
+		for (int s = 0; s < subsets && error < c.bestError; s++) {
+			int members = 0;
+			for (int i = 0; i < 16; i++) {
+				if (subset(subsets, partition, i) == s)
+					members |= 1 << i;
+			}
+			error += fitSubset(c, members, 0, channels, COLOUR_BITS[mode], ALPHA_BITS[mode], pbitMode, INDEX_BITS[mode]);
+			storeFit(c.fit, members, 0, channels, INDEX_BITS[mode], anchor(subsets, partition, s),
+					c.endpoints, 8 * s, c.pbits, 2 * s, c.indices);
+		}
+		if (error >= c.bestError)
+			return;
+
+		final BitWriter writer = c.writer;
+		writer.reset();
+		writer.write(1 << mode, mode + 1);
+		writer.write(partition, PARTITION_BITS[mode]);
+		for (int ch = 0; ch < channels; ch++) {
+			for (int e = 0; e < 2 * subsets; e++)
+				writer.write(c.endpoints[4 * e + ch], ch == 3 ? ALPHA_BITS[mode] : COLOUR_BITS[mode]);
+		}
+		if (pbitMode == PBITS_ENDPOINT) {
+			for (int e = 0; e < 2 * subsets; e++)
+				writer.write(c.pbits[e], 1);
+		} else if (pbitMode == PBITS_SHARED) {
+			for (int s = 0; s < subsets; s++)
+				writer.write(c.pbits[2 * s], 1);
+		}
+		writeIndices(writer, c.indices, INDEX_BITS[mode], subsets, partition);
+		writer.store(c.best, 0);
+		c.bestError = error;
+	}
+
+	/**
+	 * Encodes the block with mode 4 or 5, which have separate colour and alpha indices.
+	 *
+	 * @param rotation       channel swapped with alpha before encoding, 0 for none
+	 * @param indexSelection mode 4 only, 1 to use the 3 bit indices for colour
+	 */
+	private void encodeSeparateAlpha(final Context c, final int mode, final int rotation, final int indexSelection) {
+		System.arraycopy(c.pixels, 0, c.work, 0, 64);
+		if (rotation != 0) {
+			for (int i = 0; i < 64; i += 4) {
+				int swap = c.work[i + rotation - 1];
+				c.work[i + rotation - 1] = c.work[i + 3];
+				c.work[i + 3] = swap;
+			}
+		}
+		final int primaryBits = INDEX_BITS[mode];
+		final int secondaryBits = SECONDARY_INDEX_BITS[mode];
+		final int colourIndexBits = indexSelection == 0 ? primaryBits : secondaryBits;
+		final int alphaIndexBits = indexSelection == 0 ? secondaryBits : primaryBits;
+
+		long error = fitSubset(c, 0xFFFF, 0, 3, COLOUR_BITS[mode], 0, PBITS_NONE, colourIndexBits);
+		storeFit(c.fit, 0xFFFF, 0, 3, colourIndexBits, 0, c.endpoints, 0, c.pbits, 0, c.indices);
+		if (error >= c.bestError)
+			return;
+		error += fitSubset(c, 0xFFFF, 3, 1, 0, ALPHA_BITS[mode], PBITS_NONE, alphaIndexBits);
+		storeFit(c.fit, 0xFFFF, 3, 1, alphaIndexBits, 0, c.endpoints, 0, c.pbits, 0, c.alphaIndices);
+		if (error >= c.bestError)
+			return;
+
+		final BitWriter writer = c.writer;
+		writer.reset();
+		writer.write(1 << mode, mode + 1);
+		writer.write(rotation, ROTATION_BITS[mode]);
+		writer.write(indexSelection, INDEX_SELECTION_BITS[mode]);
+		for (int ch = 0; ch < 4; ch++) {
+			for (int e = 0; e < 2; e++)
+				writer.write(c.endpoints[4 * e + ch], ch == 3 ? ALPHA_BITS[mode] : COLOUR_BITS[mode]);
+		}
+		writeIndices(writer, indexSelection == 0 ? c.indices : c.alphaIndices, primaryBits, 1, 0);
+		writeIndices(writer, indexSelection == 0 ? c.alphaIndices : c.indices, secondaryBits, 1, 0);
+		writer.store(c.best, 0);
+		c.bestError = error;
+	}
+
+	private static void writeIndices(final BitWriter writer, final int[] indices, final int indexBits,
+									 final int subsets, final int partition) {
+		for (int i = 0; i < 16; i++) {
+			int bits = indexBits;
+			for (int s = 0; s < subsets; s++) {
+				if (anchor(subsets, partition, s) == i)
+					bits--;
+			}
+			writer.write(indices[i], bits);
+		}
+	}
+
+	/**
+	 * Copies a fitted subset out of the fit, swapping its endpoints if
+	 * the index of the anchor pixel has its most significant bit set.
+	 */
+	private static void storeFit(final Fit fit, final int members, final int first, final int count,
+								 final int indexBits, final int anchor,
+								 final int[] endpoints, final int endpointOffset,
+								 final int[] pbits, final int pbitOffset,
+								 final int[] indices) {
+		final int highest = (1 << indexBits) - 1;
+		final boolean swap = fit.indices[anchor] > highest >> 1;
+		for (int ch = first; ch < first + count; ch++) {
+			endpoints[endpointOffset + ch] = fit.endpoints[swap ? 4 + ch : ch];
+			endpoints[endpointOffset + 4 + ch] = fit.endpoints[swap ? ch : 4 + ch];
+		}
+		pbits[pbitOffset] = fit.pbits[swap ? 1 : 0];
+		pbits[pbitOffset + 1] = fit.pbits[swap ? 0 : 1];
+		for (int i = 0; i < 16; i++) {
+			if ((members & (1 << i)) != 0)
+				indices[i] = swap ? highest - fit.indices[i] : fit.indices[i];
+		}
+	}
+
+	/**
+	 * Fits endpoints and indices to the channels [first, first + count) of the member pixels into c.fit.
+	 *
+	 * @return the squared error
+	 */
+	private long fitSubset(final Context c, final int members, final int first, final int count,
+						   final int colourBits, final int alphaBits, final int pbitMode, final int indexBits) {
+		final float[] e0 = c.endpoint0;
+		final float[] e1 = c.endpoint1;
+		principalAxis(c, members, first, count);
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+		for (int i = 0; i < 16; i++) {
+			if ((members & (1 << i)) == 0)
+				continue;
+			float t = 0;
+			for (int ch = first; ch < first + count; ch++)
+				t += (c.work[4 * i + ch] - c.mean[ch]) * c.axis[ch];
+			min = Math.min(min, t);
+			max = Math.max(max, t);
+		}
+		for (int ch = first; ch < first + count; ch++) {
+			e0[ch] = c.mean[ch] + min * c.axis[ch];
+			e1[ch] = c.mean[ch] + max * c.axis[ch];
+		}
+
+		Fit fit = c.fit;
+		Fit candidate = c.candidate;
+		quantizeAndAssign(c, members, first, count, colourBits, alphaBits, pbitMode, indexBits, fit);
+		for (int iteration = 0; iteration < refinements && fit.error > 0; iteration++) {
+			if (!leastSquares(c, fit, members, first, count, indexBits))
+				break;
+			quantizeAndAssign(c, members, first, count, colourBits, alphaBits, pbitMode, indexBits, candidate);
+			if (candidate.error >= fit.error)
+				break;
+			Fit swap = fit;
+			fit = candidate;
+			candidate = swap;
+		}
+		c.fit = fit;
+		c.candidate = candidate;
+		return fit.error;
+	}
+
+	/**
+	 * Solves for the endpoints minimising the error of the fit's indices into c.endpoint0 and c.endpoint1.
+	 *
+	 * @return false if the system is singular
+	 */
+	private static boolean leastSquares(final Context c, final Fit fit, final int members,
+										final int first, final int count, final int indexBits) {
+		final int[] weights = WEIGHTS[indexBits];
+		float aa = 0, ab = 0, bb = 0;
+		final float[] x = c.endpoint0;
+		final float[] y = c.endpoint1;
+		Arrays.fill(c.scratch, 0);
+		Arrays.fill(c.mean, 0);
+		for (int i = 0; i < 16; i++) {
+			if ((members & (1 << i)) == 0)
+				continue;
+			float t = weights[fit.indices[i]] / 64f;
+			float s = 1 - t;
+			aa += s * s;
+			ab += s * t;
+			bb += t * t;
+			for (int ch = first; ch < first + count; ch++) {
+				c.scratch[ch] += s * c.work[4 * i + ch];
+				c.mean[ch] += t * c.work[4 * i + ch];
+			}
+		}
+		float determinant = aa * bb - ab * ab;
+		if (Math.abs(determinant) < 1e-6f)
+			return false;
+		for (int ch = first; ch < first + count; ch++) {
+			x[ch] = clamp((bb * c.scratch[ch] - ab * c.mean[ch]) / determinant);
+			y[ch] = clamp((aa * c.mean[ch] - ab * c.scratch[ch]) / determinant);
+		}
+		return true;
+	}
+
+	private static float clamp(final float value) {
+		return Math.max(0, Math.min(255, value));
+	}
+
+	/**
+	 * Quantizes c.endpoint0 and c.endpoint1 with every allowed p-bit combination
+	 * and assigns the closest indices, the best result is stored in target.
+	 */
+	private static void quantizeAndAssign(final Context c, final int members, final int first, final int count,
+										  final int colourBits, final int alphaBits, final int pbitMode,
+										  final int indexBits, final Fit target) {
+		final int[] weights = WEIGHTS[indexBits];
+		final int codes = weights.length;
+		final int[] palette = c.palette;
+		final int[] quantized = c.quantized;
+		final int combinations = pbitMode == PBITS_NONE ? 1 : pbitMode == PBITS_SHARED ? 2 : 4;
+		final int pbit = pbitMode == PBITS_NONE ? 0 : 1;
+		target.error = Long.MAX_VALUE;
+		for (int combination = 0; combination < combinations; combination++) {
+			final int p0 = combination & 1;
+			final int p1 = pbitMode == PBITS_ENDPOINT ? combination >> 1 : p0;
+			for (int ch = first; ch < first + count; ch++) {
+				int bits = ch == 3 ? alphaBits : colourBits;
+				quantized[ch] = quantize(c.endpoint0[ch], bits, pbit, p0);
+				quantized[4 + ch] = quantize(c.endpoint1[ch], bits, pbit, p1);
+				int value0 = unquantize(pbit == 0 ? quantized[ch] : (quantized[ch] << 1) | p0, bits + pbit);
+				int value1 = unquantize(pbit == 0 ? quantized[4 + ch] : (quantized[4 + ch] << 1) | p1, bits + pbit);
+				for (int k = 0; k < codes; k++)
+					palette[4 * k + ch] = interpolate(value0, value1, weights[k]);
+			}
+
+			long error = 0;
+			for (int i = 0; i < 16 && error < target.error; i++) {
+				if ((members & (1 << i)) == 0)
+					continue;
+				int least = Integer.MAX_VALUE;
+				int index = 0;
+				for (int k = 0; k < codes; k++) {
+					int dist = 0;
+					for (int ch = first; ch < first + count; ch++) {
+						int d = c.work[4 * i + ch] - palette[4 * k + ch];
+						dist += d * d;
+					}
+					if (dist < least) {
+						least = dist;
+						index = k;
+					}
+				}
+				c.assigned[i] = index;
+				error += least;
+			}
+			if (error < target.error) {
+				target.error = error;
+				System.arraycopy(quantized, 0, target.endpoints, 0, 8);
+				System.arraycopy(c.assigned, 0, target.indices, 0, 16);
+				target.pbits[0] = p0;
+				target.pbits[1] = p1;
+			}
+		}
+	}
+
+	/**
+	 * Closest stored endpoint component for an 8 bit value.
+	 *
+	 * @param bits stored bits, without the p-bit
+	 * @param pbit 1 if a p-bit is appended, 0 otherwise
+	 * @param p    value of the p-bit
+	 */
+	private static int quantize(final float value, final int bits, final int pbit, final int p) {
+		final int total = bits + pbit;
+		final int highest = (1 << bits) - 1;
+		final int guess = Math.round((value * ((1 << total) - 1) / 255f - p) / (1 << pbit));
+		int best = 0;
+		float least = Float.MAX_VALUE;
+		for (int q = Math.max(0, guess - 1); q <= Math.min(highest, guess + 1); q++) {
+			float dist = Math.abs(unquantize((q << pbit) | p, total) - value);
+			if (dist < least) {
+				least = dist;
+				best = q;
+			}
+		}
+		return best;
+	}
+
+	private static final int TWO_SUBSET_MODES = (1 << 1) | (1 << 3) | (1 << 7);
+	private static final int THREE_SUBSET_MODES = (1 << 0) | (1 << 2);
+	private static final int PBITS_NONE = 0;
+	private static final int PBITS_SHARED = 1;
+	private static final int PBITS_ENDPOINT = 2;
+
+	/**
+	 * Stored endpoints, p-bits and indices of a fitted subset.
+	 */
+	private static final class Fit {
+		final int[] endpoints = new int[8];
+		final int[] pbits = new int[2];
+		final int[] indices = new int[16];
+		long error;
+	}
+
+	/**
+	 * Little-endian writer for a 128 bit block.
+	 */
+	private static final class BitWriter {
+		long low;
+		long high;
+		int position;
+
+		void reset() {
+			low = 0;
+			high = 0;
+			position = 0;
+		}
+
+		void write(final int value, final int count) {
+			if (count == 0)
+				return;
+			long bits = value & ((1L << count) - 1);
+			if (position >= 64) {
+				high |= bits << (position - 64);
+			} else {
+				low |= bits << position;
+				if (position + count > 64)
+					high |= bits >>> (64 - position);
+			}
+			position += count;
+		}
+
+		void store(final byte[] block, final int offset) {
+			for (int i = 0; i < 8; i++) {
+				block[offset + i] = (byte) (low >>> (8 * i));
+				block[offset + 8 + i] = (byte) (high >>> (8 * i));
+			}
+		}
+	}
+
+	/**
+	 * Working state of one compressing thread.
+	 */
+	private static final class Context {
+		final int[] pixels = new int[64];
+		final int[] work = new int[64];
+		final float[] mean = new float[4];
+		final float[] axis = new float[4];
+		final float[] covariance = new float[16];
+		final float[] scratch = new float[4];
+		final float[] endpoint0 = new float[4];
+		final float[] endpoint1 = new float[4];
+		final int[] quantized = new int[8];
+		final int[] palette = new int[16 * 4];
+		final int[] assigned = new int[16];
+		final float[] partitionErrors = new float[64];
+		final int[] ranking2 = new int[64];
+		final int[] ranking3 = new int[64];
+		final int[] endpoints = new int[3 * 8];
+		final int[] pbits = new int[6];
+		final int[] indices = new int[16];
+		final int[] alphaIndices = new int[16];
+		final BitWriter writer = new BitWriter();
+		final byte[] best = new byte[BLOCK_SIZE];
+		Fit fit = new Fit();
+		Fit candidate = new Fit();
+		long bestError;
+	}
+}
@@ -0,0 +1,239 @@
+package me.nallar.jdds.internal.compression;
+
+import gr.zdimensions.jsquish.Squish;
+import gr.zdimensions.jsquish.Squish.CompressionType;
+
+import java.nio.*;
+
+
+/**
+ * Decoder for one band of {@link #ROWS} full-width rows of an image.
+ * Block compressed images are stored block row by block row, so each band
+ * is one row of blocks and can be decoded as soon as its bytes are available.
+ * Uncompressed images use bands of the same height.
+ * <p>
+ * As blocks and pixels are addressable, a rectangular region can also be
+ * decoded on its own, see {@link #decodeRegion}.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public abstract class BandDecoder {
+
+	/**
+	 * Height of a band in pixels, the last band of an image may be lower.
+	 */
+	public static final int ROWS = 4;
+
+	// width and height of the smallest addressable unit, 4 for blocks and 1 for pixels
+	private final int unit;
+
+	private BandDecoder(final int unit) {
+		this.unit = unit;
+	}
+
+	/**
+	 * Decoder for DXT1, DXT3 or DXT5 blocks.
+	 */
+	public static BandDecoder dxt(final CompressionType type) {
+		return new DXTDecoder(type);
+	}
+
+	/**
+	 * Decoder for BC4 (ATI1) or BC5 (ATI2) blocks.
+	 *
+	 * @param twoChannels true for BC5, false for BC4
+	 */
+	public static BandDecoder rgtc(final boolean twoChannels) {
+		return new RGTCDecoder(twoChannels);
+	}
+
+	/**
+	 * Decoder for BC7 blocks.
+	 */
+	public static BandDecoder bc7() {
+		return new BC7Decoder();
+	}
+
+	/**
+	 * Decoder for uncompressed pixels described by bit masks.
+	 */
+	public static BandDecoder bitMask(final BitMaskDecoder decoder) {
+		return new UncompressedDecoder(decoder);
+	}
+
+	/**
+	 * Number of bytes holding a band of the given size.
+	 *
+	 * @param width
+	 * @param rows  1..ROWS
+	 */
+	public abstract int getBandSize(int width, int rows);
+
+	/**
+	 * Decodes one band into RGBA-pixels.
+	 *
+	 * @param band  data of the band, read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param rows  1..ROWS
+	 * @param rgba  array receiving the pixels starting at 0, allocated if null or too small
+	 * @return rgba
+	 */
+	public abstract byte[] decodeBand(ByteBuffer band, int width, int rows, byte[] rgba);
+
+	/**
+	 * Decodes a whole image band by band, top to bottom, passing each band to the sink.
+	 * Only one band of pixels is allocated.
+	 *
+	 * @param data   image data, read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param sink   receives the decoded bands
+	 */
+	public void decode(final ByteBuffer data, final int width, final int height, final BandSink sink) {
+		int offset = data.position();
+		if (data.remaining() < totalSize(width, height))
+			throw new IllegalArgumentException("Invalid source image data specified.");
+
+		final ByteBuffer band = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		byte[] rgba = null;
+		for (int y = 0; y < height; y += ROWS) {
+			final int rows = Math.min(ROWS, height - y);
+			final int size = getBandSize(width, rows);
+			band.clear();
+			band.limit(offset + size);
+			band.position(offset);
+			rgba = decodeBand(band, width, rows, rgba);
+			sink.band(y, width, rows, rgba);
+			offset += size;
+		}
+	}
+
+	/**
+	 * Decodes the rectangular region x, y, regionWidth, regionHeight of an image.
+	 * Only the blocks (or pixels) overlapping the region are read and decoded.
+	 *
+	 * @param data   image data, read with absolute gets starting at the buffer's position
+	 * @param width  width of the whole image
+	 * @param height height of the whole image
+	 * @param rgba   array receiving the pixels of the region in RGBA-order, allocated if null or too small
+	 * @return rgba
+	 */
+	public byte[] decodeRegion(final ByteBuffer data, final int width, final int height,
+							   final int x, final int y, final int regionWidth, final int regionHeight,
+							   byte[] rgba) {
+		if (x < 0 || y < 0 || regionWidth <= 0 || regionHeight <= 0 ||
+				x > width - regionWidth || y > height - regionHeight)
+			throw new IllegalArgumentException("Region " + x + "," + y + " " + regionWidth + "x" + regionHeight +
+					" is not inside the image of " + width + "x" + height);
+		if (rgba == null || rgba.length < regionWidth * regionHeight * 4)
+			rgba = new byte[regionWidth * regionHeight * 4];
+
+		// the overlapped units of one row are stored next to each other, so they form a narrower band
+		final int left = x / unit * unit;
+		final int right = Math.min(width, (x + regionWidth + unit - 1) / unit * unit);
+		final int bandWidth = right - left;
+		final ByteBuffer band = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		byte[] pixels = null;
+		for (int row = y / unit * unit; row < y + regionHeight; row += unit) {
+			final int rows = Math.min(unit, height - row);
+			final int offset = data.position() + (row / unit) * getBandSize(width, unit)
+					+ (left / unit) * getBandSize(unit, rows);
+			final int size = getBandSize(bandWidth, rows);
+			if (offset + size > data.limit())
+				throw new IllegalArgumentException("Invalid source image data specified.");
+			band.clear();
+			band.limit(offset + size);
+			band.position(offset);
+			pixels = decodeBand(band, bandWidth, rows, pixels);
+
+			final int first = Math.max(row, y);
+			final int last = Math.min(row + rows, y + regionHeight);
+			for (int py = first; py < last; py++) {
+				System.arraycopy(pixels, ((py - row) * bandWidth + x - left) * 4,
+						rgba, (py - y) * regionWidth * 4, regionWidth * 4);
+			}
+		}
+		return rgba;
+	}
+
+	private int totalSize(final int width, final int height) {
+		final int fullBands = height / ROWS;
+		final int lastRows = height % ROWS;
+		return fullBands * getBandSize(width, ROWS) + (lastRows == 0 ? 0 : getBandSize(width, lastRows));
+	}
+
+	private static final class DXTDecoder extends BandDecoder {
+		private final CompressionType type;
+
+		DXTDecoder(final CompressionType type) {
+			super(4);
+			this.type = type;
+		}
+
+		@Override
+		public int getBandSize(final int width, final int rows) {
+			return Squish.getStorageRequirements(width, rows, type);
+		}
+
+		@Override
+		public byte[] decodeBand(final ByteBuffer band, final int width, final int rows, final byte[] rgba) {
+			return DXTBlockDecoder.decompressImage(band, width, rows, type, rgba);
+		}
+	}
+
+	private static final class RGTCDecoder extends BandDecoder {
+		private final boolean twoChannels;
+
+		RGTCDecoder(final boolean twoChannels) {
+			super(4);
+			this.twoChannels = twoChannels;
+		}
+
+		@Override
+		public int getBandSize(final int width, final int rows) {
+			return RGTCBlockCodec.getStorageRequirements(width, rows, twoChannels);
+		}
+
+		@Override
+		public byte[] decodeBand(final ByteBuffer band, final int width, final int rows, final byte[] rgba) {
+			return RGTCBlockCodec.decompressImage(band, width, rows, twoChannels, rgba);
+		}
+	}
+
+	private static final class BC7Decoder extends BandDecoder {
+		BC7Decoder() {
+			super(4);
+		}
+
+		@Override
+		public int getBandSize(final int width, final int rows) {
+			return BC7BlockCodec.getStorageRequirements(width, rows);
+		}
+
+		@Override
+		public byte[] decodeBand(final ByteBuffer band, final int width, final int rows, final byte[] rgba) {
+			return BC7BlockCodec.decompressImage(band, width, rows, rgba);
+		}
+	}
+
+	private static final class UncompressedDecoder extends BandDecoder {
+		private final BitMaskDecoder decoder;
+
+		UncompressedDecoder(final BitMaskDecoder decoder) {
+			super(1);
+			if (decoder == null)
+				throw new NullPointerException("decoder");
+			this.decoder = decoder;
+		}
+
+		@Override
+		public int getBandSize(final int width, final int rows) {
+			return width * rows * decoder.getBytesPerPixel();
+		}
+
+		@Override
+		public byte[] decodeBand(final ByteBuffer band, final int width, final int rows, final byte[] rgba) {
+			return decoder.decode(band, width, rows, rgba);
+		}
+	}
+}
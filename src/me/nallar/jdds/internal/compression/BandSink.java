@@ -0,0 +1,23 @@
+package me.nallar.jdds.internal.compression;
+
+
+/**
+ * Receives an image band by band, top to bottom, see {@link BandDecoder}.
+ * Only one band is held in memory at a time, so huge textures can be
+ * tiled, scaled or encoded while they are decoded.
+ *
+ * @see BandSinks
+ */
+public interface BandSink {
+
+	/**
+	 * Called for each band in order.
+	 *
+	 * @param y     first row of the band
+	 * @param width width of the band, the width of the image
+	 * @param rows  number of rows, 1..{@link BandDecoder#ROWS}
+	 * @param rgba  the pixels of the band in RGBA-order starting at 0,
+	 *              only valid during the call as the array is reused for the next band
+	 */
+	void band(int y, int width, int rows, byte[] rgba);
+}
@@ -0,0 +1,85 @@
+package me.nallar.jdds.internal.compression;
+
+import java.awt.image.*;
+import java.nio.*;
+
+
+/**
+ * {@link BandSink}s writing the bands into common targets.
+ * The sinks are not thread-safe.
+ */
+public final class BandSinks {
+
+	private BandSinks() {
+	}
+
+	/**
+	 * Copies the bands into the raster, which needs 3 (RGB) or 4 (RGBA) bands.
+	 *
+	 * @param raster
+	 * @param x      column of the raster receiving the first column of the image
+	 * @param y      row of the raster receiving the first row of the image
+	 */
+	public static BandSink raster(final WritableRaster raster, final int x, final int y) {
+		final int bands = raster.getNumBands();
+		if (bands != 3 && bands != 4)
+			throw new IllegalArgumentException("Raster needs 3 or 4 bands, has " + bands);
+		return new BandSink() {
+			private int[] samples;
+
+			@Override
+			public void band(final int row, final int width, final int rows, final byte[] rgba) {
+				final int pixels = width * rows;
+				if (samples == null || samples.length < pixels * bands)
+					samples = new int[pixels * bands];
+				for (int i = 0, j = 0; i < pixels; i++) {
+					for (int b = 0; b < bands; b++)
+						samples[j++] = rgba[4 * i + b] & 0xFF;
+				}
+				raster.setPixels(x, y + row, width, rows, samples);
+			}
+		};
+	}
+
+	/**
+	 * Passes the bands to the consumer as ARGB pixels of the {@link ColorModel#getRGBdefault() default model}.
+	 * Only {@link ImageConsumer#setPixels(int, int, int, int, ColorModel, int[], int, int)} is called,
+	 * the dimensions have to be set before decoding and {@link ImageConsumer#imageComplete(int)}
+	 * be called afterwards.
+	 */
+	public static BandSink imageConsumer(final ImageConsumer consumer) {
+		return new BandSink() {
+			private final ColorModel model = ColorModel.getRGBdefault();
+			private int[] argb;
+
+			@Override
+			public void band(final int y, final int width, final int rows, final byte[] rgba) {
+				final int pixels = width * rows;
+				if (argb == null || argb.length < pixels)
+					argb = new int[pixels];
+				for (int i = 0; i < pixels; i++) {
+					argb[i] = (rgba[4 * i + 3] & 0xFF) << 24 | (rgba[4 * i] & 0xFF) << 16
+							| (rgba[4 * i + 1] & 0xFF) << 8 | (rgba[4 * i + 2] & 0xFF);
+				}
+				consumer.setPixels(0, y, width, rows, model, argb, 0, width);
+			}
+		};
+	}
+
+	/**
+	 * Copies the RGBA-pixels of the bands into the buffer, row after row
+	 * starting at the buffer's position, which is not changed.
+	 * The buffer may e.g. be direct or a mapped file.
+	 */
+	public static BandSink buffer(final ByteBuffer target) {
+		final int base = target.position();
+		return new BandSink() {
+			@Override
+			public void band(final int y, final int width, final int rows, final byte[] rgba) {
+				ByteBuffer view = target.duplicate();
+				view.position(base + y * width * 4);
+				view.put(rgba, 0, width * rows * 4);
+			}
+		};
+	}
+}
@@ -0,0 +1,30 @@
+package me.nallar.jdds.internal.compression;
+
+import java.nio.*;
+
+
+/**
+ * Decompressor for uncompressed layouts described by bit masks
+ */
+public class BitMaskBufferDecompressor extends BufferDecompressor {
+
+	private final BitMaskDecoder bitMaskDecoder;
+
+	/**
+	 * @param buffer
+	 * @param width
+	 * @param height
+	 * @param decoder decoder for the layout of the buffer
+	 */
+	public BitMaskBufferDecompressor(final ByteBuffer buffer,
+									 final int width, final int height, final BitMaskDecoder decoder) {
+		super(buffer, width, height, BandDecoder.bitMask(decoder));
+		this.bitMaskDecoder = decoder;
+	}
+
+	@Override
+	protected byte[] decompressImage() {
+		return this.bitMaskDecoder.decode(this.compressedBuffer, this.dimension.width, this.dimension.height, null);
+	}
+
+}
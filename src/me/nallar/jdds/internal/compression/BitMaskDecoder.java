@@ -0,0 +1,300 @@
+package me.nallar.jdds.internal.compression;
+
+import me.nallar.jdds.internal.jogl.DDSImage;
+
+import java.nio.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Decoder for uncompressed pixels described by a bit count and one bit mask per channel,
+ * as found in the pixel format of a DDS header, e.g. R5G6B5, A4R4G4B4, A1R5G5B5,
+ * L8, A8L8, A8, R8G8B8 or X8R8G8B8.
+ * <p>
+ * {@link #get} builds a kernel specialised for the layout once and caches it per mask signature:
+ * 8 and 16 bit layouts use a table of all possible pixels, 24 and 32 bit layouts with whole byte
+ * channels copy bytes, all others shift and scale each channel.
+ * Channels without a mask decode to 0, a missing alpha channel decodes to 255 and
+ * luminance layouts copy their red mask into red, green and blue.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public abstract class BitMaskDecoder {
+
+	private static final ConcurrentMap<Signature, BitMaskDecoder> decoders =
+			new ConcurrentHashMap<Signature, BitMaskDecoder>();
+
+	protected final int bytesPerPixel;
+
+	private BitMaskDecoder(final int bitCount) {
+		this.bytesPerPixel = bitCount / 8;
+	}
+
+	/**
+	 * Returns the decoder for the layout, created on first use.
+	 *
+	 * @param bitCount  bits per pixel, 8, 16, 24 or 32
+	 * @param redMask   mask of the red channel, or of the luminance if luminance is set
+	 * @param greenMask
+	 * @param blueMask
+	 * @param alphaMask
+	 * @param luminance true if the red mask holds the luminance
+	 * @return
+	 * @throws IllegalArgumentException if the bit count is unsupported or a mask exceeds it
+	 */
+	public static BitMaskDecoder get(final int bitCount,
+									 final int redMask,
+									 final int greenMask,
+									 final int blueMask,
+									 final int alphaMask,
+									 final boolean luminance) {
+		Signature signature = new Signature(bitCount, redMask, greenMask, blueMask, alphaMask, luminance);
+		BitMaskDecoder decoder = decoders.get(signature);
+		if (decoder == null) {
+			decoder = create(signature);
+			BitMaskDecoder existing = decoders.putIfAbsent(signature, decoder);
+			if (existing != null)
+				decoder = existing;
+		}
+		return decoder;
+	}
+
+	/**
+	 * Returns the decoder for the uncompressed layout of the {@link DDSImage}, created on first use.
+	 *
+	 * @param image
+	 * @return
+	 * @throws UnsupportedOperationException if the image has no or an unsupported layout
+	 */
+	public static BitMaskDecoder get(final DDSImage image) {
+		if ((image.getRedBitMask() | image.getGreenBitMask() | image.getBlueBitMask() | image.getAlphaBitMask()) == 0)
+			throw new UnsupportedOperationException("Unknown pixel format: " + image.getPixelFormat());
+		try {
+			return get(image.getDepth(),
+					image.getRedBitMask(),
+					image.getGreenBitMask(),
+					image.getBlueBitMask(),
+					image.getAlphaBitMask(),
+					image.isLuminance());
+		} catch (IllegalArgumentException e) {
+			throw new UnsupportedOperationException("Unknown pixel format: " + image.getPixelFormat(), e);
+		}
+	}
+
+	private static BitMaskDecoder create(final Signature s) {
+		if (s.bitCount != 8 && s.bitCount != 16 && s.bitCount != 24 && s.bitCount != 32)
+			throw new IllegalArgumentException("Unsupported bit count: " + s.bitCount);
+		if (s.bitCount < 32 && ((s.redMask | s.greenMask | s.blueMask | s.alphaMask) >>> s.bitCount) != 0)
+			throw new IllegalArgumentException("Bit masks exceed " + s.bitCount + " bits per pixel");
+
+		if (s.bitCount <= 16)
+			return new TableDecoder(s);
+		if (isByte(s.redMask) && isByte(s.greenMask) && isByte(s.blueMask) && isByte(s.alphaMask))
+			return new ByteDecoder(s);
+		return new ShiftDecoder(s);
+	}
+
+	/**
+	 * Returns true if the mask is empty or covers exactly one byte.
+	 */
+	private static boolean isByte(final int mask) {
+		return mask == 0 || ((mask >>> Integer.numberOfTrailingZeros(mask)) == 0xFF
+				&& Integer.numberOfTrailingZeros(mask) % 8 == 0);
+	}
+
+	public int getBytesPerPixel() {
+		return bytesPerPixel;
+	}
+
+	/**
+	 * Decodes tightly packed pixels into RGBA-order.
+	 *
+	 * @param source pixels read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param rgba   array receiving the pixels, allocated if null or too small
+	 * @return rgba
+	 */
+	public byte[] decode(final ByteBuffer source, final int width, final int height, byte[] rgba) {
+		final int pixels = width * height;
+		if (source.remaining() < pixels * bytesPerPixel)
+			throw new IllegalArgumentException("unexpected length:" + source.remaining() +
+					" instead of " + pixels * bytesPerPixel);
+		if (rgba == null || rgba.length < pixels * 4)
+			rgba = new byte[pixels * 4];
+		decodePixels(source, source.position(), pixels, rgba);
+		return rgba;
+	}
+
+	/**
+	 * Decodes count pixels starting at the absolute offset.
+	 */
+	protected abstract void decodePixels(ByteBuffer source, int offset, int count, byte[] rgba);
+
+	/**
+	 * Reads an unsigned little-endian value of bytes bytes.
+	 */
+	private static int read(final ByteBuffer source, final int offset, final int bytes) {
+		int value = 0;
+		for (int i = 0; i < bytes; i++)
+			value |= (source.get(offset + i) & 0xFF) << (8 * i);
+		return value;
+	}
+
+	/**
+	 * Scales the masked part of a pixel to 0..255.
+	 */
+	private static int expand(final int pixel, final int mask) {
+		if (mask == 0)
+			return 0;
+		final long max = (mask & 0xFFFFFFFFL) >>> Integer.numberOfTrailingZeros(mask);
+		final long value = (pixel & mask & 0xFFFFFFFFL) >>> Integer.numberOfTrailingZeros(mask);
+		return (int) ((value * 255 + max / 2) / max);
+	}
+
+	/**
+	 * Converts a pixel into RGBA packed into an int, red in the lowest byte.
+	 */
+	private static int toRGBA(final Signature s, final int pixel) {
+		int red = expand(pixel, s.redMask);
+		int green = s.luminance ? red : expand(pixel, s.greenMask);
+		int blue = s.luminance ? red : expand(pixel, s.blueMask);
+		int alpha = s.alphaMask == 0 ? 255 : expand(pixel, s.alphaMask);
+		return red | (green << 8) | (blue << 16) | (alpha << 24);
+	}
+
+	/**
+	 * 8 and 16 bit layouts, every possible pixel is looked up in a table.
+	 */
+	private static final class TableDecoder extends BitMaskDecoder {
+		private final int[] table;
+
+		TableDecoder(final Signature s) {
+			super(s.bitCount);
+			table = new int[1 << s.bitCount];
+			for (int pixel = 0; pixel < table.length; pixel++)
+				table[pixel] = toRGBA(s, pixel);
+		}
+
+		@Override
+		protected void decodePixels(final ByteBuffer source, int offset, final int count, final byte[] rgba) {
+			final int[] table = this.table;
+			int target = 0;
+			if (bytesPerPixel == 1) {
+				for (int i = 0; i < count; i++) {
+					final int value = table[source.get(offset++) & 0xFF];
+					rgba[target++] = (byte) value;
+					rgba[target++] = (byte) (value >> 8);
+					rgba[target++] = (byte) (value >> 16);
+					rgba[target++] = (byte) (value >> 24);
+				}
+			} else {
+				for (int i = 0; i < count; i++) {
+					final int value = table[(source.get(offset) & 0xFF) | ((source.get(offset + 1) & 0xFF) << 8)];
+					offset += 2;
+					rgba[target++] = (byte) value;
+					rgba[target++] = (byte) (value >> 8);
+					rgba[target++] = (byte) (value >> 16);
+					rgba[target++] = (byte) (value >> 24);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 24 and 32 bit layouts whose channels are whole bytes, the bytes are copied.
+	 */
+	private static final class ByteDecoder extends BitMaskDecoder {
+		private final int red;
+		private final int green;
+		private final int blue;
+		private final int alpha;
+
+		ByteDecoder(final Signature s) {
+			super(s.bitCount);
+			red = byteOffset(s.redMask);
+			green = s.luminance ? red : byteOffset(s.greenMask);
+			blue = s.luminance ? red : byteOffset(s.blueMask);
+			alpha = byteOffset(s.alphaMask);
+		}
+
+		private static int byteOffset(final int mask) {
+			return mask == 0 ? -1 : Integer.numberOfTrailingZeros(mask) / 8;
+		}
+
+		@Override
+		protected void decodePixels(final ByteBuffer source, int offset, final int count, final byte[] rgba) {
+			int target = 0;
+			for (int i = 0; i < count; i++) {
+				rgba[target++] = red < 0 ? 0 : source.get(offset + red);
+				rgba[target++] = green < 0 ? 0 : source.get(offset + green);
+				rgba[target++] = blue < 0 ? 0 : source.get(offset + blue);
+				rgba[target++] = alpha < 0 ? (byte) 0xFF : source.get(offset + alpha);
+				offset += bytesPerPixel;
+			}
+		}
+	}
+
+	/**
+	 * All other 24 and 32 bit layouts, e.g. A2B10G10R10.
+	 */
+	private static final class ShiftDecoder extends BitMaskDecoder {
+		private final Signature signature;
+
+		ShiftDecoder(final Signature s) {
+			super(s.bitCount);
+			signature = s;
+		}
+
+		@Override
+		protected void decodePixels(final ByteBuffer source, int offset, final int count, final byte[] rgba) {
+			int target = 0;
+			for (int i = 0; i < count; i++) {
+				final int value = toRGBA(signature, read(source, offset, bytesPerPixel));
+				offset += bytesPerPixel;
+				rgba[target++] = (byte) value;
+				rgba[target++] = (byte) (value >> 8);
+				rgba[target++] = (byte) (value >> 16);
+				rgba[target++] = (byte) (value >> 24);
+			}
+		}
+	}
+
+	private static final class Signature {
+		final int bitCount;
+		final int redMask;
+		final int greenMask;
+		final int blueMask;
+		final int alphaMask;
+		final boolean luminance;
+
+		Signature(final int bitCount, final int redMask, final int greenMask,
+				  final int blueMask, final int alphaMask, final boolean luminance) {
+			this.bitCount = bitCount;
+			this.redMask = redMask;
+			this.greenMask = greenMask;
+			this.blueMask = blueMask;
+			this.alphaMask = alphaMask;
+			this.luminance = luminance;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = bitCount;
+			hash = 31 * hash + redMask;
+			hash = 31 * hash + greenMask;
+			hash = 31 * hash + blueMask;
+			hash = 31 * hash + alphaMask;
+			return luminance ? ~hash : hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Signature))
+				return false;
+			Signature other = (Signature) o;
+			return bitCount == other.bitCount && redMask == other.redMask && greenMask == other.greenMask
+					&& blueMask == other.blueMask && alphaMask == other.alphaMask && luminance == other.luminance;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package me.nallar.jdds.internal.compression;
+
+import gr.zdimensions.jsquish.Squish.CompressionType;
+
+import java.util.*;
+
+
+/**
+ * Bounded cache of DXT-compressed blocks, keyed by the 64 byte RGBA
+ * source of a full 4x4 pixel block.
+ * Tiled and atlased textures contain many identical blocks, with a cache
+ * shared between compressions each distinct block is only fitted once.
+ * The least recently used entry is evicted once the cache is full.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class BlockCache {
+
+	/**
+	 * Size of the RGBA source of one 4x4 block in bytes.
+	 */
+	public static final int BLOCK_RGBA_SIZE = 16 * 4;
+
+	private final int maxEntries;
+	private final LinkedHashMap<Key, byte[]> blocks;
+	/**
+	 * Reused for lookups, so a hit does not allocate.
+	 */
+	private final Key probe = new Key();
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param maxEntries maximum number of compressed blocks kept
+	 */
+	public BlockCache(final int maxEntries) {
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		this.maxEntries = maxEntries;
+		this.blocks = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+				return size() > BlockCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Copies the compressed block for the given RGBA source into target.
+	 *
+	 * @param type   compression type the block was compressed with
+	 * @param rgba   64 byte RGBA source block
+	 * @param target array receiving the compressed block
+	 * @param offset offset in target
+	 * @return true if the block was cached, false otherwise
+	 */
+	public synchronized boolean get(final CompressionType type, final byte[] rgba,
+									final byte[] target, final int offset) {
+		probe.set(type, rgba);
+		byte[] block = blocks.get(probe);
+		probe.rgba = null;
+		if (block == null) {
+			misses++;
+			return false;
+		}
+		hits++;
+		System.arraycopy(block, 0, target, offset, block.length);
+		return true;
+	}
+
+	/**
+	 * Stores the compressed block for the given RGBA source.
+	 *
+	 * @param type   compression type the block was compressed with
+	 * @param rgba   64 byte RGBA source block, copied
+	 * @param source array holding the compressed block
+	 * @param offset offset in source
+	 */
+	public synchronized void put(final CompressionType type, final byte[] rgba,
+								 final byte[] source, final int offset) {
+		Key key = new Key();
+		key.set(type, Arrays.copyOf(rgba, BLOCK_RGBA_SIZE));
+		blocks.put(key, Arrays.copyOfRange(source, offset, offset + type.blockSize));
+	}
+
+	/**
+	 * Maximum number of compressed blocks kept.
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Number of compressed blocks currently cached.
+	 */
+	public synchronized int size() {
+		return blocks.size();
+	}
+
+	/**
+	 * Number of lookups which found a cached block.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of lookups which had to compress the block.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Fraction of lookups which found a cached block, 0 if there were none.
+	 */
+	public synchronized double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Removes all cached blocks and resets the statistics.
+	 */
+	public synchronized void clear() {
+		blocks.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "BlockCache[" + blocks.size() + '/' + maxEntries + " entries, " +
+				hits + " hits, " + misses + " misses]";
+	}
+
+	private static final class Key {
+		CompressionType type;
+		byte[] rgba;
+		int hash;
+
+		void set(final CompressionType type, final byte[] rgba) {
+			this.type = type;
+			this.rgba = rgba;
+			this.hash = 31 * type.hashCode() + Arrays.hashCode(rgba);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return hash == other.hash && type == other.type && Arrays.equals(rgba, other.rgba);
+		}
+	}
+}
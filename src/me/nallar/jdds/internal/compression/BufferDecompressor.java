@@ -1,7 +1,11 @@
 package me.nallar.jdds.internal.compression;
 
 import me.nallar.jdds.internal.ddsutil.ByteBufferedImage;
+import me.nallar.jdds.internal.ddsutil.PixelFormats;
+import me.nallar.jdds.internal.jogl.DDSImage;
+import me.nallar.jdds.internal.model.TextureSurface;
 
+import javax.activation.UnsupportedDataTypeException;
 import java.awt.*;
 import java.awt.image.*;
 import java.nio.*;
@@ -12,6 +16,68 @@ public abstract class BufferDecompressor {
 	protected ByteBuffer uncompressedBuffer;
 	protected Dimension dimension;
 
+	// source of the pixels, decoded on request if the uncompressedBuffer is not set
+	protected ByteBuffer compressedBuffer;
+	protected BandDecoder decoder;
+
+	protected BufferDecompressor() {
+	}
+
+	/**
+	 * Keeps a view of the buffer, the pixels are decoded by {@link #getImage()} or {@link #getSurface()}.
+	 *
+	 * @param compressedBuffer data read starting at the buffer's position, which is not changed
+	 * @param width
+	 * @param height
+	 * @param decoder          decoder for the layout of the data
+	 */
+	protected BufferDecompressor(final ByteBuffer compressedBuffer,
+								 final int width, final int height, final BandDecoder decoder) {
+		this.compressedBuffer = compressedBuffer.duplicate();
+		this.dimension = new Dimension(width, height);
+		this.decoder = decoder;
+	}
+
+	/**
+	 * Creates the decompressor for a block compressed pixelformat, DXT1-5, BC4 (ATI1), BC5 (ATI2) or BC7.
+	 *
+	 * @param compressedBuffer
+	 * @param width
+	 * @param height
+	 * @param pixelformat      DDSImage pixelformat
+	 * @return
+	 * @throws UnsupportedDataTypeException if the pixelformat is not block compressed
+	 */
+	public static BufferDecompressor forPixelFormat(final ByteBuffer compressedBuffer,
+													final int width,
+													final int height,
+													final int pixelformat) throws UnsupportedDataTypeException {
+		if (PixelFormats.isRGTCCompressed(pixelformat))
+			return new RGTCBufferDecompressor(compressedBuffer, width, height, pixelformat == DDSImage.D3DFMT_ATI2);
+		if (PixelFormats.isBC7Compressed(pixelformat))
+			return new BC7BufferDecompressor(compressedBuffer, width, height);
+		return new DXTBufferDecompressor(compressedBuffer, width, height,
+				PixelFormats.getSquishCompressionFormat(pixelformat));
+	}
+
+
+	/**
+	 * Decodes the whole image into RGBA-pixels, subclasses may use a faster decoder than band by band.
+	 *
+	 * @return
+	 */
+	protected byte[] decompressImage() {
+		byte[] rgba = new byte[this.dimension.width * this.dimension.height * 4];
+		this.decoder.decode(this.compressedBuffer, this.dimension.width, this.dimension.height,
+				BandSinks.buffer(ByteBuffer.wrap(rgba)));
+		return rgba;
+	}
+
+	private synchronized ByteBuffer getUncompressedBuffer() {
+		if (this.uncompressedBuffer == null)
+			this.uncompressedBuffer = ByteBuffer.wrap(decompressImage());
+		return this.uncompressedBuffer;
+	}
 
 	/**
 	 * @return
@@ -21,6 +87,32 @@ public abstract class BufferDecompressor {
 		return new ByteBufferedImage(
 				this.dimension.width,
 				this.dimension.height,
-				this.uncompressedBuffer);
+				getUncompressedBuffer());
+	}
+
+	/**
+	 * The pixels are decoded band by band straight into the off-heap buffer,
+	 * unless they already were decoded for {@link #getImage()}.
+	 *
+	 * @return the uncompressed pixels as off-heap {@link TextureSurface}
+	 */
+	public TextureSurface getSurface() {
+		ByteBuffer decoded;
+		synchronized (this) {
+			decoded = this.uncompressedBuffer;
+		}
+		if (decoded != null) {
+			ByteBuffer data = decoded.duplicate();
+			data.rewind();
+			return TextureSurface.copyOf(
+					this.dimension.width,
+					this.dimension.height,
+					data);
+		}
+
+		TextureSurface surface = TextureSurface.allocate(this.dimension.width, this.dimension.height);
+		this.decoder.decode(this.compressedBuffer, this.dimension.width, this.dimension.height,
+				BandSinks.buffer(surface.getData()));
+		return surface;
 	}
 }
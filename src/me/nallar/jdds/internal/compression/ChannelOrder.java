@@ -0,0 +1,37 @@
+package me.nallar.jdds.internal.compression;
+
+
+/**
+ * Byte layout of an uncompressed pixel in a source buffer.
+ * Each constant knows the byte offset of the red, green, blue and alpha
+ * channel inside one pixel. Layouts without alpha are read as opaque.
+ */
+public enum ChannelOrder {
+	RGBA(0, 1, 2, 3, 4),
+	BGRA(2, 1, 0, 3, 4),
+	ARGB(1, 2, 3, 0, 4),
+	ABGR(3, 2, 1, 0, 4),
+	RGB(0, 1, 2, -1, 3),
+	BGR(2, 1, 0, -1, 3);
+
+	public final int red;
+	public final int green;
+	public final int blue;
+	/**
+	 * Offset of the alpha channel, -1 if there is none.
+	 */
+	public final int alpha;
+	public final int bytesPerPixel;
+
+	ChannelOrder(final int red, final int green, final int blue, final int alpha, final int bytesPerPixel) {
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+		this.alpha = alpha;
+		this.bytesPerPixel = bytesPerPixel;
+	}
+
+	public boolean hasAlpha() {
+		return alpha >= 0;
+	}
+}
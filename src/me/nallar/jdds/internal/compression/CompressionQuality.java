@@ -0,0 +1,124 @@
+package me.nallar.jdds.internal.compression;
+
+
+/**
+ * Error of DXT-compressed pixels against their source, measured by {@link DXTBufferCompressor#compressBuffer}
+ * while it encodes each block, so no second pass over the image is needed.
+ * <p>
+ * The red, green and blue channels of every pixel are measured, and the alpha channel if the source has one.
+ * Pixels DXT1 deliberately makes transparent, those with a source alpha below 128, only count their alpha error,
+ * as their colour is discarded.
+ * <pre>
+ * CompressionQuality quality = new CompressionQuality();
+ * ByteBuffer blocks = JDDS.compressTexture(image, CompressionType.DXT1, quality);
+ * if (quality.getPSNR() &lt; 35)
+ *     blocks = JDDS.compressTexture(image, CompressionType.DXT5);
+ * </pre>
+ * Instances are not thread-safe, use {@link #add(CompressionQuality)} to combine the results of several threads.
+ */
+public class CompressionQuality {
+
+	private long squaredError;
+	private long samples;
+	private int maxError;
+
+	/**
+	 * Adds the error of a decoded block.
+	 *
+	 * @param source  the source pixels, 16 in RGBA-order
+	 * @param decoded the decoded pixels, 16 in RGBA-order
+	 * @param mask    bit 4 * y + x is set if the pixel is part of the image
+	 * @param alpha   true if the alpha channel is measured
+	 * @param dxt1    true if the block is DXT1, whose pixels with an alpha below 128 are transparent
+	 */
+	void addBlock(final byte[] source, final byte[] decoded, final int mask, final boolean alpha, final boolean dxt1) {
+		final int channels = alpha ? 4 : 3;
+		long squared = 0;
+		int max = maxError;
+		for (int pixel = 0; pixel < 16; pixel++) {
+			if ((mask & (1 << pixel)) == 0)
+				continue;
+			// the colour of pixels DXT1 makes transparent is discarded, only their alpha is measured
+			final int first = dxt1 && alpha && (source[4 * pixel + 3] & 0xFF) < 128 ? 3 : 0;
+			for (int channel = first; channel < channels; channel++) {
+				int error = (source[4 * pixel + channel] & 0xFF) - (decoded[4 * pixel + channel] & 0xFF);
+				squared += error * error;
+				if (error < 0)
+					error = -error;
+				if (error > max)
+					max = error;
+			}
+			samples += channels - first;
+		}
+		squaredError += squared;
+		maxError = max;
+	}
+
+	/**
+	 * Adds the error measured by another instance, e.g. of the other MipMaps of a texture.
+	 *
+	 * @param other
+	 */
+	public void add(final CompressionQuality other) {
+		squaredError += other.squaredError;
+		samples += other.samples;
+		maxError = Math.max(maxError, other.maxError);
+	}
+
+	/**
+	 * Sets all values back to 0.
+	 */
+	public void reset() {
+		squaredError = 0;
+		samples = 0;
+		maxError = 0;
+	}
+
+	/**
+	 * Number of measured channel values
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Sum of the squared differences of all measured channel values
+	 */
+	public long getSquaredError() {
+		return squaredError;
+	}
+
+	/**
+	 * Largest absolute difference of a channel value, 0 to 255
+	 */
+	public int getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Mean squared error, 0 if nothing was measured
+	 */
+	public double getMSE() {
+		return samples == 0 ? 0 : (double) squaredError / samples;
+	}
+
+	/**
+	 * Root mean squared error, 0 if nothing was measured
+	 */
+	public double getRMSE() {
+		return Math.sqrt(getMSE());
+	}
+
+	/**
+	 * Peak signal to noise ratio in dB, infinite if the pixels are unchanged
+	 */
+	public double getPSNR() {
+		final double mse = getMSE();
+		return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+	}
+
+	@Override
+	public String toString() {
+		return "CompressionQuality{rmse=" + getRMSE() + ", psnr=" + getPSNR() + ", maxError=" + maxError + '}';
+	}
+}
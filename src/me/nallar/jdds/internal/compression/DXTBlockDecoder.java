@@ -0,0 +1,243 @@
+package me.nallar.jdds.internal.compression;
+
+import gr.zdimensions.jsquish.Squish.CompressionType;
+
+import java.nio.*;
+
+
+/**
+ * Thread-safe decoder for DXT1, DXT3 and DXT5 blocks.
+ * Produces the same pixels as jsquish, but keeps no static state, so
+ * several images can be decoded concurrently, and reads the blocks
+ * straight from a (possibly memory-mapped) {@link ByteBuffer}.
+ */
+public final class DXTBlockDecoder {
+
+	private DXTBlockDecoder() {
+	}
+
+	/**
+	 * Decompresses a whole DXT-compressed image into an RGBA-array.
+	 *
+	 * @param blocks blocks read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param type
+	 * @param rgba   array receiving the pixels, allocated if null or too small
+	 * @return rgba
+	 */
+	public static byte[] decompressImage(final ByteBuffer blocks,
+										 final int width,
+										 final int height,
+										 final CompressionType type,
+										 final byte[] rgba) {
+		return decompressImage(blocks, width, height, type, rgba, Kernels.get());
+	}
+
+	/**
+	 * Decompresses a whole DXT-compressed image into an RGBA-array,
+	 * the whole blocks are decompressed by the given kernels.
+	 *
+	 * @param blocks  blocks read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param type
+	 * @param rgba    array receiving the pixels, allocated if null or too small
+	 * @param kernels
+	 * @return rgba
+	 */
+	public static byte[] decompressImage(final ByteBuffer blocks,
+										 final int width,
+										 final int height,
+										 final CompressionType type,
+										 byte[] rgba,
+										 final Kernels kernels) {
+		final int storageSize = ((width + 3) / 4) * ((height + 3) / 4) * type.blockSize;
+		if (blocks.remaining() < storageSize)
+			throw new IllegalArgumentException("Invalid source image data specified.");
+		if (rgba == null || rgba.length < width * height * 4)
+			rgba = new byte[width * height * 4];
+
+		final int[] codes = new int[16];
+		int sourceBlock = blocks.position();
+		for (int y = 0; y < height; y += 4) {
+			final int blockHeight = Math.min(4, height - y);
+			for (int x = 0; x < width; x += 4) {
+				if (blockHeight == 4 && x + 4 <= width)
+					kernels.decompressBlock(blocks, sourceBlock, type, codes, rgba, 4 * (width * y + x), width * 4);
+				else
+					decompressBlock(blocks, sourceBlock, type, codes,
+							rgba, 4 * (width * y + x), width * 4, Math.min(4, width - x), blockHeight);
+				sourceBlock += type.blockSize;
+			}
+		}
+		return rgba;
+	}
+
+	/**
+	 * Decompresses a single block into the RGBA-array, pixels outside of
+	 * blockWidth/blockHeight are skipped.
+	 *
+	 * @param blocks      compressed data
+	 * @param offset      absolute offset of the block in blocks
+	 * @param type
+	 * @param codes       scratch space of at least 16 ints
+	 * @param rgba        target array
+	 * @param rgbaOffset  offset of the top left pixel of the block in rgba
+	 * @param rgbaStride  distance between two rows in rgba in bytes
+	 * @param blockWidth  number of columns to write, 1..4
+	 * @param blockHeight number of rows to write, 1..4
+	 */
+	public static void decompressBlock(final ByteBuffer blocks,
+									   final int offset,
+									   final CompressionType type,
+									   final int[] codes,
+									   final byte[] rgba,
+									   final int rgbaOffset,
+									   final int rgbaStride,
+									   final int blockWidth,
+									   final int blockHeight) {
+		decompressColour(blocks, offset + type.blockOffset, type == CompressionType.DXT1, codes,
+				rgba, rgbaOffset, rgbaStride, blockWidth, blockHeight);
+		if (type == CompressionType.DXT3)
+			decompressAlphaDxt3(blocks, offset, rgba, rgbaOffset, rgbaStride, blockWidth, blockHeight);
+		else if (type == CompressionType.DXT5)
+			decompressAlphaDxt5(blocks, offset, codes, rgba, rgbaOffset + 3, rgbaStride, 4, blockWidth, blockHeight);
+	}
+
+	private static void decompressColour(final ByteBuffer block,
+										 final int offset,
+										 final boolean isDXT1,
+										 final int[] codes,
+										 final byte[] rgba,
+										 final int rgbaOffset,
+										 final int rgbaStride,
+										 final int blockWidth,
+										 final int blockHeight) {
+		// unpack the endpoints
+		final int a = unpack565(block, offset, codes, 0);
+		final int b = unpack565(block, offset + 2, codes, 4);
+
+		// generate the midpoints
+		final boolean threeColour = isDXT1 && a <= b;
+		for (int i = 0; i < 3; ++i) {
+			final int c = codes[i];
+			final int d = codes[4 + i];
+			if (threeColour) {
+				codes[8 + i] = (c + d) / 2;
+				codes[12 + i] = 0;
+			} else {
+				codes[8 + i] = (2 * c + d) / 3;
+				codes[12 + i] = (c + 2 * d) / 3;
+			}
+		}
+
+		// fill in alpha for the intermediate values
+		codes[8 + 3] = 255;
+		codes[12 + 3] = threeColour ? 0 : 255;
+
+		// store out the colours
+		for (int py = 0; py < blockHeight; ++py) {
+			final int packed = block.get(offset + 4 + py) & 0xFF;
+			int target = rgbaOffset + py * rgbaStride;
+			for (int px = 0; px < blockWidth; ++px) {
+				final int index = 4 * ((packed >> (2 * px)) & 0x3);
+				rgba[target++] = (byte) codes[index];
+				rgba[target++] = (byte) codes[index + 1];
+				rgba[target++] = (byte) codes[index + 2];
+				rgba[target++] = (byte) codes[index + 3];
+			}
+		}
+	}
+
+	private static int unpack565(final ByteBuffer packed, final int offset, final int[] colour, final int cOffset) {
+		// build the packed value
+		final int value = (packed.get(offset) & 0xFF) | ((packed.get(offset + 1) & 0xFF) << 8);
+
+		// get the components in the stored range
+		final int red = (value >> 11) & 0x1f;
+		final int green = (value >> 5) & 0x3f;
+		final int blue = value & 0x1f;
+
+		// scale up to 8 bits
+		colour[cOffset] = (red << 3) | (red >> 2);
+		colour[cOffset + 1] = (green << 2) | (green >> 4);
+		colour[cOffset + 2] = (blue << 3) | (blue >> 2);
+		colour[cOffset + 3] = 255;
+		return value;
+	}
+
+	private static void decompressAlphaDxt3(final ByteBuffer block,
+											final int offset,
+											final byte[] rgba,
+											final int rgbaOffset,
+											final int rgbaStride,
+											final int blockWidth,
+											final int blockHeight) {
+		for (int py = 0; py < blockHeight; ++py) {
+			// two bytes of 4 bit alpha values per row
+			final int quant = (block.get(offset + 2 * py) & 0xFF) | ((block.get(offset + 2 * py + 1) & 0xFF) << 8);
+			int target = rgbaOffset + py * rgbaStride + 3;
+			for (int px = 0; px < blockWidth; ++px) {
+				final int value = (quant >> (4 * px)) & 0xF;
+				rgba[target] = (byte) (value | (value << 4));
+				target += 4;
+			}
+		}
+	}
+
+	/**
+	 * Decompresses an 8 byte DXT5 alpha block, also used for the single channel BC4 format.
+	 *
+	 * @param block       compressed data
+	 * @param offset      absolute offset of the alpha block
+	 * @param codes       scratch space of at least 8 ints
+	 * @param target      target array
+	 * @param targetOffset offset of the channel of the top left pixel in target
+	 * @param targetStride distance between two rows in target
+	 * @param pixelSize   distance between two pixels in target
+	 * @param blockWidth  number of columns to write, 1..4
+	 * @param blockHeight number of rows to write, 1..4
+	 */
+	static void decompressAlphaDxt5(final ByteBuffer block,
+									final int offset,
+									final int[] codes,
+									final byte[] target,
+									final int targetOffset,
+									final int targetStride,
+									final int pixelSize,
+									final int blockWidth,
+									final int blockHeight) {
+		// get the two alpha values
+		final int alpha0 = block.get(offset) & 0xFF;
+		final int alpha1 = block.get(offset + 1) & 0xFF;
+
+		// compare the values to build the codebook
+		codes[0] = alpha0;
+		codes[1] = alpha1;
+		if (alpha0 <= alpha1) {
+			// use 5-alpha codebook
+			for (int i = 1; i < 5; ++i)
+				codes[1 + i] = ((5 - i) * alpha0 + i * alpha1) / 5;
+			codes[6] = 0;
+			codes[7] = 255;
+		} else {
+			// use 7-alpha codebook
+			for (int i = 1; i < 7; ++i)
+				codes[1 + i] = ((7 - i) * alpha0 + i * alpha1) / 7;
+		}
+
+		// the 16 3-bit indices are packed into the 6 following bytes
+		long indices = 0;
+		for (int i = 0; i < 6; ++i)
+			indices |= (long) (block.get(offset + 2 + i) & 0xFF) << (8 * i);
+
+		for (int py = 0; py < blockHeight; ++py) {
+			int pixel = targetOffset + py * targetStride;
+			for (int px = 0; px < blockWidth; ++px) {
+				target[pixel] = (byte) codes[(int) (indices >>> (3 * (4 * py + px))) & 0x7];
+				pixel += pixelSize;
+			}
+		}
+	}
+}
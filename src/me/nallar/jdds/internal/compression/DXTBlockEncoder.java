@@ -0,0 +1,802 @@
+package me.nallar.jdds.internal.compression;
+
+import gr.zdimensions.jsquish.Squish.CompressionType;
+
+import java.util.*;
+
+import static me.nallar.jdds.internal.compression.Kernels.*;
+
+
+/**
+ * DXT1, DXT3 and DXT5 block encoder, the cluster fit of squish on primitive arrays.
+ * <p>
+ * jsquish keeps its working state in static fields and allocates Vec and Matrix temporaries for every block.
+ * This encoder keeps the whole state of a block in the arrays of the instance, so several instances compress
+ * concurrently without allocating. The least squares endpoints of the cluster candidates are solved from prefix
+ * sums over the ordered points by {@link Kernels}, a whole row of candidates at once with SIMD instructions
+ * if available. The blocks equal jsquish's CLUSTER_FIT with the perceptual metric, unless rounding changes
+ * which of two candidates with nearly the same error is picked.
+ * <p>
+ * Instances are not thread-safe, use one per thread.
+ */
+public final class DXTBlockEncoder {
+
+	private static final int MAX_ITERATIONS = 8;
+	private static final float FLT_EPSILON = 0.00001f;
+
+	/**
+	 * Best endpoints and error for every 8 bit value and palette index of a single colour block,
+	 * packed as start | end << 8 | error << 16, at 4 * value + index.
+	 */
+	private static final int[] LOOKUP_5_3 = singleColourLookup(5, 3);
+	private static final int[] LOOKUP_6_3 = singleColourLookup(6, 3);
+	private static final int[] LOOKUP_5_4 = singleColourLookup(5, 4);
+	private static final int[] LOOKUP_6_4 = singleColourLookup(6, 4);
+
+	private final Kernels kernels;
+
+	// the distinct colours of the block
+	private int count;
+	private boolean transparent;
+	private final float[] points = new float[16 * 3];
+	private final float[] weights = new float[16];
+	private final int[] remap = new int[16];
+
+	// cluster fit
+	private final float[] covariance = new float[6];
+	private final float[] m = new float[6];
+	private final float[] u = new float[6];
+	private final float[] axis = new float[3];
+	private final float[] dps = new float[16];
+	private final int[] orders = new int[16 * MAX_ITERATIONS];
+	private final float[] sums = new float[SUMS_SIZE];
+	private final float[] errors = new float[17];
+	private final float[] endpoints = new float[6];
+	private final float[] bestEndpoints = new float[6];
+	private float bestError;
+
+	// block output
+	private final int[] unordered = new int[16];
+	private final int[] indices = new int[16];
+	private final int[] remapped = new int[16];
+	private final int[] codes5 = new int[8];
+	private final int[] codes7 = new int[8];
+	private final int[] indices5 = new int[16];
+	private final int[] indices7 = new int[16];
+
+	public DXTBlockEncoder() {
+		this(Kernels.get());
+	}
+
+	/**
+	 * @param kernels kernels evaluating the cluster candidates
+	 */
+	public DXTBlockEncoder(final Kernels kernels) {
+		this.kernels = kernels;
+		// perceptual metric
+		sums[METRIC] = 0.2126f;
+		sums[METRIC + 1] = 0.7152f;
+		sums[METRIC + 2] = 0.0722f;
+	}
+
+	/**
+	 * Compresses a 4x4 block.
+	 *
+	 * @param rgba   16 pixels in RGBA-order, row by row
+	 * @param mask   bit 4 * y + x is set if the pixel is part of the image, 0xFFFF for whole blocks
+	 * @param type
+	 * @param block  target array
+	 * @param offset offset of the block in the target array
+	 */
+	public void compressBlock(final byte[] rgba, final int mask, final CompressionType type, final byte[] block, final int offset) {
+		final int colourBlock = offset + type.blockOffset;
+		initColourSet(rgba, mask, type == CompressionType.DXT1);
+		if (count == 1)
+			singleColourFit(type, block, colourBlock);
+		else
+			clusterFit(type, block, colourBlock);
+
+		if (type == CompressionType.DXT3)
+			compressAlphaDxt3(rgba, mask, block, offset);
+		else if (type == CompressionType.DXT5)
+			compressAlphaDxt5(rgba, mask, block, offset);
+	}
+
+	/**
+	 * Creates the minimal set of distinct colours, transparent pixels are dropped in DXT1.
+	 */
+	private void initColourSet(final byte[] rgba, final int mask, final boolean isDXT1) {
+		count = 0;
+		transparent = false;
+		for (int i = 0; i < 16; ++i) {
+			// check this pixel is enabled
+			if ((mask & (1 << i)) == 0) {
+				remap[i] = -1;
+				continue;
+			}
+
+			// check for transparent pixels when using dxt1
+			if (isDXT1 && (rgba[4 * i + 3] & 0xFF) < 128) {
+				remap[i] = -1;
+				transparent = true;
+				continue;
+			}
+
+			// loop over previous points for a match
+			for (int j = 0; ; ++j) {
+				if (j == i) {
+					// a new point, normalised to [0,1]
+					points[3 * count] = (rgba[4 * i] & 0xFF) / 255.0f;
+					points[3 * count + 1] = (rgba[4 * i + 1] & 0xFF) / 255.0f;
+					points[3 * count + 2] = (rgba[4 * i + 2] & 0xFF) / 255.0f;
+					weights[count] = 1.0f;
+					remap[i] = count++;
+					break;
+				}
+
+				// only pixels which weren't dropped, jsquish checks for a non-zero alpha instead
+				// and fails on DXT1 blocks with alpha between 1 and 127
+				final boolean match = remap[j] != -1
+						&& rgba[4 * i] == rgba[4 * j]
+						&& rgba[4 * i + 1] == rgba[4 * j + 1]
+						&& rgba[4 * i + 2] == rgba[4 * j + 2];
+				if (match) {
+					// map to this point and increase the weight
+					final int index = remap[j];
+					weights[index] += 1.0f;
+					remap[i] = index;
+					break;
+				}
+			}
+		}
+	}
+
+	private void singleColourFit(final CompressionType type, final byte[] block, final int offset) {
+		final int r = Math.round(255.0f * points[0]);
+		final int g = Math.round(255.0f * points[1]);
+		final int b = Math.round(255.0f * points[2]);
+		int error = Integer.MAX_VALUE;
+		if (type == CompressionType.DXT1) {
+			error = singleColourFit(3, LOOKUP_5_3, LOOKUP_6_3, r, g, b, error, block, offset);
+			if (!transparent)
+				singleColourFit(4, LOOKUP_5_4, LOOKUP_6_4, r, g, b, error, block, offset);
+		} else {
+			singleColourFit(4, LOOKUP_5_4, LOOKUP_6_4, r, g, b, error, block, offset);
+		}
+	}
+
+	/**
+	 * Writes the block if one of the palette indices has less error than bestError.
+	 *
+	 * @return the least error
+	 */
+	private int singleColourFit(final int colours,
+								final int[] lookup5,
+								final int[] lookup6,
+								final int r,
+								final int g,
+								final int b,
+								int bestError,
+								final byte[] block,
+								final int offset) {
+		int bestIndex = -1;
+		int red = 0, green = 0, blue = 0;
+		for (int index = 0; index < colours; ++index) {
+			final int sourceRed = lookup5[4 * r + index];
+			final int sourceGreen = lookup6[4 * g + index];
+			final int sourceBlue = lookup5[4 * b + index];
+			final int errorRed = sourceRed >>> 16;
+			final int errorGreen = sourceGreen >>> 16;
+			final int errorBlue = sourceBlue >>> 16;
+			final int error = errorRed * errorRed + errorGreen * errorGreen + errorBlue * errorBlue;
+			if (error < bestError) {
+				red = sourceRed;
+				green = sourceGreen;
+				blue = sourceBlue;
+				bestIndex = index;
+				bestError = error;
+			}
+		}
+		if (bestIndex < 0)
+			return bestError;
+
+		endpoints[0] = (red & 0xFF) * GRID_X_RCP;
+		endpoints[1] = (green & 0xFF) * GRID_Y_RCP;
+		endpoints[2] = (blue & 0xFF) * GRID_Z_RCP;
+		endpoints[3] = ((red >>> 8) & 0xFF) * GRID_X_RCP;
+		endpoints[4] = ((green >>> 8) & 0xFF) * GRID_Y_RCP;
+		endpoints[5] = ((blue >>> 8) & 0xFF) * GRID_Z_RCP;
+		for (int i = 0; i < 16; ++i)
+			indices[i] = remap[i] == -1 ? 3 : bestIndex;
+		if (colours == 3)
+			writeColourBlock3(endpoints, indices, block, offset);
+		else
+			writeColourBlock4(endpoints, indices, block, offset);
+		return bestError;
+	}
+
+	private void clusterFit(final CompressionType type, final byte[] block, final int offset) {
+		// blocks are only written if a candidate is solvable
+		Arrays.fill(block, offset, offset + 8, (byte) 0);
+		computeWeightedCovariance();
+		computePrincipalComponent();
+		bestError = Float.MAX_VALUE;
+		if (type == CompressionType.DXT1) {
+			clusterFit3(block, offset);
+			if (!transparent)
+				clusterFit4(block, offset);
+		} else {
+			clusterFit4(block, offset);
+		}
+	}
+
+	private void clusterFit3(final byte[] block, final int offset) {
+		float bestError = this.bestError;
+		int bestI = 0, bestJ = 0;
+		int bestIteration = 0;
+		Arrays.fill(bestEndpoints, 0.0f);
+
+		// prepare an ordering using the principal axis
+		constructOrdering(axis[0], axis[1], axis[2], 0);
+		for (int iteration = 0; ; ) {
+			// [0,i) is at the start, [i,j) half along and [j,count) at the end
+			for (int i = count; i >= 0; --i) {
+				kernels.clusterErrors3(sums, count, i, errors);
+				for (int j = count; j >= i; --j) {
+					if (errors[j] < bestError) {
+						bestI = i;
+						bestJ = j;
+						bestError = errors[j];
+						bestIteration = iteration;
+					}
+				}
+			}
+
+			// stop if we didn't improve in this iteration
+			if (bestIteration != iteration)
+				break;
+			if (bestError < this.bestError)
+				clusterError3(sums, count, bestI, bestJ, bestEndpoints);
+
+			// advance if possible, unless the new ordering has already been tried
+			if (++iteration == MAX_ITERATIONS || !constructOrdering(bestEndpoints[3] - bestEndpoints[0],
+					bestEndpoints[4] - bestEndpoints[1], bestEndpoints[5] - bestEndpoints[2], iteration))
+				break;
+		}
+
+		// save the block if it wins
+		if (bestError < this.bestError) {
+			final int order = 16 * bestIteration;
+			for (int i = 0; i < count; ++i)
+				unordered[orders[order + i]] = i < bestI ? 0 : i < bestJ ? 2 : 1;
+			remapIndices();
+			writeColourBlock3(bestEndpoints, indices, block, offset);
+			this.bestError = bestError;
+		}
+	}
+
+	private void clusterFit4(final byte[] block, final int offset) {
+		float bestError = this.bestError;
+		int bestI = 0, bestJ = 0, bestK = 0;
+		int bestIteration = 0;
+		Arrays.fill(bestEndpoints, 0.0f);
+
+		// prepare an ordering using the principal axis
+		constructOrdering(axis[0], axis[1], axis[2], 0);
+		for (int iteration = 0; ; ) {
+			// [0,i) is at the start, [i,j) one third along, [j,k) two thirds along and [k,count) at the end
+			for (int i = count; i >= 0; --i) {
+				for (int j = count; j >= i; --j) {
+					kernels.clusterErrors4(sums, count, i, j, errors);
+					for (int k = count; k >= j; --k) {
+						if (errors[k] < bestError) {
+							bestI = i;
+							bestJ = j;
+							bestK = k;
+							bestError = errors[k];
+							bestIteration = iteration;
+						}
+					}
+				}
+			}
+
+			// stop if we didn't improve in this iteration
+			if (bestIteration != iteration)
+				break;
+			if (bestError < this.bestError)
+				clusterError4(sums, count, bestI, bestJ, bestK, bestEndpoints);
+
+			// advance if possible, unless the new ordering has already been tried
+			if (++iteration == MAX_ITERATIONS || !constructOrdering(bestEndpoints[3] - bestEndpoints[0],
+					bestEndpoints[4] - bestEndpoints[1], bestEndpoints[5] - bestEndpoints[2], iteration))
+				break;
+		}
+
+		// save the block if it wins
+		if (bestError < this.bestError) {
+			final int order = 16 * bestIteration;
+			for (int i = 0; i < count; ++i)
+				unordered[orders[order + i]] = i < bestI ? 0 : i < bestJ ? 2 : i < bestK ? 3 : 1;
+			remapIndices();
+			writeColourBlock4(bestEndpoints, indices, block, offset);
+			this.bestError = bestError;
+		}
+	}
+
+	/**
+	 * Sorts the points along the axis and computes the prefix sums of the new order.
+	 *
+	 * @return false if the order has already been tried in an earlier iteration
+	 */
+	private boolean constructOrdering(final float axisX, final float axisY, final float axisZ, final int iteration) {
+		final int order = 16 * iteration;
+		for (int i = 0; i < count; ++i) {
+			dps[i] = points[3 * i] * axisX + points[3 * i + 1] * axisY + points[3 * i + 2] * axisZ;
+			orders[order + i] = i;
+		}
+
+		// stable sort using the dot products
+		for (int i = 0; i < count; ++i) {
+			for (int j = i; j > 0 && dps[j] < dps[j - 1]; --j) {
+				final float dp = dps[j];
+				dps[j] = dps[j - 1];
+				dps[j - 1] = dp;
+				final int index = orders[order + j];
+				orders[order + j] = orders[order + j - 1];
+				orders[order + j - 1] = index;
+			}
+		}
+
+		// check this ordering is unique
+		for (int it = 0; it < iteration; ++it) {
+			final int previous = 16 * it;
+			boolean same = true;
+			for (int i = 0; i < count; ++i) {
+				if (orders[order + i] != orders[previous + i]) {
+					same = false;
+					break;
+				}
+			}
+			if (same)
+				return false;
+		}
+
+		// weight the ordered points
+		final float[] sums = this.sums;
+		float xx = 0.0f, yy = 0.0f, zz = 0.0f;
+		sums[SUM_WEIGHTS] = sums[SUM_X] = sums[SUM_Y] = sums[SUM_Z] = 0.0f;
+		for (int i = 0; i < count; ++i) {
+			final int p = orders[order + i];
+			final float weight = weights[p];
+			final float x = weight * points[3 * p];
+			final float y = weight * points[3 * p + 1];
+			final float z = weight * points[3 * p + 2];
+			xx += x * x;
+			yy += y * y;
+			zz += z * z;
+			sums[SUM_WEIGHTS + i + 1] = sums[SUM_WEIGHTS + i] + weight * weight;
+			sums[SUM_X + i + 1] = sums[SUM_X + i] + weight * x;
+			sums[SUM_Y + i + 1] = sums[SUM_Y + i] + weight * y;
+			sums[SUM_Z + i + 1] = sums[SUM_Z + i] + weight * z;
+		}
+		sums[SUM_XX] = xx;
+		sums[SUM_XX + 1] = yy;
+		sums[SUM_XX + 2] = zz;
+		return true;
+	}
+
+	private void remapIndices() {
+		for (int i = 0; i < 16; ++i) {
+			final int j = remap[i];
+			indices[i] = j == -1 ? 3 : unordered[j];
+		}
+	}
+
+	private void computeWeightedCovariance() {
+		// compute the centroid
+		float total = 0.0f;
+		float centroidX = 0.0f, centroidY = 0.0f, centroidZ = 0.0f;
+		for (int i = 0; i < count; ++i) {
+			total += weights[i];
+			centroidX += points[3 * i] * weights[i];
+			centroidY += points[3 * i + 1] * weights[i];
+			centroidZ += points[3 * i + 2] * weights[i];
+		}
+		final float rcp = 1.0f / total;
+		centroidX *= rcp;
+		centroidY *= rcp;
+		centroidZ *= rcp;
+
+		// accumulate the covariance matrix
+		final float[] values = covariance;
+		Arrays.fill(values, 0.0f);
+		for (int i = 0; i < count; ++i) {
+			final float aX = points[3 * i] - centroidX;
+			final float aY = points[3 * i + 1] - centroidY;
+			final float aZ = points[3 * i + 2] - centroidZ;
+			final float bX = aX * weights[i];
+			final float bY = aY * weights[i];
+			final float bZ = aZ * weights[i];
+			values[0] += aX * bX;
+			values[1] += aX * bY;
+			values[2] += aX * bZ;
+			values[3] += aY * bY;
+			values[4] += aY * bZ;
+			values[5] += aZ * bZ;
+		}
+	}
+
+	private void computePrincipalComponent() {
+		final float[] m = covariance;
+
+		// compute the cubic coefficients
+		final float c0 = m[0] * m[3] * m[5]
+				+ 2.0f * m[1] * m[2] * m[4]
+				- m[0] * m[4] * m[4]
+				- m[3] * m[2] * m[2]
+				- m[5] * m[1] * m[1];
+		final float c1 = m[0] * m[3] + m[0] * m[5] + m[3] * m[5]
+				- m[1] * m[1] - m[2] * m[2] - m[4] * m[4];
+		final float c2 = m[0] + m[3] + m[5];
+
+		// compute the quadratic coefficients
+		final float a = c1 - (1.0f / 3.0f) * c2 * c2;
+		final float b = (-2.0f / 27.0f) * c2 * c2 * c2 + (1.0f / 3.0f) * c1 * c2 - c0;
+
+		// compute the root count check
+		final float q = 0.25f * b * b + (1.0f / 27.0f) * a * a * a;
+
+		// test the multiplicity
+		if (FLT_EPSILON < q) {
+			// only one root, which implies we have a multiple of the identity
+			axis[0] = axis[1] = axis[2] = 1.0f;
+		} else if (q < -FLT_EPSILON) {
+			// three distinct roots
+			final float theta = (float) Math.atan2(Math.sqrt(-q), -0.5f * b);
+			final float rho = (float) Math.sqrt(0.25f * b * b - q);
+			final float rt = (float) Math.pow(rho, 1.0f / 3.0f);
+			final float ct = (float) Math.cos(theta / 3.0f);
+			final float st = (float) Math.sin(theta / 3.0f);
+			float l1 = (1.0f / 3.0f) * c2 + 2.0f * rt * ct;
+			final float l2 = (1.0f / 3.0f) * c2 - rt * (ct + (float) Math.sqrt(3.0f) * st);
+			final float l3 = (1.0f / 3.0f) * c2 - rt * (ct - (float) Math.sqrt(3.0f) * st);
+
+			// pick the larger
+			if (Math.abs(l2) > Math.abs(l1))
+				l1 = l2;
+			if (Math.abs(l3) > Math.abs(l1))
+				l1 = l3;
+			multiplicity1Eigenvector(l1);
+		} else {
+			// two roots
+			final float rt;
+			if (b < 0.0f)
+				rt = (float) -Math.pow(-0.5f * b, 1.0f / 3.0f);
+			else
+				rt = (float) Math.pow(0.5f * b, 1.0f / 3.0f);
+			final float l1 = (1.0f / 3.0f) * c2 + rt; // repeated
+			final float l2 = (1.0f / 3.0f) * c2 - 2.0f * rt;
+			if (Math.abs(l1) > Math.abs(l2))
+				multiplicity2Eigenvector(l1);
+			else
+				multiplicity1Eigenvector(l2);
+		}
+	}
+
+	private void subtractEigenvalue(final float eigenvalue) {
+		m[0] = covariance[0] - eigenvalue;
+		m[1] = covariance[1];
+		m[2] = covariance[2];
+		m[3] = covariance[3] - eigenvalue;
+		m[4] = covariance[4];
+		m[5] = covariance[5] - eigenvalue;
+	}
+
+	private void multiplicity1Eigenvector(final float eigenvalue) {
+		subtractEigenvalue(eigenvalue);
+		u[0] = m[3] * m[5] - m[4] * m[4];
+		u[1] = m[2] * m[4] - m[1] * m[5];
+		u[2] = m[1] * m[4] - m[2] * m[3];
+		u[3] = m[0] * m[5] - m[2] * m[2];
+		u[4] = m[1] * m[2] - m[4] * m[0];
+		u[5] = m[0] * m[3] - m[1] * m[1];
+
+		// pick the column with the largest component
+		final int largest = largestComponent(u);
+		if (largest == 0)
+			setAxis(u[0], u[1], u[2]);
+		else if (largest == 1 || largest == 3)
+			setAxis(u[1], u[3], u[4]);
+		else
+			setAxis(u[2], u[4], u[5]);
+	}
+
+	private void multiplicity2Eigenvector(final float eigenvalue) {
+		subtractEigenvalue(eigenvalue);
+		switch (largestComponent(m)) {
+			case 0:
+			case 1:
+				setAxis(-m[1], m[0], 0.0f);
+				break;
+			case 2:
+				setAxis(m[2], 0.0f, -m[0]);
+				break;
+			case 3:
+			case 4:
+				setAxis(0.0f, -m[4], m[3]);
+				break;
+			default:
+				setAxis(0.0f, -m[5], m[4]);
+		}
+	}
+
+	private static int largestComponent(final float[] values) {
+		float largest = Math.abs(values[0]);
+		int index = 0;
+		for (int i = 1; i < 6; ++i) {
+			final float c = Math.abs(values[i]);
+			if (c > largest) {
+				largest = c;
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	private void setAxis(final float x, final float y, final float z) {
+		axis[0] = x;
+		axis[1] = y;
+		axis[2] = z;
+	}
+
+	private static int floatTo565(final float[] endpoints, final int offset) {
+		final int r = Math.round(GRID_X * endpoints[offset]);
+		final int g = Math.round(GRID_Y * endpoints[offset + 1]);
+		final int b = Math.round(GRID_Z * endpoints[offset + 2]);
+		return (r << 11) | (g << 5) | b;
+	}
+
+	private void writeColourBlock3(final float[] endpoints, final int[] indices, final byte[] block, final int offset) {
+		int a = floatTo565(endpoints, 0);
+		int b = floatTo565(endpoints, 3);
+		if (a <= b) {
+			System.arraycopy(indices, 0, remapped, 0, 16);
+		} else {
+			// swap a and b
+			final int tmp = a;
+			a = b;
+			b = tmp;
+			for (int i = 0; i < 16; ++i)
+				remapped[i] = indices[i] == 0 ? 1 : indices[i] == 1 ? 0 : indices[i];
+		}
+		writeColourBlock(a, b, remapped, block, offset);
+	}
+
+	private void writeColourBlock4(final float[] endpoints, final int[] indices, final byte[] block, final int offset) {
+		int a = floatTo565(endpoints, 0);
+		int b = floatTo565(endpoints, 3);
+		if (a < b) {
+			// swap a and b
+			final int tmp = a;
+			a = b;
+			b = tmp;
+			for (int i = 0; i < 16; ++i)
+				remapped[i] = (indices[i] ^ 0x1) & 0x3;
+		} else if (a == b) {
+			// use index 0
+			Arrays.fill(remapped, 0);
+		} else {
+			System.arraycopy(indices, 0, remapped, 0, 16);
+		}
+		writeColourBlock(a, b, remapped, block, offset);
+	}
+
+	private static void writeColourBlock(final int a, final int b, final int[] indices, final byte[] block, final int offset) {
+		block[offset] = (byte) a;
+		block[offset + 1] = (byte) (a >> 8);
+		block[offset + 2] = (byte) b;
+		block[offset + 3] = (byte) (b >> 8);
+		for (int i = 0; i < 4; ++i) {
+			final int index = 4 * i;
+			block[offset + 4 + i] = (byte) (indices[index] | (indices[index + 1] << 2)
+					| (indices[index + 2] << 4) | (indices[index + 3] << 6));
+		}
+	}
+
+	private static void compressAlphaDxt3(final byte[] rgba, final int mask, final byte[] block, final int offset) {
+		// quantise and pack the alpha values pairwise
+		for (int i = 0; i < 8; ++i) {
+			int quant1 = Math.round((rgba[8 * i + 3] & 0xFF) * (15.0f / 255.0f));
+			int quant2 = Math.round((rgba[8 * i + 7] & 0xFF) * (15.0f / 255.0f));
+
+			// set alpha to zero where masked
+			if ((mask & (1 << (2 * i))) == 0)
+				quant1 = 0;
+			if ((mask & (1 << (2 * i + 1))) == 0)
+				quant2 = 0;
+			block[offset + i] = (byte) (quant1 | (quant2 << 4));
+		}
+	}
+
+	private void compressAlphaDxt5(final byte[] rgba, final int mask, final byte[] block, final int offset) {
+		// get the range for 5-alpha and 7-alpha interpolation
+		int min5 = 255;
+		int max5 = 0;
+		int min7 = 255;
+		int max7 = 0;
+		for (int i = 0; i < 16; ++i) {
+			if ((mask & (1 << i)) == 0)
+				continue;
+			final int value = rgba[4 * i + 3] & 0xFF;
+			if (value < min7)
+				min7 = value;
+			if (value > max7)
+				max7 = value;
+			if (value != 0 && value < min5)
+				min5 = value;
+			if (value != 255 && value > max5)
+				max5 = value;
+		}
+
+		// handle the case that no valid range was found
+		if (min5 > max5)
+			min5 = max5;
+		if (min7 > max7)
+			min7 = max7;
+
+		// fix the range to be the minimum in each case
+		if (max5 - min5 < 5)
+			max5 = Math.min(min5 + 5, 255);
+		if (max5 - min5 < 5)
+			min5 = Math.max(0, max5 - 5);
+		if (max7 - min7 < 7)
+			max7 = Math.min(min7 + 7, 255);
+		if (max7 - min7 < 7)
+			min7 = Math.max(0, max7 - 7);
+
+		// set up the code books
+		codes5[0] = min5;
+		codes5[1] = max5;
+		for (int i = 1; i < 5; ++i)
+			codes5[1 + i] = ((5 - i) * min5 + i * max5) / 5;
+		codes5[6] = 0;
+		codes5[7] = 255;
+		codes7[0] = min7;
+		codes7[1] = max7;
+		for (int i = 1; i < 7; ++i)
+			codes7[1 + i] = ((7 - i) * min7 + i * max7) / 7;
+
+		// save the block with least error
+		final int error5 = fitCodes(rgba, mask, codes5, indices5);
+		final int error7 = fitCodes(rgba, mask, codes7, indices7);
+		if (error5 <= error7) {
+			if (min5 > max5) {
+				for (int i = 0; i < 16; ++i) {
+					final int index = indices5[i];
+					indices5[i] = index == 0 ? 1 : index == 1 ? 0 : index <= 5 ? 7 - index : index;
+				}
+				writeAlphaBlock(max5, min5, indices5, block, offset);
+			} else {
+				writeAlphaBlock(min5, max5, indices5, block, offset);
+			}
+		} else {
+			if (min7 < max7) {
+				for (int i = 0; i < 16; ++i) {
+					final int index = indices7[i];
+					indices7[i] = index == 0 ? 1 : index == 1 ? 0 : 9 - index;
+				}
+				writeAlphaBlock(max7, min7, indices7, block, offset);
+			} else {
+				writeAlphaBlock(min7, max7, indices7, block, offset);
+			}
+		}
+	}
+
+	private static int fitCodes(final byte[] rgba, final int mask, final int[] codes, final int[] indices) {
+		int error = 0;
+		for (int i = 0; i < 16; ++i) {
+			// masked pixels use the first code
+			if ((mask & (1 << i)) == 0) {
+				indices[i] = 0;
+				continue;
+			}
+
+			// find the least error and corresponding index
+			final int value = rgba[4 * i + 3] & 0xFF;
+			int least = Integer.MAX_VALUE;
+			int index = 0;
+			for (int j = 0; j < 8; ++j) {
+				int distance = value - codes[j];
+				distance *= distance;
+				if (distance < least) {
+					least = distance;
+					index = j;
+				}
+			}
+			indices[i] = index;
+			error += least;
+		}
+		return error;
+	}
+
+	private static void writeAlphaBlock(final int alpha0, final int alpha1, final int[] indices, final byte[] block, final int offset) {
+		block[offset] = (byte) alpha0;
+		block[offset + 1] = (byte) alpha1;
+
+		// pack the indices with 3 bits each, 8 into 3 bytes
+		int source = 0;
+		int target = offset + 2;
+		for (int i = 0; i < 2; ++i) {
+			int value = 0;
+			for (int j = 0; j < 8; ++j)
+				value |= indices[source++] << (3 * j);
+			for (int j = 0; j < 3; ++j)
+				block[target++] = (byte) (value >> (8 * j));
+		}
+	}
+
+	/**
+	 * Finds the endpoints on the 5 or 6 bit grid whose interpolated palette entry is
+	 * closest to each 8 bit value. Exact hits are marked first, the remaining values
+	 * take the endpoints of their nearest neighbour with the error increased by one.
+	 */
+	private static int[] singleColourLookup(final int bits, final int colours) {
+		final int size = 1 << bits;
+		final int[] start = new int[256 * 4];
+		final int[] end = new int[256 * 4];
+		final int[] error = new int[256 * 4];
+		Arrays.fill(error, 255);
+		final int[] codes = new int[4];
+		for (int value1 = 0; value1 < size; ++value1) {
+			for (int value2 = 0; value2 < size; ++value2) {
+				// the 8 bit endpoints and the interpolated values
+				final int a = (value1 << (8 - bits)) | (value1 >> (2 * bits - 8));
+				final int b = (value2 << (8 - bits)) | (value2 >> (2 * bits - 8));
+				codes[0] = a;
+				codes[1] = b;
+				if (colours == 3) {
+					codes[2] = (a + b) / 2;
+					codes[3] = 0;
+				} else {
+					codes[2] = (2 * a + b) / 3;
+					codes[3] = (a + 2 * b) / 3;
+				}
+				for (int index = 0; index < 4; ++index) {
+					final int entry = 4 * codes[index] + index;
+					if (error[entry] != 0) {
+						start[entry] = value1;
+						end[entry] = value2;
+						error[entry] = 0;
+					}
+				}
+			}
+		}
+
+		// iteratively fill in the missing values
+		for (boolean stable = false; !stable; ) {
+			stable = true;
+			for (int index = 0; index < 4; ++index) {
+				for (int target = 0; target < 256; ++target) {
+					final int current = 4 * target + index;
+					if (target != 255 && error[current] > error[current + 4] + 1) {
+						start[current] = start[current + 4];
+						end[current] = end[current + 4];
+						error[current] = error[current + 4] + 1;
+						stable = false;
+					}
+					if (target != 0 && error[current] > error[current - 4] + 1) {
+						start[current] = start[current - 4];
+						end[current] = end[current - 4];
+						error[current] = error[current - 4] + 1;
+						stable = false;
+					}
+				}
+			}
+		}
+
+		final int[] lookup = new int[256 * 4];
+		for (int i = 0; i < lookup.length; ++i)
+			lookup[i] = start[i] | (end[i] << 8) | (error[i] << 16);
+		return lookup;
+	}
+}
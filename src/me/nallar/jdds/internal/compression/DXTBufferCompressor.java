@@ -24,6 +24,7 @@ public class DXTBufferCompressor {
 	protected byte[] byteData;
 	protected final Dimension dimension;
 	protected final CompressionType compressionType;
+	protected final BlockCache blockCache;
 
 
 	/**
@@ -32,10 +33,21 @@ public class DXTBufferCompressor {
 	 */
 	public DXTBufferCompressor(final BufferedImage image,
 							   final Squish.CompressionType compressionType) {
+		this(image, compressionType, null);
+	}
+
+	/**
+	 * @param image
+	 * @param compressionType
+	 * @param blockCache      cache of already compressed blocks, may be null
+	 */
+	public DXTBufferCompressor(final BufferedImage image,
+							   final Squish.CompressionType compressionType,
+							   final BlockCache blockCache) {
 
 		this(ByteBufferedImage.convertBIintoARGBArray(image),
 				new Dimension(image.getWidth(null), image.getHeight(null)),
-				compressionType);
+				compressionType, blockCache);
 	}
 
 	/**
@@ -46,9 +58,23 @@ public class DXTBufferCompressor {
 	public DXTBufferCompressor(final byte[] data,
 							   final Dimension dimension,
 							   final Squish.CompressionType compressionType) {
+		this(data, dimension, compressionType, null);
+	}
+
+	/**
+	 * @param data            Byte-Array should store ARGB
+	 * @param dimension
+	 * @param compressionType
+	 * @param blockCache      cache of already compressed blocks, may be null
+	 */
+	public DXTBufferCompressor(final byte[] data,
+							   final Dimension dimension,
+							   final Squish.CompressionType compressionType,
+							   final BlockCache blockCache) {
 		this.byteData = data;
 		this.dimension = dimension;
 		this.compressionType = compressionType;
+		this.blockCache = blockCache;
 	}
 
 
@@ -56,18 +82,16 @@ public class DXTBufferCompressor {
 	 * @return ByteBuffer
 	 */
 	public ByteBuffer getByteBuffer() {
-		byte[] compressedData;
-		try {
-
-			// the data-Array given to the squishCompressToArray is expected to be
-			// width * height * 4 -> with RGBA, which means, if we got RGB, we need to add A!
-			if (byteData.length < dimension.height * dimension.width * 4) {
-				System.out.println("blow up array from RGB to ARGB");
-				byteData = convertRGBArraytiRGBAArray(byteData, dimension);
-			}
+		return getByteBuffer(null);
+	}
 
-			compressedData = squishCompressToArray(byteData, dimension.width, dimension.height, compressionType);
-			return ByteBuffer.wrap(compressedData);
+	/**
+	 * @param quality receives the error of the compressed pixels, may be null
+	 * @return ByteBuffer
+	 */
+	public ByteBuffer getByteBuffer(final CompressionQuality quality) {
+		try {
+			return ByteBuffer.wrap(compress(quality));
 		} catch (DataFormatException e) {
 			e.printStackTrace();
 		}
@@ -75,28 +99,6 @@ public class DXTBufferCompressor {
 
 	}
 
-	private byte[] convertRGBArraytiRGBAArray(byte[] data, final Dimension dimension) {
-
-		int rgbLength = data.length;
-		int rgbaLength = dimension.width * dimension.height * 4;
-
-		byte[] rgbaBuffer = new byte[rgbaLength];
-
-		// populate new array
-		// we always copy 3 byte chunks, skip one byte, which we set to 255 and take the next 3 byte
-		int loopN = 0;
-		for (int i = 0; i < rgbLength; i = i + 3) {
-
-			int destPos = i + loopN;
-
-			System.arraycopy(data, i, rgbaBuffer, destPos, 3);
-			loopN++;
-		}
-
-
-		return rgbaBuffer;
-	}
-
 	/**
 	 * Get the Byte-array held by this object.
 	 *
@@ -104,13 +106,27 @@ public class DXTBufferCompressor {
 	 */
 	public byte[] getArray() {
 		try {
-			return squishCompressToArray(byteData, dimension.width, dimension.height, compressionType);
+			return compress(null);
 		} catch (final DataFormatException e) {
 			e.printStackTrace();
 		}
 		return byteData;
 	}
 
+	private byte[] compress(final CompressionQuality quality) throws DataFormatException {
+		// the data-Array given to the squishCompressToArray is expected to be
+		// width * height * 4 -> with RGBA, if we got RGB the blocks are read
+		// directly from it and get an opaque alpha
+		if (byteData.length == dimension.height * dimension.width * 3) {
+			byte[] blocks = new byte[Squish.getStorageRequirements(dimension.width, dimension.height, compressionType)];
+			compressBuffer(ByteBuffer.wrap(byteData), dimension.width, dimension.height,
+					dimension.width * 3, ChannelOrder.RGB, compressionType, blockCache, ByteBuffer.wrap(blocks), quality);
+			return blocks;
+		}
+
+		return squishCompressToArray(byteData, dimension.width, dimension.height, compressionType, blockCache, quality);
+	}
+
 	/**
 	 * Compresses the RGBA-byte-array into a DXT-compressed {@link ByteBuffer}.
 	 * @param rgba
@@ -137,13 +153,17 @@ public class DXTBufferCompressor {
 	 * @param height
 	 * @param width
 	 * @param compressionType
+	 * @param blockCache      cache of already compressed blocks, may be null
+	 * @param quality         receives the error of the compressed pixels, may be null
 	 * @return
 	 * @throws DataFormatException
 	 */
 	private static byte[] squishCompressToArray(final byte[] rgba,
 												final int width,
 												final int height,
-												final Squish.CompressionType compressionType) throws DataFormatException {
+												final Squish.CompressionType compressionType,
+												final BlockCache blockCache,
+												final CompressionQuality quality) throws DataFormatException {
 
 		// expected array length
 		int length = width * height * 4;
@@ -152,13 +172,120 @@ public class DXTBufferCompressor {
 
 		int storageRequirements = Squish.getStorageRequirements(width, height, compressionType);
 
-		return Squish.compressImage(rgba,
-				width,
-				height,
-				new byte[storageRequirements],
-				compressionType,
-				Squish.CompressionMethod.CLUSTER_FIT);
+		byte[] blocks = new byte[storageRequirements];
+		compressBuffer(ByteBuffer.wrap(rgba), width, height, width * 4, ChannelOrder.RGBA,
+				compressionType, blockCache, ByteBuffer.wrap(blocks), quality);
+		return blocks;
 	}
 
+	/**
+	 * Compresses pixels read directly from a {@link ByteBuffer}, which may be
+	 * a direct buffer, into a DXT-compressed target buffer.
+	 * Pixels are read with absolute gets starting at the source's position,
+	 * rows may be padded and the channels may be in any {@link ChannelOrder}.
+	 * The compressed blocks are written at the target's position, which is
+	 * advanced past them. Without a block cache nothing is allocated once the
+	 * calling thread has compressed an image.
+	 *
+	 * @param source          uncompressed pixels
+	 * @param width
+	 * @param height
+	 * @param stride          distance between the start of two rows in bytes
+	 * @param channelOrder    layout of a pixel in source
+	 * @param compressionType
+	 * @param blockCache      cache of already compressed blocks, may be null
+	 * @param target          buffer receiving the compressed blocks
+	 * @return target
+	 * @throws IllegalArgumentException if source or target are too small
+	 */
+	public static ByteBuffer compressBuffer(final ByteBuffer source,
+											final int width,
+											final int height,
+											final int stride,
+											final ChannelOrder channelOrder,
+											final Squish.CompressionType compressionType,
+											final BlockCache blockCache,
+											final ByteBuffer target) {
+		return compressBuffer(source, width, height, stride, channelOrder, compressionType, blockCache, target, null);
+	}
+
+	/**
+	 * Compresses pixels like {@link #compressBuffer(ByteBuffer, int, int, int, ChannelOrder, Squish.CompressionType, BlockCache, ByteBuffer)},
+	 * measuring the error of each block against its source pixels right after it is encoded.
+	 *
+	 * @param quality receives the error of the compressed pixels, may be null
+	 * @return target
+	 */
+	public static ByteBuffer compressBuffer(final ByteBuffer source,
+											final int width,
+											final int height,
+											final int stride,
+											final ChannelOrder channelOrder,
+											final Squish.CompressionType compressionType,
+											final BlockCache blockCache,
+											final ByteBuffer target,
+											final CompressionQuality quality) {
+		final int bytesPerPixel = channelOrder.bytesPerPixel;
+		if (stride < width * bytesPerPixel)
+			throw new IllegalArgumentException("stride " + stride + " is smaller than a row of " + width + " pixels");
+		final int base = source.position();
+		final int length = stride * (height - 1) + width * bytesPerPixel;
+		if (source.remaining() < length)
+			throw new IllegalArgumentException("unexpected length:" + source.remaining() + " instead of " + length);
+		final int storageRequirements = Squish.getStorageRequirements(width, height, compressionType);
+		if (target.remaining() < storageRequirements)
+			throw new IllegalArgumentException("target has " + target.remaining() + " bytes remaining, " +
+					storageRequirements + " are required");
+
+		final int red = channelOrder.red;
+		final int green = channelOrder.green;
+		final int blue = channelOrder.blue;
+		final int alpha = channelOrder.alpha;
+		final int blockSize = compressionType.blockSize;
+		final EncoderContext context = EncoderContext.get();
+		final DXTBlockEncoder encoder = context.encoder;
+		final byte[] block = context.block;
+		final byte[] compressed = context.compressed;
+		for (int y = 0; y < height; y += 4) {
+			final int blockHeight = Math.min(4, height - y);
+			for (int x = 0; x < width; x += 4) {
+				final int blockWidth = Math.min(4, width - x);
+				int mask = 0;
+				for (int py = 0; py < blockHeight; py++) {
+					mask |= ((1 << blockWidth) - 1) << (4 * py);
+					int sourcePixel = base + (y + py) * stride + x * bytesPerPixel;
+					int targetPixel = 16 * py;
+					for (int px = 0; px < blockWidth; px++) {
+						block[targetPixel++] = source.get(sourcePixel + red);
+						block[targetPixel++] = source.get(sourcePixel + green);
+						block[targetPixel++] = source.get(sourcePixel + blue);
+						block[targetPixel++] = alpha < 0 ? (byte) 0xFF : source.get(sourcePixel + alpha);
+						sourcePixel += bytesPerPixel;
+					}
+				}
+
+				// blocks at the right and bottom edge of non multiple of 4 sized
+				// images are only partially covered and never cached
+				if (blockWidth == 4 && blockHeight == 4) {
+					if (blockCache == null) {
+						encoder.compressBlock(block, mask, compressionType, compressed, 0);
+					} else if (!blockCache.get(compressionType, block, compressed, 0)) {
+						encoder.compressBlock(block, mask, compressionType, compressed, 0);
+						blockCache.put(compressionType, block, compressed, 0);
+					}
+				} else {
+					encoder.compressBlock(block, mask, compressionType, compressed, 0);
+				}
+				if (quality != null) {
+					DXTBlockDecoder.decompressBlock(context.compressedBuffer, 0, compressionType, context.codes,
+							context.decoded, 0, 16, 4, 4);
+					quality.addBlock(block, context.decoded, mask, alpha >= 0,
+							compressionType == CompressionType.DXT1);
+				}
+				target.put(compressed, 0, blockSize);
+			}
+		}
+		return target;
+	}
 
 }
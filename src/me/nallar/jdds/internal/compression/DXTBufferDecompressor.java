@@ -17,6 +17,8 @@ import java.nio.*;
  */
 public class DXTBufferDecompressor extends BufferDecompressor {
 
+	private final CompressionType type;
+
 
 	/**
 	 * @param compressedBuffer
@@ -47,13 +49,44 @@ public class DXTBufferDecompressor extends BufferDecompressor {
 	 */
 	public DXTBufferDecompressor(final ByteBuffer compressedBuffer,
 								 final Dimension dimension, CompressionType type) {
-		this.uncompressedBuffer =
-				squishDecompressBuffer(compressedBuffer, dimension.width, dimension.height, type);
-		this.dimension = dimension;
+		if (type == null) {
+			// without a type the buffer holds the pixels
+			this.uncompressedBuffer = compressedBuffer;
+			this.dimension = dimension;
+			this.type = null;
+		} else {
+			this.compressedBuffer = compressedBuffer.duplicate();
+			this.dimension = dimension;
+			this.decoder = BandDecoder.dxt(type);
+			this.type = type;
+		}
+	}
 
+	@Override
+	protected byte[] decompressImage() {
+		// decode straight from the (possibly mapped) buffer without copying it first
+		return DXTBlockDecoder.decompressImage(this.compressedBuffer, this.dimension.width, this.dimension.height,
+				this.type, null);
 	}
 
 
+	/**
+	 * Decompresses a DXT-compressed {@link ByteBuffer} block row by block row,
+	 * passing each band of 4 rows to the sink instead of building the whole image.
+	 *
+	 * @param compressedBuffer blocks read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param type
+	 * @param sink             receives the decoded bands, top to bottom
+	 * @see BandSinks
+	 */
+	public static void decompressBands(final ByteBuffer compressedBuffer,
+									   final int width, final int height,
+									   final CompressionType type, final BandSink sink) {
+		BandDecoder.dxt(type).decode(compressedBuffer, width, height, sink);
+	}
+
 	/**
 	 * Compresses a Byte-Array into a DXT-compressed {@link ByteBuffer}
 	 * If the type is null, it returns the uncompressed ByteBuffer.
@@ -71,11 +104,8 @@ public class DXTBufferDecompressor extends BufferDecompressor {
 	public static byte[] squishDecompressToArray(final byte[] compressedData, final int width, final int height,
 												 final Squish.CompressionType type) throws OutOfMemoryError {
 
-		//Use JSquish to decompress images. Then bind as normal. 
 		if (type != null) {
-			synchronized (Squish.class) {
-				return Squish.decompressImage(null, width, height, compressedData, type);
-			}
+			return DXTBlockDecoder.decompressImage(ByteBuffer.wrap(compressedData), width, height, type, null);
 		}
 
 		return compressedData;
@@ -100,25 +130,4 @@ public class DXTBufferDecompressor extends BufferDecompressor {
 		return ByteBuffer.wrap(squishDecompressToArray(compressedData, width, height, type));
 	}
 
-
-	/**
-	 * Decompresses a DXT-compressed {@link ByteBuffer}
-	 *
-	 * @param byteBuffer
-	 * @param width
-	 * @param height
-	 * @param type
-	 * @return
-	 * @throws OutOfMemoryError
-	 */
-	private static ByteBuffer squishDecompressBuffer(final ByteBuffer byteBuffer,
-													 final int width, final int height,
-													 final Squish.CompressionType type) throws OutOfMemoryError {
-
-		byte[] data = new byte[byteBuffer.capacity()];
-		byteBuffer.get(data);
-
-		return squishDecompress(data, width, height, type);
-	}
-
 }
@@ -0,0 +1,47 @@
+package me.nallar.jdds.internal.compression;
+
+import java.nio.*;
+
+
+/**
+ * Working state of {@link DXTBufferCompressor#compressBuffer}, one per thread, so a thread
+ * allocates nothing for the blocks it compresses after its first image.
+ * <p>
+ * Virtual threads get their own context like any other thread, which costs one context per task
+ * of the batch APIs rather than one per block.
+ */
+final class EncoderContext {
+
+	private static final ThreadLocal<EncoderContext> CONTEXT = new ThreadLocal<EncoderContext>() {
+		@Override
+		protected EncoderContext initialValue() {
+			return new EncoderContext();
+		}
+	};
+
+	final DXTBlockEncoder encoder = new DXTBlockEncoder();
+	/**
+	 * Pixels of the current block, in RGBA-order with 16 bytes per row
+	 */
+	final byte[] block = new byte[BlockCache.BLOCK_RGBA_SIZE];
+	/**
+	 * The current compressed block, large enough for every compression type
+	 */
+	final byte[] compressed = new byte[16];
+	final ByteBuffer compressedBuffer = ByteBuffer.wrap(compressed);
+	/**
+	 * The current block decoded again, when measuring the {@link CompressionQuality}
+	 */
+	final byte[] decoded = new byte[BlockCache.BLOCK_RGBA_SIZE];
+	final int[] codes = new int[16];
+
+	private EncoderContext() {
+	}
+
+	/**
+	 * @return the context of the current thread
+	 */
+	static EncoderContext get() {
+		return CONTEXT.get();
+	}
+}
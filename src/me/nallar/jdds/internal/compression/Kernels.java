@@ -0,0 +1,282 @@
+package me.nallar.jdds.internal.compression;
+
+import gr.zdimensions.jsquish.Squish.CompressionType;
+
+import java.nio.*;
+
+
+/**
+ * Inner loops of the codecs which have a SIMD implementation.
+ * <p>
+ * {@link #get()} returns the Vector API implementation, me.nallar.jdds.internal.compression.VectorKernels,
+ * if the library runs on Java 17 or later with --add-modules jdk.incubator.vector, unless the system
+ * property jdds.simd is false. Otherwise, and always from {@link #scalar()}, the plain java loops are used.
+ * Both produce identical results.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public class Kernels {
+
+	/**
+	 * Layout of the sums passed to the cluster error kernels. The squared weights and the squared weights times the
+	 * points of the ordered points [0, m) are at SUM_WEIGHTS + m, SUM_X + m, SUM_Y + m and SUM_Z + m for m = 0..16,
+	 * followed by the sums of the squared weighted points and the error metric of the three channels, and a workspace
+	 * for the SIMD kernels.
+	 */
+	static final int SUM_WEIGHTS = 0;
+	static final int SUM_X = 17;
+	static final int SUM_Y = 34;
+	static final int SUM_Z = 51;
+	static final int SUM_XX = 68;
+	static final int METRIC = 71;
+	static final int WORKSPACE = 74;
+	static final int SUMS_SIZE = WORKSPACE + 11 * 32;
+
+	static final float GRID_X = 31.0f;
+	static final float GRID_Y = 63.0f;
+	static final float GRID_Z = 31.0f;
+	static final float GRID_X_RCP = 1.0f / GRID_X;
+	static final float GRID_Y_RCP = 1.0f / GRID_Y;
+	static final float GRID_Z_RCP = 1.0f / GRID_Z;
+	static final float ONE_THIRD = 1.0f / 3.0f;
+	static final float TWO_THIRDS = 2.0f / 3.0f;
+	static final float ONE_NINTH = 1.0f / 9.0f;
+	static final float TWO_NINTHS = 2.0f / 9.0f;
+	static final float FOUR_NINTHS = 4.0f / 9.0f;
+
+	private static final Kernels SCALAR = new Kernels();
+	private static final Kernels DEFAULT = load();
+
+	protected Kernels() {
+	}
+
+	/**
+	 * The SIMD implementation is compiled separately against Java 17, so it is only loaded reflectively.
+	 * Its constructor throws an UnsupportedOperationException if the vector shapes don't fit, which
+	 * Class.newInstance doesn't wrap, so any failure falls back to the scalar implementation.
+	 */
+	private static Kernels load() {
+		if (!Boolean.parseBoolean(System.getProperty("jdds.simd", "true")))
+			return SCALAR;
+		try {
+			return (Kernels) Class.forName("me.nallar.jdds.internal.compression.VectorKernels").newInstance();
+		} catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			return SCALAR;
+		}
+	}
+
+	/**
+	 * @return the fastest available implementation
+	 */
+	public static Kernels get() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return the plain java implementation
+	 */
+	public static Kernels scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * @return true if this implementation uses SIMD instructions
+	 */
+	public boolean isSimd() {
+		return false;
+	}
+
+	/**
+	 * Decompresses a whole 4x4 DXT block into the RGBA-array.
+	 *
+	 * @param blocks     compressed data
+	 * @param offset     absolute offset of the block in blocks
+	 * @param type
+	 * @param codes      scratch space of at least 16 ints
+	 * @param rgba       target array
+	 * @param rgbaOffset offset of the top left pixel of the block in rgba
+	 * @param rgbaStride distance between two rows in rgba in bytes
+	 * @see DXTBlockDecoder#decompressBlock
+	 */
+	public void decompressBlock(final ByteBuffer blocks,
+								final int offset,
+								final CompressionType type,
+								final int[] codes,
+								final byte[] rgba,
+								final int rgbaOffset,
+								final int rgbaStride) {
+		DXTBlockDecoder.decompressBlock(blocks, offset, type, codes, rgba, rgbaOffset, rgbaStride, 4, 4);
+	}
+
+	/**
+	 * Reverses the order of the 4 bytes of each pixel, e.g. ABGR into RGBA.
+	 *
+	 * @param source
+	 * @param sourceOffset
+	 * @param target       may not overlap the source
+	 * @param targetOffset
+	 * @param pixels       number of pixels
+	 */
+	public void reversePixelBytes(final byte[] source,
+								  int sourceOffset,
+								  final byte[] target,
+								  int targetOffset,
+								  final int pixels) {
+		for (int i = 0; i < pixels; i++) {
+			target[targetOffset] = source[sourceOffset + 3];
+			target[targetOffset + 1] = source[sourceOffset + 2];
+			target[targetOffset + 2] = source[sourceOffset + 1];
+			target[targetOffset + 3] = source[sourceOffset];
+			sourceOffset += 4;
+			targetOffset += 4;
+		}
+	}
+
+	/**
+	 * Computes the errors of fitting the ordered points with 3 colours, [0, i) at the start,
+	 * [i, j) half along and [j, count) at the end, for j = i..count.
+	 *
+	 * @param sums   prefix sums, see {@link #SUM_WEIGHTS}
+	 * @param count  number of points
+	 * @param i
+	 * @param errors receives the error of j at index j
+	 */
+	void clusterErrors3(final float[] sums, final int count, final int i, final float[] errors) {
+		for (int j = i; j <= count; j++)
+			errors[j] = clusterError3(sums, count, i, j, null);
+	}
+
+	/**
+	 * Computes the errors of fitting the ordered points with 4 colours, [0, i) at the start, [i, j) one third
+	 * along, [j, k) two thirds along and [k, count) at the end, for k = j..count.
+	 *
+	 * @param sums   prefix sums, see {@link #SUM_WEIGHTS}
+	 * @param count  number of points
+	 * @param i
+	 * @param j
+	 * @param errors receives the error of k at index k
+	 */
+	void clusterErrors4(final float[] sums, final int count, final int i, final int j, final float[] errors) {
+		for (int k = j; k <= count; k++)
+			errors[k] = clusterError4(sums, count, i, j, k, null);
+	}
+
+	/**
+	 * @param endpoints receives the start and end point on the 565 grid, may be null
+	 * @see #clusterErrors3
+	 */
+	static float clusterError3(final float[] sums, final int count, final int i, final int j, final float[] endpoints) {
+		final float w0 = sums[SUM_WEIGHTS + i];
+		final float w1 = sums[SUM_WEIGHTS + j] - w0;
+		final float w2 = sums[SUM_WEIGHTS + count] - sums[SUM_WEIGHTS + j];
+		final float alpha2 = w0 + 0.25f * w1;
+		final float beta2 = 0.25f * w1 + w2;
+		final float alphaBeta = 0.25f * w1;
+		final float x0 = sums[SUM_X + i], x1 = sums[SUM_X + j] - x0, x2 = sums[SUM_X + count] - sums[SUM_X + j];
+		final float y0 = sums[SUM_Y + i], y1 = sums[SUM_Y + j] - y0, y2 = sums[SUM_Y + count] - sums[SUM_Y + j];
+		final float z0 = sums[SUM_Z + i], z1 = sums[SUM_Z + j] - z0, z2 = sums[SUM_Z + count] - sums[SUM_Z + j];
+		return solveLeastSquares(sums, alpha2, beta2, alphaBeta,
+				x0 + 0.5f * x1, y0 + 0.5f * y1, z0 + 0.5f * z1,
+				0.5f * x1 + x2, 0.5f * y1 + y2, 0.5f * z1 + z2, endpoints);
+	}
+
+	/**
+	 * @param endpoints receives the start and end point on the 565 grid, may be null
+	 * @see #clusterErrors4
+	 */
+	static float clusterError4(final float[] sums, final int count, final int i, final int j, final int k, final float[] endpoints) {
+		final float w0 = sums[SUM_WEIGHTS + i];
+		final float w1 = sums[SUM_WEIGHTS + j] - w0;
+		final float w2 = sums[SUM_WEIGHTS + k] - sums[SUM_WEIGHTS + j];
+		final float w3 = sums[SUM_WEIGHTS + count] - sums[SUM_WEIGHTS + k];
+		final float alpha2 = w0 + FOUR_NINTHS * w1 + ONE_NINTH * w2;
+		final float beta2 = ONE_NINTH * w1 + FOUR_NINTHS * w2 + w3;
+		final float alphaBeta = TWO_NINTHS * (w1 + w2);
+		final float x0 = sums[SUM_X + i], x1 = sums[SUM_X + j] - x0;
+		final float x2 = sums[SUM_X + k] - sums[SUM_X + j], x3 = sums[SUM_X + count] - sums[SUM_X + k];
+		final float y0 = sums[SUM_Y + i], y1 = sums[SUM_Y + j] - y0;
+		final float y2 = sums[SUM_Y + k] - sums[SUM_Y + j], y3 = sums[SUM_Y + count] - sums[SUM_Y + k];
+		final float z0 = sums[SUM_Z + i], z1 = sums[SUM_Z + j] - z0;
+		final float z2 = sums[SUM_Z + k] - sums[SUM_Z + j], z3 = sums[SUM_Z + count] - sums[SUM_Z + k];
+		return solveLeastSquares(sums, alpha2, beta2, alphaBeta,
+				x0 + TWO_THIRDS * x1 + ONE_THIRD * x2,
+				y0 + TWO_THIRDS * y1 + ONE_THIRD * y2,
+				z0 + TWO_THIRDS * z1 + ONE_THIRD * z2,
+				ONE_THIRD * x1 + TWO_THIRDS * x2 + x3,
+				ONE_THIRD * y1 + TWO_THIRDS * y2 + y3,
+				ONE_THIRD * z1 + TWO_THIRDS * z2 + z3, endpoints);
+	}
+
+	/**
+	 * Places the endpoints minimizing the squared error of the weighted points, the SIMD kernels
+	 * must evaluate exactly the same expressions so both pick the same clusters.
+	 */
+	private static float solveLeastSquares(final float[] sums,
+										   final float alpha2,
+										   final float beta2,
+										   final float alphaBeta,
+										   final float alphaX,
+										   final float alphaY,
+										   final float alphaZ,
+										   final float betaX,
+										   final float betaY,
+										   final float betaZ,
+										   final float[] endpoints) {
+		float aX, aY, aZ;
+		float bX, bY, bZ;
+		// zero where non-determinate
+		if (beta2 == 0.0f) {
+			final float rcp = 1.0f / alpha2;
+			aX = alphaX * rcp;
+			aY = alphaY * rcp;
+			aZ = alphaZ * rcp;
+			bX = bY = bZ = 0.0f;
+		} else if (alpha2 == 0.0f) {
+			final float rcp = 1.0f / beta2;
+			aX = aY = aZ = 0.0f;
+			bX = betaX * rcp;
+			bY = betaY * rcp;
+			bZ = betaZ * rcp;
+		} else {
+			final float rcp = 1.0f / (alpha2 * beta2 - alphaBeta * alphaBeta);
+			if (rcp == Float.POSITIVE_INFINITY)
+				return Float.MAX_VALUE;
+			aX = (alphaX * beta2 - betaX * alphaBeta) * rcp;
+			aY = (alphaY * beta2 - betaY * alphaBeta) * rcp;
+			aZ = (alphaZ * beta2 - betaZ * alphaBeta) * rcp;
+			bX = (betaX * alpha2 - alphaX * alphaBeta) * rcp;
+			bY = (betaY * alpha2 - alphaY * alphaBeta) * rcp;
+			bZ = (betaZ * alpha2 - alphaZ * alphaBeta) * rcp;
+		}
+
+		// clamp to the grid
+		aX = clamp(aX, GRID_X, GRID_X_RCP);
+		aY = clamp(aY, GRID_Y, GRID_Y_RCP);
+		aZ = clamp(aZ, GRID_Z, GRID_Z_RCP);
+		bX = clamp(bX, GRID_X, GRID_X_RCP);
+		bY = clamp(bY, GRID_Y, GRID_Y_RCP);
+		bZ = clamp(bZ, GRID_Z, GRID_Z_RCP);
+		if (endpoints != null) {
+			endpoints[0] = aX;
+			endpoints[1] = aY;
+			endpoints[2] = aZ;
+			endpoints[3] = bX;
+			endpoints[4] = bY;
+			endpoints[5] = bZ;
+		}
+
+		// compute the error
+		final float eX = aX * aX * alpha2 + bX * bX * beta2 + sums[SUM_XX] + 2.0f * (aX * bX * alphaBeta - aX * alphaX - bX * betaX);
+		final float eY = aY * aY * alpha2 + bY * bY * beta2 + sums[SUM_XX + 1] + 2.0f * (aY * bY * alphaBeta - aY * alphaY - bY * betaY);
+		final float eZ = aZ * aZ * alpha2 + bZ * bZ * beta2 + sums[SUM_XX + 2] + 2.0f * (aZ * bZ * alphaBeta - aZ * alphaZ - bZ * betaZ);
+		return sums[METRIC] * eX + sums[METRIC + 1] * eY + sums[METRIC + 2] * eZ;
+	}
+
+	static float clamp(final float v, final float grid, final float gridRcp) {
+		if (v <= 0.0f)
+			return 0.0f;
+		else if (v >= 1.0f)
+			return 1.0f;
+		return (int) (grid * v + 0.5f) * gridRcp;
+	}
+}
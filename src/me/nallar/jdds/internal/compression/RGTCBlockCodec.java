@@ -0,0 +1,227 @@
+package me.nallar.jdds.internal.compression;
+
+import java.nio.*;
+
+
+/**
+ * Encoder and decoder for the single and dual channel block formats
+ * BC4 (ATI1, one 8 byte block holding red) and BC5 (ATI2, a red block
+ * followed by a green block). Both use the DXT5 alpha block layout.
+ * <p>
+ * All methods are thread-safe and, apart from the result arrays, do not allocate.
+ * Decoded BC4 surfaces are grey, BC5 surfaces have a zero blue channel,
+ * both are opaque.
+ */
+public final class RGTCBlockCodec {
+
+	/**
+	 * Size of one compressed BC4 block, BC5 blocks are twice as big.
+	 */
+	public static final int BLOCK_SIZE = 8;
+
+	private RGTCBlockCodec() {
+	}
+
+	/**
+	 * Number of bytes needed to compress an image of the given size.
+	 *
+	 * @param twoChannels true for BC5, false for BC4
+	 */
+	public static int getStorageRequirements(final int width, final int height, final boolean twoChannels) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * (twoChannels ? 2 * BLOCK_SIZE : BLOCK_SIZE);
+	}
+
+	/**
+	 * Compresses RGBA-pixels into BC4 or BC5 blocks.
+	 *
+	 * @param rgba        pixels in RGBA-order, read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param twoChannels true for BC5 (red and green), false for BC4 (red)
+	 * @param target      buffer receiving the blocks at its position, which is advanced past them
+	 * @return target
+	 */
+	public static ByteBuffer compressImage(final ByteBuffer rgba,
+										   final int width,
+										   final int height,
+										   final boolean twoChannels,
+										   final ByteBuffer target) {
+		final int base = rgba.position();
+		if (rgba.remaining() < width * height * 4)
+			throw new IllegalArgumentException("Invalid source image data specified.");
+		if (target.remaining() < getStorageRequirements(width, height, twoChannels))
+			throw new IllegalArgumentException("target has " + target.remaining() + " bytes remaining, " +
+					getStorageRequirements(width, height, twoChannels) + " are required");
+
+		final int[] values = new int[16];
+		final byte[] block = new byte[BLOCK_SIZE];
+		for (int y = 0; y < height; y += 4) {
+			final int blockHeight = Math.min(4, height - y);
+			for (int x = 0; x < width; x += 4) {
+				final int blockWidth = Math.min(4, width - x);
+				final int pixel = base + 4 * (width * y + x);
+				for (int channel = 0; channel < (twoChannels ? 2 : 1); channel++) {
+					int mask = 0;
+					for (int py = 0; py < blockHeight; ++py) {
+						for (int px = 0; px < blockWidth; ++px) {
+							values[4 * py + px] = rgba.get(pixel + 4 * (width * py + px) + channel) & 0xFF;
+							mask |= 1 << (4 * py + px);
+						}
+					}
+					compressBlock(values, mask, block, 0);
+					target.put(block);
+				}
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Decompresses BC4 or BC5 blocks into RGBA-pixels.
+	 *
+	 * @param blocks      compressed data, read with absolute gets starting at the buffer's position
+	 * @param width
+	 * @param height
+	 * @param twoChannels true for BC5 (red and green), false for BC4 (red)
+	 * @param rgba        array receiving the pixels, allocated if null or too small
+	 * @return rgba
+	 */
+	public static byte[] decompressImage(final ByteBuffer blocks,
+										 final int width,
+										 final int height,
+										 final boolean twoChannels,
+										 byte[] rgba) {
+		if (blocks.remaining() < getStorageRequirements(width, height, twoChannels))
+			throw new IllegalArgumentException("Invalid source image data specified.");
+		if (rgba == null || rgba.length < width * height * 4)
+			rgba = new byte[width * height * 4];
+
+		final int[] codes = new int[8];
+		int sourceBlock = blocks.position();
+		for (int y = 0; y < height; y += 4) {
+			final int blockHeight = Math.min(4, height - y);
+			for (int x = 0; x < width; x += 4) {
+				final int blockWidth = Math.min(4, width - x);
+				final int pixel = 4 * (width * y + x);
+				DXTBlockDecoder.decompressAlphaDxt5(blocks, sourceBlock, codes,
+						rgba, pixel, width * 4, 4, blockWidth, blockHeight);
+				sourceBlock += BLOCK_SIZE;
+				if (twoChannels) {
+					DXTBlockDecoder.decompressAlphaDxt5(blocks, sourceBlock, codes,
+							rgba, pixel + 1, width * 4, 4, blockWidth, blockHeight);
+					sourceBlock += BLOCK_SIZE;
+				}
+				for (int py = 0; py < blockHeight; ++py) {
+					int target = pixel + py * width * 4;
+					for (int px = 0; px < blockWidth; ++px) {
+						if (!twoChannels)
+							rgba[target + 1] = rgba[target];
+						rgba[target + 2] = twoChannels ? 0 : rgba[target];
+						rgba[target + 3] = (byte) 0xFF;
+						target += 4;
+					}
+				}
+			}
+		}
+		return rgba;
+	}
+
+	/**
+	 * Compresses 16 single channel values into an 8 byte block.
+	 * Both the 8 value and the 6 value codebook are fitted, the one with the lower error is used.
+	 *
+	 * @param values 16 values of 0..255, row by row
+	 * @param mask   bit i is set if value i is part of the image
+	 * @param block  target array
+	 * @param offset offset in block
+	 */
+	public static void compressBlock(final int[] values, final int mask, final byte[] block, final int offset) {
+		// find the ranges of all values and of the values which are not 0 or 255
+		int min7 = 255, max7 = 0;
+		int min5 = 255, max5 = 0;
+		for (int i = 0; i < 16; ++i) {
+			if ((mask & (1 << i)) == 0)
+				continue;
+			final int value = values[i];
+			if (value < min7)
+				min7 = value;
+			if (value > max7)
+				max7 = value;
+			if (value != 0 && value < min5)
+				min5 = value;
+			if (value != 255 && value > max5)
+				max5 = value;
+		}
+		if (min5 > max5)
+			min5 = max5 = 0;
+
+		// the 8 value codebook needs alpha0 > alpha1
+		if (max7 > min7 && fitError(values, mask, max7, min7) <= fitError(values, mask, min5, max5))
+			writeBlock(max7, min7, fitIndices(values, mask, max7, min7), block, offset);
+		else
+			writeBlock(min5, max5, fitIndices(values, mask, min5, max5), block, offset);
+	}
+
+	private static int fitError(final int[] values, final int mask, final int alpha0, final int alpha1) {
+		int error = 0;
+		for (int i = 0; i < 16; ++i) {
+			if ((mask & (1 << i)) != 0)
+				error += closest(values[i], alpha0, alpha1) >>> 3;
+		}
+		return error;
+	}
+
+	/**
+	 * @return the 16 3-bit indices of the closest codes
+	 */
+	private static long fitIndices(final int[] values, final int mask, final int alpha0, final int alpha1) {
+		long indices = 0;
+		for (int i = 0; i < 16; ++i) {
+			if ((mask & (1 << i)) != 0)
+				indices |= (long) (closest(values[i], alpha0, alpha1) & 0x7) << (3 * i);
+		}
+		return indices;
+	}
+
+	/**
+	 * @return the squared error to the closest code shifted left by 3, or'ed with its index
+	 */
+	private static int closest(final int value, final int alpha0, final int alpha1) {
+		int least = Integer.MAX_VALUE;
+		int index = 0;
+		for (int j = 0; j < 8; ++j) {
+			int dist = value - code(alpha0, alpha1, j);
+			dist *= dist;
+			if (dist < least) {
+				least = dist;
+				index = j;
+			}
+		}
+		return (least << 3) | index;
+	}
+
+	/**
+	 * Value of the code at index j, as produced by the decoder.
+	 */
+	private static int code(final int alpha0, final int alpha1, final int j) {
+		if (j == 0)
+			return alpha0;
+		if (j == 1)
+			return alpha1;
+		if (alpha0 > alpha1)
+			return ((8 - j) * alpha0 + (j - 1) * alpha1) / 7;
+		if (j == 6)
+			return 0;
+		if (j == 7)
+			return 255;
+		return ((6 - j) * alpha0 + (j - 1) * alpha1) / 5;
+	}
+
+	private static void writeBlock(final int alpha0, final int alpha1, final long indices,
+								   final byte[] block, final int offset) {
+		block[offset] = (byte) alpha0;
+		block[offset + 1] = (byte) alpha1;
+		for (int i = 0; i < 6; ++i)
+			block[offset + 2 + i] = (byte) (indices >>> (8 * i));
+	}
+}
@@ -0,0 +1,31 @@
+package me.nallar.jdds.internal.compression;
+
+import java.nio.*;
+
+
+/**
+ * Decompressor for the BC4 (ATI1) and BC5 (ATI2) formats
+ */
+public class RGTCBufferDecompressor extends BufferDecompressor {
+
+	private final boolean twoChannels;
+
+	/**
+	 * @param compressedBuffer
+	 * @param width
+	 * @param height
+	 * @param twoChannels      true for BC5, false for BC4
+	 */
+	public RGTCBufferDecompressor(final ByteBuffer compressedBuffer,
+								  final int width, final int height, final boolean twoChannels) {
+		super(compressedBuffer, width, height, BandDecoder.rgtc(twoChannels));
+		this.twoChannels = twoChannels;
+	}
+
+	@Override
+	protected byte[] decompressImage() {
+		return RGTCBlockCodec.decompressImage(this.compressedBuffer, this.dimension.width, this.dimension.height,
+				this.twoChannels, null);
+	}
+
+}
@@ -0,0 +1,77 @@
+package me.nallar.jdds.internal.compression;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+
+/**
+ * Decompressor reading the pixels from a {@link ReadableByteChannel}, e.g. a network or zip stream.
+ * The data is read and decoded one band at a time, so decoding starts with the
+ * first band and the compressed image is never held in memory as a whole.
+ */
+public class StreamDecompressor extends BufferDecompressor {
+
+	/**
+	 * Reads and decodes width * height pixels, the channel is left positioned after them.
+	 *
+	 * @param source  channel positioned at the first byte of the pixels, it is not closed
+	 * @param width
+	 * @param height
+	 * @param decoder decoder for the layout of the pixels
+	 * @throws IOException if reading fails or the channel ends early
+	 */
+	public StreamDecompressor(final ReadableByteChannel source,
+							  final int width, final int height, final BandDecoder decoder) throws IOException {
+		final byte[] rgba = new byte[width * height * 4];
+		decode(source, width, height, decoder, new BandSink() {
+			@Override
+			public void band(final int y, final int width, final int rows, final byte[] pixels) {
+				System.arraycopy(pixels, 0, rgba, y * width * 4, rows * width * 4);
+			}
+		});
+		this.uncompressedBuffer = ByteBuffer.wrap(rgba);
+		this.dimension = new Dimension(width, height);
+	}
+
+	/**
+	 * Reads width * height pixels band by band and passes each decoded band to the sink,
+	 * the channel is left positioned after them. Only one band is held in memory.
+	 *
+	 * @param source  channel positioned at the first byte of the pixels, it is not closed
+	 * @param width
+	 * @param height
+	 * @param decoder decoder for the layout of the pixels
+	 * @param sink    receives the decoded bands
+	 * @throws IOException if reading fails or the channel ends early
+	 */
+	public static void decode(final ReadableByteChannel source,
+							  final int width, final int height,
+							  final BandDecoder decoder, final BandSink sink) throws IOException {
+		final ByteBuffer band = ByteBuffer.allocate(decoder.getBandSize(width, BandDecoder.ROWS));
+		band.order(ByteOrder.LITTLE_ENDIAN);
+		byte[] pixels = null;
+		for (int y = 0; y < height; y += BandDecoder.ROWS) {
+			final int rows = Math.min(BandDecoder.ROWS, height - y);
+			band.clear();
+			band.limit(decoder.getBandSize(width, rows));
+			readFully(source, band);
+			band.flip();
+			pixels = decoder.decodeBand(band, width, rows, pixels);
+			sink.band(y, width, rows, pixels);
+		}
+	}
+
+	/**
+	 * Reads until the buffer is full.
+	 *
+	 * @throws EOFException if the channel ends first
+	 */
+	private static void readFully(final ReadableByteChannel source, final ByteBuffer target) throws IOException {
+		while (target.hasRemaining()) {
+			if (source.read(target) < 0)
+				throw new EOFException("Stream ended " + target.remaining() + " bytes early");
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package me.nallar.jdds.internal.ddsutil;
+
+
+/**
+ * Classifies the alpha channel of RGBA pixels while
+ * {@link ByteBufferedImage#convertBIintoARGBArray(java.awt.image.BufferedImage, AlphaClassifier)}
+ * converts them, so choosing a pixelformat needs no pass of its own.
+ */
+public class AlphaClassifier {
+
+	public enum Alpha {
+		/**
+		 * Every pixel is opaque
+		 */
+		ABSENT,
+		/**
+		 * Every pixel is opaque or fully transparent, which DXT1 keeps
+		 */
+		BINARY,
+		/**
+		 * Some pixels are partially transparent
+		 */
+		GRADED
+	}
+
+	private boolean transparent;
+	private boolean graded;
+
+	/**
+	 * Adds the alpha value of one pixel.
+	 */
+	void add(final byte alpha) {
+		if (alpha == 0)
+			transparent = true;
+		else if (alpha != (byte) 0xFF)
+			graded = true;
+	}
+
+	/**
+	 * Adds RGBA pixels, returning as soon as graded alpha is found.
+	 */
+	void add(final byte[] rgba, final int offset, final int pixels) {
+		if (graded)
+			return;
+		final int end = offset + pixels * 4;
+		for (int i = offset + 3; i < end; i += 4) {
+			final byte alpha = rgba[i];
+			if (alpha != (byte) 0xFF) {
+				if (alpha != 0) {
+					graded = true;
+					return;
+				}
+				transparent = true;
+			}
+		}
+	}
+
+	/**
+	 * @return the alpha of all added pixels, {@link Alpha#ABSENT} if none were added
+	 */
+	public Alpha getAlpha() {
+		return graded ? Alpha.GRADED : transparent ? Alpha.BINARY : Alpha.ABSENT;
+	}
+}
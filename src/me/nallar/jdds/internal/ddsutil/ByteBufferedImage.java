@@ -3,6 +3,9 @@
  */
 package me.nallar.jdds.internal.ddsutil;
 
+import me.nallar.jdds.JDDSMetrics.Stage;
+import me.nallar.jdds.internal.compression.Kernels;
+
 import java.awt.image.*;
 import java.nio.*;
 
@@ -12,6 +15,11 @@ import java.nio.*;
  */
 public class ByteBufferedImage extends BufferedImage {
 
+	/**
+	 * Pixels converted at once before their alpha is classified, 16 KiB
+	 */
+	private static final int CLASSIFY_CHUNK = 4096;
+
 	/**
 	 * Creates a BufferedImage with 4byte ARGB.
 	 *
@@ -40,13 +48,28 @@ public class ByteBufferedImage extends BufferedImage {
 	 * @return array in order RGBA
 	 */
 	public static byte[] convertBIintoARGBArray(final BufferedImage bi) {
+		return convertBIintoARGBArray(bi, null);
+	}
+
+	/**
+	 * Transfers the pixel-Information from a {@link BufferedImage} into a byte-array like
+	 * {@link #convertBIintoARGBArray(BufferedImage)}, classifying the alpha channel of the pixels as they are converted.
+	 *
+	 * @param bi
+	 * @param alpha receives the alpha of the pixels, may be null
+	 * @return array in order RGBA
+	 */
+	public static byte[] convertBIintoARGBArray(final BufferedImage bi, final AlphaClassifier alpha) {
+		StageTimer timer = StageTimer.start(Stage.CONVERT);
 		DataBuffer dataBuffer = bi.getRaster().getDataBuffer();
 
 		// read channel count
 		int componentCount = bi.getColorModel().getNumComponents();
 
-		return convertDataBufferToARGBArray(bi.getWidth(),
-				bi.getHeight(), dataBuffer, componentCount, bi.getType());
+		byte[] argb = convertDataBufferToARGBArray(bi.getWidth(),
+				bi.getHeight(), dataBuffer, componentCount, bi.getType(), alpha);
+		StageTimer.stop(timer, 0, bi.getWidth(), bi.getHeight(), -1, argb.length);
+		return argb;
 	}
 
 	/**
@@ -58,13 +81,15 @@ public class ByteBufferedImage extends BufferedImage {
 	 * @param dataBuffer
 	 * @param componentCount
 	 * @param bufferedImageType
+	 * @param alpha             receives the alpha of the pixels, may be null
 	 * @return
 	 */
 	private static byte[] convertDataBufferToARGBArray(final int width,
 													   final int height,
 													   final DataBuffer dataBuffer,
 													   int componentCount,
-													   final int bufferedImageType) {
+													   final int bufferedImageType,
+													   final AlphaClassifier alpha) {
 		int length = height * width * 4;
 		byte[] argb = new byte[length];
 
@@ -75,6 +100,24 @@ public class ByteBufferedImage extends BufferedImage {
 		if (length != dataBuffer.getSize())
 			throw new IllegalStateException("Databuffer has not the expected length: " + dataBuffer.getSize() + " instead of " + length);
 
+		if (componentCount > 3 && dataBuffer instanceof DataBufferByte && dataBuffer.getNumBanks() == 1) {
+			// swizzle the backing array in bulk instead of reading every element through the DataBuffer
+			final byte[] data = ((DataBufferByte) dataBuffer).getData();
+			final int pixels = width * height;
+			// in chunks which are still cached when the classifier reads their alpha
+			final int chunk = alpha == null ? pixels : CLASSIFY_CHUNK;
+			for (int pixel = 0; pixel < pixels; pixel += chunk) {
+				final int chunkPixels = Math.min(chunk, pixels - pixel);
+				if (bufferedImageType == BufferedImage.TYPE_4BYTE_ABGR)
+					Kernels.get().reversePixelBytes(data, dataBuffer.getOffset() + 4 * pixel, argb, 4 * pixel, chunkPixels);
+				else
+					System.arraycopy(data, dataBuffer.getOffset() + 4 * pixel, argb, 4 * pixel, 4 * chunkPixels);
+				if (alpha != null)
+					alpha.add(argb, 4 * pixel, chunkPixels);
+			}
+			return argb;
+		}
+
 		for (int i = 0; i < dataBuffer.getSize(); i = i + componentCount) {
 			// databuffer has unsigned integers, they must be converted to signed byte 
 			// original order from BufferedImage
@@ -99,6 +142,8 @@ public class ByteBufferedImage extends BufferedImage {
 				argb[i + 1] = (byte) (r & 0xFF);
 				argb[i + 2] = (byte) (g & 0xFF);
 				argb[i + 3] = (byte) (b & 0xFF);
+				if (alpha != null)
+					alpha.add(argb[i + 3]);
 			} else { //24bit image
 
 				b = (dataBuffer.getElem(count));
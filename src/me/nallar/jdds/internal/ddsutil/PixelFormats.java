@@ -33,6 +33,21 @@ public class PixelFormats {
 		}
 	}
 
+	/**
+	 * @param compressionType
+	 * @return DDSImage pixelformat
+	 */
+	public static int getD3DFormat(final Squish.CompressionType compressionType) {
+		switch (compressionType) {
+			case DXT1:
+				return DDSImage.D3DFMT_DXT1;
+			case DXT3:
+				return DDSImage.D3DFMT_DXT3;
+			default:
+				return DDSImage.D3DFMT_DXT5;
+		}
+	}
+
 	/**
 	 * Returns the verbose Pixelformat this DDSFile for the pixelformat-code
 	 *
@@ -45,7 +60,7 @@ public class PixelFormats {
 			default:
 				return PixelFormat.Unknown.toString();
 			case DDSImage.D3DFMT_A8R8G8B8:
-				return PixelFormat.Unknown.toString();
+				return PixelFormat.A8R8G8B8.toString();
 			case DDSImage.D3DFMT_DXT1:
 				return PixelFormat.DXT1.toString();
 			case DDSImage.D3DFMT_DXT2:
@@ -60,6 +75,12 @@ public class PixelFormats {
 				return PixelFormat.R8G8B8.toString();
 			case DDSImage.D3DFMT_X8R8G8B8:
 				return PixelFormat.X8R8G8B8.toString();
+			case DDSImage.D3DFMT_ATI1:
+				return PixelFormat.ATI1.toString();
+			case DDSImage.D3DFMT_ATI2:
+				return PixelFormat.ATI2.toString();
+			case DDSImage.D3DFMT_BC7:
+				return PixelFormat.BC7.toString();
 		}
 	}
 
@@ -83,7 +104,51 @@ public class PixelFormats {
 			case DDSImage.D3DFMT_DXT3:
 			case DDSImage.D3DFMT_DXT4:
 			case DDSImage.D3DFMT_DXT5:
+			case DDSImage.D3DFMT_ATI1:
+			case DDSImage.D3DFMT_ATI2:
+			case DDSImage.D3DFMT_BC7:
 				return true;
 		}
 	}
+
+	/**
+	 * Returns true if the pixelformat is one of the single or dual channel
+	 * formats BC4 (ATI1) and BC5 (ATI2), which jsquish can't handle.
+	 *
+	 * @param pixelformat DDSImage pixelformat
+	 * @return boolean
+	 */
+	public static boolean isRGTCCompressed(final int pixelformat) {
+		return pixelformat == DDSImage.D3DFMT_ATI1 || pixelformat == DDSImage.D3DFMT_ATI2;
+	}
+
+	/**
+	 * Returns true if the pixelformat is BC7, which is compressed by the
+	 * {@link me.nallar.jdds.internal.compression.BC7Encoder} instead of jsquish.
+	 *
+	 * @param pixelformat DDSImage pixelformat
+	 * @return boolean
+	 */
+	public static boolean isBC7Compressed(final int pixelformat) {
+		return pixelformat == DDSImage.D3DFMT_BC7;
+	}
+
+	/**
+	 * The smallest pixelformat keeping the alpha channel of a texture: D3DFMT_DXT1 if it is absent or binary,
+	 * D3DFMT_DXT5 if it is graded, or D3DFMT_R8G8B8 and D3DFMT_A8R8G8B8 if those aren't larger,
+	 * as for textures of only a few pixels.
+	 *
+	 * @param alpha  alpha channel of the topmost MipMap
+	 * @param width  width of the topmost MipMap
+	 * @param height height of the topmost MipMap
+	 * @return DDSImage pixelformat
+	 */
+	public static int selectPixelFormat(final AlphaClassifier.Alpha alpha, final int width, final int height) {
+		final Squish.CompressionType compressionType =
+				alpha == AlphaClassifier.Alpha.GRADED ? Squish.CompressionType.DXT5 : Squish.CompressionType.DXT1;
+		final int bytesPerPixel = alpha == AlphaClassifier.Alpha.ABSENT ? 3 : 4;
+		if ((long) width * height * bytesPerPixel <= Squish.getStorageRequirements(width, height, compressionType))
+			return bytesPerPixel == 3 ? DDSImage.D3DFMT_R8G8B8 : DDSImage.D3DFMT_A8R8G8B8;
+		return getD3DFormat(compressionType);
+	}
 }
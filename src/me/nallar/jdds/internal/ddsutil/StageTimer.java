@@ -0,0 +1,94 @@
+package me.nallar.jdds.internal.ddsutil;
+
+import me.nallar.jdds.JDDSMetrics;
+import me.nallar.jdds.JDDSMetrics.Stage;
+
+
+/**
+ * Times one stage and reports it to the installed {@link JDDSMetrics}
+ * and, on Java 11 and later, as Java Flight Recorder event.
+ * <pre>
+ * StageTimer timer = StageTimer.start(Stage.DECODE);
+ * ...
+ * StageTimer.stop(timer, format, width, height, level, bytes);
+ * </pre>
+ * While no metrics are installed and no recording enables the event of the stage,
+ * {@link #start} returns null and a stage costs one volatile read and the enabled-check.
+ */
+public final class StageTimer {
+
+	/**
+	 * me.nallar.jdds.internal.jfr.JFRMetrics, null if jdk.jfr isn't available or jdds.jfr=false
+	 */
+	private static final JDDSMetrics EVENTS = loadEvents();
+
+	private static volatile JDDSMetrics metrics = JDDSMetrics.NONE;
+
+	private final JDDSMetrics target;
+	private final Stage stage;
+	private final Object context;
+	private final Object event;
+	private final long start;
+
+	private StageTimer(final JDDSMetrics target, final Stage stage, final Object event) {
+		this.target = target;
+		this.stage = stage;
+		this.context = target.begin(stage);
+		this.event = event;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * The JFR events are compiled separately against Java 11, so they are only loaded reflectively.
+	 */
+	private static JDDSMetrics loadEvents() {
+		if (!Boolean.parseBoolean(System.getProperty("jdds.jfr", "true")))
+			return null;
+		try {
+			return (JDDSMetrics) Class.forName("me.nallar.jdds.internal.jfr.JFRMetrics").newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	public static JDDSMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics the metrics receiving all following stages, null for {@link JDDSMetrics#NONE}
+	 */
+	public static void setMetrics(final JDDSMetrics metrics) {
+		StageTimer.metrics = metrics == null ? JDDSMetrics.NONE : metrics;
+	}
+
+	/**
+	 * Starts timing the stage.
+	 *
+	 * @return the timer, null if neither metrics nor an event are interested in the stage
+	 */
+	public static StageTimer start(final Stage stage) {
+		final JDDSMetrics target = metrics;
+		final Object event = EVENTS == null ? null : EVENTS.begin(stage);
+		return target == JDDSMetrics.NONE && event == null ? null : new StageTimer(target, stage, event);
+	}
+
+	/**
+	 * Reports the stage started by {@link #start}, nothing happens if the timer is null.
+	 *
+	 * @see JDDSMetrics#end
+	 */
+	public static void stop(final StageTimer timer,
+							final int format,
+							final int width,
+							final int height,
+							final int level,
+							final long bytes) {
+		if (timer == null)
+			return;
+		final long nanos = System.nanoTime() - timer.start;
+		if (timer.event != null)
+			EVENTS.end(timer.event, timer.stage, nanos, format, width, height, level, bytes);
+		timer.target.end(timer.context, timer.stage, nanos, format, width, height, level, bytes);
+	}
+}
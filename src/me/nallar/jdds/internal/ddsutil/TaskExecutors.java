@@ -0,0 +1,55 @@
+package me.nallar.jdds.internal.ddsutil;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Temporary executors for the batch APIs, used when the caller doesn't pass an executor.
+ * On Java 21 and later every task runs on its own virtual thread, which are cheap to start and
+ * share the carrier threads of the JVM, otherwise a fixed pool of platform threads is started.
+ * The virtual thread executor is looked up reflectively, as the library is built for Java 7.
+ */
+public final class TaskExecutors {
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor(), null if not available
+	 */
+	private static final Method VIRTUAL_THREAD_PER_TASK = virtualThreadPerTask();
+
+	private TaskExecutors() {
+	}
+
+	private static Method virtualThreadPerTask() {
+		if (!Boolean.parseBoolean(System.getProperty("jdds.virtualThreads", "true")))
+			return null;
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if temporary executors use virtual threads
+	 */
+	public static boolean isVirtual() {
+		return VIRTUAL_THREAD_PER_TASK != null;
+	}
+
+	/**
+	 * Creates an executor for a batch of tasks, which must be shut down once they completed.
+	 *
+	 * @param threads number of platform threads if virtual threads aren't available
+	 */
+	public static ExecutorService newTemporaryExecutor(final int threads) {
+		if (VIRTUAL_THREAD_PER_TASK != null) {
+			try {
+				return (ExecutorService) VIRTUAL_THREAD_PER_TASK.invoke(null);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				// fall back to platform threads
+			}
+		}
+		return Executors.newFixedThreadPool(Math.max(1, threads));
+	}
+}
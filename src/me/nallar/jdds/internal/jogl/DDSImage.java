@@ -39,9 +39,13 @@
 
 package me.nallar.jdds.internal.jogl;
 
+import me.nallar.jdds.JDDSMetrics.Stage;
+import me.nallar.jdds.internal.ddsutil.StageTimer;
+
 import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
+import java.util.*;
 
 
 /**
@@ -49,6 +53,11 @@ import java.nio.channels.*;
  * used to describe textures. These files can contain multiple mipmap
  * levels in one file. This class is currently minimal and does not
  * support all of the possible file formats.
+ * <p>
+ * Reading the mipmaps of one image from several threads is safe and lock-free,
+ * every accessor returns its own view of the image's buffer and never moves the buffer itself.
+ * Modifying an image, e.g. with {@link #setDX10Header(boolean)} or {@link #close()},
+ * is not synchronized with concurrent reads.
  */
 
 public class DDSImage {
@@ -82,6 +91,12 @@ public class DDSImage {
 	private FileChannel chan;
 	private ByteBuffer buf;
 	private Header header;
+	// Offset of the first mipmap in buf
+	private int dataOffset;
+	// Offsets, sizes and dimensions of all mipmaps
+	private Layout layout;
+	// Read-only slices of all mipmaps, created on first use
+	private volatile List<MipSlice> mipSlices;
 
 	//
 	// Selected bits in header flags
@@ -94,13 +109,18 @@ public class DDSImage {
 	public static final int DDSD_PIXELFORMAT = 0x00001000; // ddpfPixelFormat is valid
 	public static final int DDSD_MIPMAPCOUNT = 0x00020000; // Mip map count is valid
 	public static final int DDSD_LINEARSIZE = 0x00080000; // dwLinearSize is valid
+	public static final int DDSD_DEPTH = 0x00800000; // Depth is valid
 
 	public static final int DDPF_ALPHAPIXELS = 0x00000001; // Alpha channel is present
+	public static final int DDPF_ALPHA = 0x00000002; // Alpha only data is present
 	public static final int DDPF_FOURCC = 0x00000004; // FourCC code is valid
 	public static final int DDPF_RGB = 0x00000040; // RGB data is present
+	public static final int DDPF_LUMINANCE = 0x00020000; // Luminance data is present
 
 	// Selected bits in DDS capabilities flags
 	public static final int DDSCAPS_COMPLEX = 0x00000008; // Complex surface structure, such as a cube map
+	public static final int DDSCAPS_TEXTURE = 0x00001000; // Required for all textures
+	public static final int DDSCAPS_MIPMAP = 0x00400000; // Surface has mipmaps
 
 	// Selected bits in DDS extended capabilities flags
 	public static final int DDSCAPS2_CUBEMAP = 0x00000200;
@@ -110,14 +130,31 @@ public class DDSImage {
 	public static final int DDSCAPS2_CUBEMAP_NEGATIVEY = 0x00002000;
 	public static final int DDSCAPS2_CUBEMAP_POSITIVEZ = 0x00004000;
 	public static final int DDSCAPS2_CUBEMAP_NEGATIVEZ = 0x00008000;
+	public static final int DDSCAPS2_CUBEMAP_ALLFACES = DDSCAPS2_CUBEMAP_POSITIVEX | DDSCAPS2_CUBEMAP_NEGATIVEX |
+			DDSCAPS2_CUBEMAP_POSITIVEY | DDSCAPS2_CUBEMAP_NEGATIVEY |
+			DDSCAPS2_CUBEMAP_POSITIVEZ | DDSCAPS2_CUBEMAP_NEGATIVEZ;
 	public static final int DDSCAPS2_VOLUME = 0x00200000;
 
+	/**
+	 * Number of sides of a cubemap
+	 */
+	public static final int CUBEMAP_SIDES = 6;
+
 	// Known pixel formats
 	public static final int D3DFMT_UNKNOWN = 0;
 	public static final int D3DFMT_R8G8B8 = 20;
 	public static final int D3DFMT_A8R8G8B8 = 21;
 	public static final int D3DFMT_X8R8G8B8 = 22;
+	public static final int D3DFMT_R5G6B5 = 23;
+	public static final int D3DFMT_X1R5G5B5 = 24;
 	public static final int D3DFMT_A1R5G5B5 = 25;
+	public static final int D3DFMT_A4R4G4B4 = 26;
+	public static final int D3DFMT_A8 = 28;
+	public static final int D3DFMT_X4R4G4B4 = 30;
+	public static final int D3DFMT_A8B8G8R8 = 32;
+	public static final int D3DFMT_X8B8G8R8 = 33;
+	public static final int D3DFMT_L8 = 50;
+	public static final int D3DFMT_A8L8 = 51;
 
 	// The following are also valid FourCC codes
 	public static final int D3DFMT_DXT1 = 0x31545844;
@@ -125,6 +162,57 @@ public class DDSImage {
 	public static final int D3DFMT_DXT3 = 0x33545844;
 	public static final int D3DFMT_DXT4 = 0x34545844;
 	public static final int D3DFMT_DXT5 = 0x35545844;
+	public static final int D3DFMT_ATI1 = 0x31495441; // BC4, single channel
+	public static final int D3DFMT_ATI2 = 0x32495441; // BC5, two channels
+	public static final int D3DFMT_BC4U = 0x55344342; // alias of ATI1
+	public static final int D3DFMT_BC5U = 0x55354342; // alias of ATI2
+	// BC7 has no FourCC of its own, it is always written with the DX10 header extension
+	public static final int D3DFMT_BC7 = 0x20374342;
+
+	// FourCC marking the presence of the DX10 header extension
+	public static final int D3DFMT_DX10 = 0x30315844;
+
+	// Selected DXGI_FORMAT values used by the DX10 header extension
+	public static final int DXGI_FORMAT_UNKNOWN = 0;
+	public static final int DXGI_FORMAT_R8G8B8A8_UNORM = 28;
+	public static final int DXGI_FORMAT_R8G8B8A8_UNORM_SRGB = 29;
+	public static final int DXGI_FORMAT_BC1_UNORM = 71;
+	public static final int DXGI_FORMAT_BC1_UNORM_SRGB = 72;
+	public static final int DXGI_FORMAT_BC2_UNORM = 74;
+	public static final int DXGI_FORMAT_BC2_UNORM_SRGB = 75;
+	public static final int DXGI_FORMAT_BC3_UNORM = 77;
+	public static final int DXGI_FORMAT_BC3_UNORM_SRGB = 78;
+	public static final int DXGI_FORMAT_BC4_UNORM = 80;
+	public static final int DXGI_FORMAT_BC5_UNORM = 83;
+	public static final int DXGI_FORMAT_B8G8R8A8_UNORM = 87;
+	public static final int DXGI_FORMAT_B8G8R8X8_UNORM = 88;
+	public static final int DXGI_FORMAT_B8G8R8A8_UNORM_SRGB = 91;
+	public static final int DXGI_FORMAT_B8G8R8X8_UNORM_SRGB = 93;
+	public static final int DXGI_FORMAT_BC7_UNORM = 98;
+	public static final int DXGI_FORMAT_BC7_UNORM_SRGB = 99;
+
+	// Uncompressed formats recognised from their pixel format:
+	// D3DFMT_, luminance, bit count and the red, green, blue and alpha masks
+	private static final int[][] UNCOMPRESSED_FORMATS = {
+			{D3DFMT_A8R8G8B8, 0, 32, 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000},
+			{D3DFMT_X8R8G8B8, 0, 32, 0x00FF0000, 0x0000FF00, 0x000000FF, 0},
+			{D3DFMT_A8B8G8R8, 0, 32, 0x000000FF, 0x0000FF00, 0x00FF0000, 0xFF000000},
+			{D3DFMT_X8B8G8R8, 0, 32, 0x000000FF, 0x0000FF00, 0x00FF0000, 0},
+			{D3DFMT_R8G8B8, 0, 24, 0x00FF0000, 0x0000FF00, 0x000000FF, 0},
+			{D3DFMT_R5G6B5, 0, 16, 0xF800, 0x07E0, 0x001F, 0},
+			{D3DFMT_A1R5G5B5, 0, 16, 0x7C00, 0x03E0, 0x001F, 0x8000},
+			{D3DFMT_X1R5G5B5, 0, 16, 0x7C00, 0x03E0, 0x001F, 0},
+			{D3DFMT_A4R4G4B4, 0, 16, 0x0F00, 0x00F0, 0x000F, 0xF000},
+			{D3DFMT_X4R4G4B4, 0, 16, 0x0F00, 0x00F0, 0x000F, 0},
+			{D3DFMT_A8, 0, 8, 0, 0, 0, 0xFF},
+			{D3DFMT_L8, 1, 8, 0xFF, 0, 0, 0},
+			{D3DFMT_A8L8, 1, 16, 0x00FF, 0, 0, 0xFF00},
+	};
+
+	// D3D10_RESOURCE_DIMENSION values and misc flags of the DX10 header extension
+	public static final int D3D10_RESOURCE_DIMENSION_TEXTURE2D = 3;
+	public static final int D3D10_RESOURCE_DIMENSION_TEXTURE3D = 4;
+	public static final int D3D10_RESOURCE_MISC_TEXTURECUBE = 0x4;
 
 	/**
 	 * Reads a DirectDraw surface from the specified file, returning
@@ -154,6 +242,41 @@ public class DDSImage {
 		return image;
 	}
 
+	/**
+	 * Reads only the header of a DirectDraw surface from the channel,
+	 * leaving the channel positioned at the first mipmap.
+	 * The returned image describes the format and layout of the mipmaps
+	 * following in the channel, but holds none of them: the mipmap
+	 * accessors and write() may not be called.
+	 *
+	 * @param chan channel positioned at the start of the file, it is not closed
+	 * @return DDS image object without mipmap data
+	 * @throws java.io.IOException if an I/O exception occurred or the channel ends early
+	 */
+	public static DDSImage readHeader(ReadableByteChannel chan) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(Header.legacyWrittenSize() + Header.dx10Size());
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		buf.limit(Header.legacyWrittenSize());
+		readFully(chan, buf);
+		// pfFourCC tells whether the DX10 header extension follows
+		if (buf.getInt(84) == D3DFMT_DX10) {
+			buf.limit(buf.capacity());
+			readFully(chan, buf);
+		}
+		buf.flip();
+		DDSImage image = new DDSImage();
+		image.readFromBuffer(buf);
+		return image;
+	}
+
+	private static void readFully(ReadableByteChannel chan, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (chan.read(buf) < 0) {
+				throw new EOFException("Unexpected end of DDS header");
+			}
+		}
+	}
+
 	/**
 	 * Closes open files and resources associated with the open
 	 * DDSImage. No other methods may be called on this object once
@@ -200,19 +323,115 @@ public class DDSImage {
 		return image;
 	}
 
+	/**
+	 * Creates a new cubemap DDSImage from data supplied by the user.
+	 *
+	 * @param d3dFormat      the D3DFMT_ constant describing the data; it is
+	 *                       assumed that it is packed tightly
+	 * @param width          the width in pixels of the topmost mipmap image of each side
+	 * @param height         the height in pixels of the topmost mipmap image of each side
+	 * @param sideMipmapData the data for each mipmap level of the six sides, in the
+	 *                       order +X, -X, +Y, -Y, +Z, -Z; all sides must have the same
+	 *                       number of mipmap levels
+	 * @return DDS image object
+	 * @throws IllegalArgumentException if the data does not match the
+	 *                                  specified arguments
+	 */
+	public static DDSImage createCubemapFromData(int d3dFormat,
+												 int width,
+												 int height,
+												 ByteBuffer[][] sideMipmapData) throws IllegalArgumentException {
+		if (sideMipmapData.length != CUBEMAP_SIDES) {
+			throw new IllegalArgumentException("A cubemap needs " + CUBEMAP_SIDES + " sides, got " + sideMipmapData.length);
+		}
+		DDSImage image = new DDSImage();
+		image.initFromData(d3dFormat, width, height, 1, sideMipmapData);
+		return image;
+	}
+
+	/**
+	 * Creates a new volume DDSImage from data supplied by the user.
+	 *
+	 * @param d3dFormat  the D3DFMT_ constant describing the data; it is
+	 *                   assumed that it is packed tightly
+	 * @param width      the width in pixels of the topmost mipmap image
+	 * @param height     the height in pixels of the topmost mipmap image
+	 * @param depth      the number of slices of the topmost mipmap image
+	 * @param mipmapData the data for each mipmap level, each holding all
+	 *                   slices of that level one after another
+	 * @return DDS image object
+	 * @throws IllegalArgumentException if the data does not match the
+	 *                                  specified arguments
+	 */
+	public static DDSImage createVolumeFromData(int d3dFormat,
+												int width,
+												int height,
+												int depth,
+												ByteBuffer[] mipmapData) throws IllegalArgumentException {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Illegal volume depth: " + depth);
+		}
+		DDSImage image = new DDSImage();
+		image.initFromData(d3dFormat, width, height, depth, new ByteBuffer[][]{mipmapData});
+		return image;
+	}
+
 	public void write(FileOutputStream fos) throws IOException {
+		StageTimer timer = StageTimer.start(Stage.WRITE);
 		FileChannel chan = fos.getChannel();
+		int size = writeTo(chan);
+		chan.force(true);
+		chan.close();
+		if (timer != null)
+			StageTimer.stop(timer, getPixelFormat(), getWidth(), getHeight(), -1, size);
+	}
+
+	/**
+	 * Writes this DDSImage at the channel's position, the channel is not closed.
+	 *
+	 * @param chan channel to write to
+	 * @return number of bytes written
+	 * @throws java.io.IOException if an I/O exception occurred
+	 */
+	public int write(WritableByteChannel chan) throws IOException {
+		StageTimer timer = StageTimer.start(Stage.WRITE);
+		int size = writeTo(chan);
+		if (timer != null)
+			StageTimer.stop(timer, getPixelFormat(), getWidth(), getHeight(), -1, size);
+		return size;
+	}
+
+	/**
+	 * {@link #write(WritableByteChannel)} without reporting the stage, for files embedding this image.
+	 */
+	int writeTo(WritableByteChannel chan) throws IOException {
+		int size = 0;
+		for (ByteBuffer buffer : getFileBuffers()) {
+			size += buffer.remaining();
+			while (buffer.hasRemaining()) {
+				chan.write(buffer);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The contents of the file as written by {@link #write(WritableByteChannel)}: a new buffer
+	 * holding the header and a view of the mipmap data, which is not copied.
+	 * Each call returns new buffers, e.g. for gathering or asynchronous writes.
+	 *
+	 * @return header and data, positioned at their start
+	 */
+	public ByteBuffer[] getFileBuffers() {
 		// Create ByteBuffer for header in case the start of our
 		// ByteBuffer isn't actually memory-mapped
-		ByteBuffer hdr = ByteBuffer.allocate(Header.writtenSize());
+		ByteBuffer hdr = ByteBuffer.allocate(header.writtenSize());
 		hdr.order(ByteOrder.LITTLE_ENDIAN);
 		header.write(hdr);
 		hdr.rewind();
-		chan.write(hdr);
-		buf.position(Header.writtenSize());
-		chan.write(buf);
-		chan.force(true);
-		chan.close();
+		ByteBuffer data = buf.duplicate();
+		data.position(dataOffset);
+		return new ByteBuffer[]{hdr, data};
 	}
 
 	/**
@@ -222,9 +441,24 @@ public class DDSImage {
 	 * @throws java.io.IOException if an I/O exception occurred
 	 */
 	public void write(File file) throws IOException {
-		FileOutputStream stream = new FileOutputStream(file);
-		write(stream);
-		stream.close();
+		write(file, true);
+	}
+
+	/**
+	 * Writes this DDSImage to the specified file name.
+	 *
+	 * @param file  File object to write to
+	 * @param force whether to wait until the file is on the storage device,
+	 *              which blocks the thread (and the carrier of a virtual thread) for every file
+	 * @throws java.io.IOException if an I/O exception occurred
+	 */
+	public void write(File file, boolean force) throws IOException {
+		try (FileOutputStream stream = new FileOutputStream(file)) {
+			if (force)
+				write(stream);
+			else
+				write(stream.getChannel());
+		}
 	}
 
 	/**
@@ -252,34 +486,17 @@ public class DDSImage {
 	 * @return
 	 */
 	public int getPixelFormat() {
-		if (isCompressed()) {
+		if (isCompressed() || hasDX10Header()) {
 			return getCompressionFormat();
-		} else if (isPixelFormatFlagSet(DDPF_RGB)) {
-			if (isPixelFormatFlagSet(DDPF_ALPHAPIXELS)) {
-				if (getDepth() == 32 &&
-						header.pfRBitMask == 0x00FF0000 &&
-						header.pfGBitMask == 0x0000FF00 &&
-						header.pfBBitMask == 0x000000FF &&
-						header.pfABitMask == 0xFF000000) {
-					return D3DFMT_A8R8G8B8;
-				} else if (getDepth() == 16 &&
-						header.pfRBitMask == 0x7c00 &&
-						header.pfGBitMask == 0x3e0 &&
-						header.pfBBitMask == 0x1f &&
-						header.pfABitMask == 0x8000) {
-					return D3DFMT_A1R5G5B5;
-				}
-			} else {
-				if (getDepth() == 24 &&
-						header.pfRBitMask == 0x00FF0000 &&
-						header.pfGBitMask == 0x0000FF00 &&
-						header.pfBBitMask == 0x000000FF) {
-					return D3DFMT_R8G8B8;
-				} else if (getDepth() == 32 &&
-						header.pfRBitMask == 0x00FF0000 &&
-						header.pfGBitMask == 0x0000FF00 &&
-						header.pfBBitMask == 0x000000FF) {
-					return D3DFMT_X8R8G8B8;
+		} else if (isPixelFormatFlagSet(DDPF_RGB | DDPF_LUMINANCE | DDPF_ALPHA)) {
+			for (int[] format : UNCOMPRESSED_FORMATS) {
+				if ((format[1] != 0) == isLuminance() &&
+						getDepth() == format[2] &&
+						getRedBitMask() == format[3] &&
+						getGreenBitMask() == format[4] &&
+						getBlueBitMask() == format[5] &&
+						getAlphaBitMask() == format[6]) {
+					return format[0];
 				}
 			}
 		}
@@ -293,6 +510,9 @@ public class DDSImage {
 	 * @return true if cubemap or false otherwise
 	 */
 	public boolean isCubemap() {
+		if (hasDX10Header() && (header.miscFlag & D3D10_RESOURCE_MISC_TEXTURECUBE) != 0) {
+			return true;
+		}
 		return ((header.ddsCaps1 & DDSCAPS_COMPLEX) != 0) && ((header.ddsCaps2 & DDSCAPS2_CUBEMAP) != 0);
 	}
 
@@ -302,6 +522,9 @@ public class DDSImage {
 	 * @return true if cubemap or false otherwise
 	 */
 	public boolean isVolume() {
+		if (hasDX10Header() && header.resourceDimension == D3D10_RESOURCE_DIMENSION_TEXTURE3D) {
+			return true;
+		}
 		return ((header.ddsCaps1 & DDSCAPS_COMPLEX) != 0) && ((header.ddsCaps2 & DDSCAPS2_VOLUME) != 0);
 	}
 
@@ -312,6 +535,10 @@ public class DDSImage {
 	 * @return true if side present or false otherwise
 	 */
 	public boolean isCubemapSidePresent(int side) {
+		if (isCubemap() && hasDX10Header()) {
+			// DX10 cubemaps always have all sides
+			return (DDSCAPS2_CUBEMAP_ALLFACES & side) != 0;
+		}
 		return isCubemap() && (header.ddsCaps2 & side) != 0;
 	}
 
@@ -319,15 +546,177 @@ public class DDSImage {
 	 * Indicates whether this texture is compressed.
 	 */
 	public boolean isCompressed() {
+		if (hasDX10Header()) {
+			return isBlockCompressed(getCompressionFormat());
+		}
 		return (isPixelFormatFlagSet(DDPF_FOURCC));
 	}
 
+	/**
+	 * Indicates whether the D3DFMT_ constant is a block compressed format
+	 */
+	public static boolean isBlockCompressed(int d3dFormat) {
+		switch (d3dFormat) {
+			case D3DFMT_DXT1:
+			case D3DFMT_DXT2:
+			case D3DFMT_DXT3:
+			case D3DFMT_DXT4:
+			case D3DFMT_DXT5:
+			case D3DFMT_ATI1:
+			case D3DFMT_ATI2:
+			case D3DFMT_BC7:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Size of one 4x4 block of a block compressed format in bytes
+	 */
+	public static int blockSizeInBytes(int d3dFormat) {
+		switch (d3dFormat) {
+			case D3DFMT_DXT1:
+			case D3DFMT_ATI1:
+				return 8;
+			default:
+				return 16;
+		}
+	}
+
 	/**
 	 * If this surface is compressed, returns the kind of me.nallar.jdds.internal.compression
 	 * used (DXT1..DXT5).
 	 */
 	public int getCompressionFormat() {
-		return header.pfFourCC;
+		switch (header.pfFourCC) {
+			case D3DFMT_DX10:
+				return fromDXGIFormat(header.dxgiFormat);
+			case D3DFMT_BC4U:
+				return D3DFMT_ATI1;
+			case D3DFMT_BC5U:
+				return D3DFMT_ATI2;
+			default:
+				return header.pfFourCC;
+		}
+	}
+
+	/**
+	 * Indicates whether the header is followed by the DX10 header extension
+	 */
+	public boolean hasDX10Header() {
+		return header.pfFourCC == D3DFMT_DX10;
+	}
+
+	/**
+	 * The DXGI_FORMAT of the DX10 header extension, DXGI_FORMAT_UNKNOWN
+	 * if there is none
+	 */
+	public int getDXGIFormat() {
+		return hasDX10Header() ? header.dxgiFormat : DXGI_FORMAT_UNKNOWN;
+	}
+
+	/**
+	 * Selects whether this image is written with the DX10 header
+	 * extension, which describes the format by its DXGI_FORMAT.
+	 *
+	 * @throws IllegalArgumentException if the pixel format has no DXGI_FORMAT,
+	 *                                  or has nothing but a DXGI_FORMAT like BC7
+	 */
+	public void setDX10Header(boolean dx10) {
+		if (dx10 == hasDX10Header()) {
+			return;
+		}
+		int format = getPixelFormat();
+		if (!dx10 && format == D3DFMT_BC7) {
+			throw new IllegalArgumentException("BC7 can only be written with the DX10 header extension");
+		}
+		if (dx10) {
+			int dxgiFormat = toDXGIFormat(format);
+			if (dxgiFormat == DXGI_FORMAT_UNKNOWN) {
+				throw new IllegalArgumentException("No DXGI_FORMAT for pixel format " + format);
+			}
+			header.dxgiFormat = dxgiFormat;
+			header.resourceDimension = isVolume() ? D3D10_RESOURCE_DIMENSION_TEXTURE3D : D3D10_RESOURCE_DIMENSION_TEXTURE2D;
+			header.miscFlag = isCubemap() ? D3D10_RESOURCE_MISC_TEXTURECUBE : 0;
+			header.arraySize = 1;
+			header.miscFlags2 = 0;
+			header.pfFlags = (header.pfFlags & ~DDPF_RGB) | DDPF_FOURCC;
+			header.pfFourCC = D3DFMT_DX10;
+		} else {
+			if (isBlockCompressed(format)) {
+				header.pfFourCC = format;
+			} else {
+				header.pfFlags = (header.pfFlags & ~DDPF_FOURCC) | DDPF_RGB;
+				header.pfFourCC = 0;
+			}
+			header.dxgiFormat = DXGI_FORMAT_UNKNOWN;
+		}
+	}
+
+	/**
+	 * Maps a D3DFMT_ constant to the equivalent DXGI_FORMAT, or
+	 * DXGI_FORMAT_UNKNOWN if there is none
+	 */
+	public static int toDXGIFormat(int d3dFormat) {
+		switch (d3dFormat) {
+			case D3DFMT_A8R8G8B8:
+				return DXGI_FORMAT_B8G8R8A8_UNORM;
+			case D3DFMT_X8R8G8B8:
+				return DXGI_FORMAT_B8G8R8X8_UNORM;
+			case D3DFMT_A8B8G8R8:
+				return DXGI_FORMAT_R8G8B8A8_UNORM;
+			case D3DFMT_DXT1:
+				return DXGI_FORMAT_BC1_UNORM;
+			case D3DFMT_DXT3:
+				return DXGI_FORMAT_BC2_UNORM;
+			case D3DFMT_DXT5:
+				return DXGI_FORMAT_BC3_UNORM;
+			case D3DFMT_ATI1:
+				return DXGI_FORMAT_BC4_UNORM;
+			case D3DFMT_ATI2:
+				return DXGI_FORMAT_BC5_UNORM;
+			case D3DFMT_BC7:
+				return DXGI_FORMAT_BC7_UNORM;
+			default:
+				return DXGI_FORMAT_UNKNOWN;
+		}
+	}
+
+	/**
+	 * Maps a DXGI_FORMAT to the equivalent D3DFMT_ constant, or
+	 * D3DFMT_UNKNOWN if there is none
+	 */
+	public static int fromDXGIFormat(int dxgiFormat) {
+		switch (dxgiFormat) {
+			case DXGI_FORMAT_B8G8R8A8_UNORM:
+			case DXGI_FORMAT_B8G8R8A8_UNORM_SRGB:
+				return D3DFMT_A8R8G8B8;
+			case DXGI_FORMAT_B8G8R8X8_UNORM:
+			case DXGI_FORMAT_B8G8R8X8_UNORM_SRGB:
+				return D3DFMT_X8R8G8B8;
+			case DXGI_FORMAT_R8G8B8A8_UNORM:
+			case DXGI_FORMAT_R8G8B8A8_UNORM_SRGB:
+				return D3DFMT_A8B8G8R8;
+			case DXGI_FORMAT_BC1_UNORM:
+			case DXGI_FORMAT_BC1_UNORM_SRGB:
+				return D3DFMT_DXT1;
+			case DXGI_FORMAT_BC2_UNORM:
+			case DXGI_FORMAT_BC2_UNORM_SRGB:
+				return D3DFMT_DXT3;
+			case DXGI_FORMAT_BC3_UNORM:
+			case DXGI_FORMAT_BC3_UNORM_SRGB:
+				return D3DFMT_DXT5;
+			case DXGI_FORMAT_BC4_UNORM:
+				return D3DFMT_ATI1;
+			case DXGI_FORMAT_BC5_UNORM:
+				return D3DFMT_ATI2;
+			case DXGI_FORMAT_BC7_UNORM:
+			case DXGI_FORMAT_BC7_UNORM_SRGB:
+				return D3DFMT_BC7;
+			default:
+				return D3DFMT_UNKNOWN;
+		}
 	}
 
 	/**
@@ -351,9 +740,90 @@ public class DDSImage {
 	 * present. For A8R8G8B8, would be 32.
 	 */
 	public int getDepth() {
+		if (header.pfRGBBitCount == 0 && hasDX10Header() && !isCompressed()) {
+			// DX10 headers describe uncompressed data by its DXGI_FORMAT only
+			switch (header.dxgiFormat) {
+				case DXGI_FORMAT_R8G8B8A8_UNORM:
+				case DXGI_FORMAT_R8G8B8A8_UNORM_SRGB:
+				case DXGI_FORMAT_B8G8R8A8_UNORM:
+				case DXGI_FORMAT_B8G8R8A8_UNORM_SRGB:
+				case DXGI_FORMAT_B8G8R8X8_UNORM:
+				case DXGI_FORMAT_B8G8R8X8_UNORM_SRGB:
+					return 32;
+			}
+		}
 		return header.pfRGBBitCount;
 	}
 
+	/**
+	 * Indicates whether the red bit mask holds the luminance of a grey texture
+	 */
+	public boolean isLuminance() {
+		return !hasDX10Header() && isPixelFormatFlagSet(DDPF_LUMINANCE);
+	}
+
+	/**
+	 * Bit mask of the red (or luminance) channel of an uncompressed pixel
+	 */
+	public int getRedBitMask() {
+		if (hasDX10Header()) {
+			return isDXGIFormat(DXGI_FORMAT_R8G8B8A8_UNORM, DXGI_FORMAT_R8G8B8A8_UNORM_SRGB) ? 0x000000FF : dx10Mask(0x00FF0000);
+		}
+		return header.pfRBitMask;
+	}
+
+	/**
+	 * Bit mask of the green channel of an uncompressed pixel
+	 */
+	public int getGreenBitMask() {
+		return hasDX10Header() ? dx10Mask(0x0000FF00) : header.pfGBitMask;
+	}
+
+	/**
+	 * Bit mask of the blue channel of an uncompressed pixel
+	 */
+	public int getBlueBitMask() {
+		if (hasDX10Header()) {
+			return isDXGIFormat(DXGI_FORMAT_R8G8B8A8_UNORM, DXGI_FORMAT_R8G8B8A8_UNORM_SRGB) ? 0x00FF0000 : dx10Mask(0x000000FF);
+		}
+		return header.pfBBitMask;
+	}
+
+	/**
+	 * Bit mask of the alpha channel of an uncompressed pixel, 0 if there is no alpha
+	 */
+	public int getAlphaBitMask() {
+		if (hasDX10Header()) {
+			return isDXGIFormat(DXGI_FORMAT_B8G8R8X8_UNORM, DXGI_FORMAT_B8G8R8X8_UNORM_SRGB) ? 0 : dx10Mask(0xFF000000);
+		}
+		return isPixelFormatFlagSet(DDPF_ALPHAPIXELS | DDPF_ALPHA) ? header.pfABitMask : 0;
+	}
+
+	/**
+	 * Whether the DX10 header has the layout, sRGB or not, the pixels are decoded the same way
+	 */
+	private boolean isDXGIFormat(int unorm, int srgb) {
+		return header.dxgiFormat == unorm || header.dxgiFormat == srgb;
+	}
+
+	/**
+	 * The mask for the 32 bit DXGI_FORMATs, 0 for all others
+	 */
+	private int dx10Mask(int mask) {
+		return getDepth() == 32 && !isCompressed() ? mask : 0;
+	}
+
+	/**
+	 * Number of slices of a volume texture (or the top-most mipmap if
+	 * mipmaps are present), 1 for other textures
+	 */
+	public int getVolumeDepth() {
+		if (!isVolume() || !isSurfaceDescFlagSet(DDSD_DEPTH)) {
+			return 1;
+		}
+		return Math.max(header.backBufferCountOrDepth, 1);
+	}
+
 	/**
 	 * Number of mip maps in the texture
 	 */
@@ -388,25 +858,92 @@ public class DDSImage {
 		if (isCubemap() && !isCubemapSidePresent(side)) {
 			throw new RuntimeException("Illegal side, side not present: " + side);
 		}
-		if (getNumMipMaps() > 0 &&
-				((map < 0) || (map >= getNumMipMaps()))) {
-			throw new RuntimeException("Illegal mipmap number " + map + " (0.." + (getNumMipMaps() - 1) + ")");
+		return slice(mipMapOffset(side, map), mipMapSizeInBytes(map), map);
+	}
+
+	/**
+	 * Gets one slice of the <i>i</i>th mipmap of a volume texture
+	 *
+	 * @param map   Mipmap index
+	 * @param slice Slice index (0..mipMapDepth(map) - 1)
+	 * @return Image object
+	 */
+	public ImageInfo getVolumeSlice(int map, int slice) {
+		if (!isVolume()) {
+			throw new RuntimeException("Not a volume texture");
+		}
+		if ((slice < 0) || (slice >= mipMapDepth(map))) {
+			throw new RuntimeException("Illegal slice number " + slice + " (0.." + (mipMapDepth(map) - 1) + ")");
+		}
+		int sliceSize = layout.sliceSize[map];
+		return slice(mipMapOffset(0, map) + slice * sliceSize, sliceSize, map);
+	}
+
+	/**
+	 * Gets read-only slices of every mipmap of every side in file order,
+	 * all mipmaps of the first side before those of the next side.
+	 * The slices share this image's buffer and are created once, see {@link MipSlice}.
+	 *
+	 * @return unmodifiable list of slices
+	 */
+	public List<MipSlice> getMipSlices() {
+		List<MipSlice> slices = mipSlices;
+		if (slices == null) {
+			slices = Collections.unmodifiableList(createMipSlices());
+			mipSlices = slices;
+		}
+		return slices;
+	}
+
+	private List<MipSlice> createMipSlices() {
+		Layout layout = this.layout;
+		int numLevels = layout.levels();
+		int numSides = isCubemap() ? CUBEMAP_SIDES : 1;
+		int pixelFormat = getPixelFormat();
+		boolean compressed = isCompressed();
+		ByteBuffer view = buf.asReadOnlyBuffer();
+
+		List<MipSlice> slices = new ArrayList<>(numSides * numLevels);
+		for (int i = 0; i < numSides; i++) {
+			int side = isCubemap() ? DDSCAPS2_CUBEMAP_POSITIVEX << i : 0;
+			// absent cubemap sides are skipped like in getMipMap
+			if (side != 0 && !isCubemapSidePresent(side)) {
+				continue;
+			}
+			for (int map = 0; map < numLevels; map++) {
+				int seek = dataOffset + i * layout.sideSize + layout.offset[map];
+				view.clear();
+				view.limit(seek + layout.size[map]);
+				view.position(seek);
+				slices.add(new MipSlice(view.slice(), side, map, layout.width[map], layout.height[map],
+						layout.depth[map], seek, pixelFormat, compressed));
+			}
 		}
+		return slices;
+	}
 
-		// Figure out how far to seek
-		int seek = Header.writtenSize();
+	private int mipMapOffset(int side, int map) {
+		checkMipMap(map);
+		int seek = dataOffset + layout.offset[map];
 		if (isCubemap()) {
 			seek += sideShiftInBytes(side);
 		}
-		for (int i = 0; i < map; i++) {
-			seek += mipMapSizeInBytes(i);
+		return seek;
+	}
+
+	private void checkMipMap(int map) {
+		if ((map < 0) || (map >= layout.levels())) {
+			throw new RuntimeException("Illegal mipmap number " + map + " (0.." + (layout.levels() - 1) + ")");
 		}
-		buf.limit(seek + mipMapSizeInBytes(map));
-		buf.position(seek);
-		ByteBuffer next = buf.slice();
-		buf.position(0);
-		buf.limit(buf.capacity());
-		return new ImageInfo(next, mipMapWidth(map), mipMapHeight(map), isCompressed(), getCompressionFormat());
+	}
+
+	private ImageInfo slice(int seek, int size, int map) {
+		// slice an independent view, buf itself is never moved so concurrent readers don't interfere
+		ByteBuffer next = buf.duplicate();
+		next.limit(seek + size);
+		next.position(seek);
+		next = next.slice();
+		return new ImageInfo(next, layout.width[map], layout.height[map], isCompressed(), getCompressionFormat());
 	}
 
 	//----------------------------------------------------------------------
@@ -454,6 +991,13 @@ public class DDSImage {
 		int ddsCapsReserved1;
 		int ddsCapsReserved2;
 		int textureStage;           // stage in multitexture cascade
+		// NOTE: following entries are from the DDS_HEADER_DXT10 structure,
+		// only present if pfFourCC is DX10
+		int dxgiFormat;             // DXGI_FORMAT of the data
+		int resourceDimension;      // D3D10_RESOURCE_DIMENSION
+		int miscFlag;               // D3D10_RESOURCE_MISC_FLAG, e.g. cubemap
+		int arraySize;              // number of elements of a texture array
+		int miscFlags2;             // alpha mode
 
 		void read(ByteBuffer buf) throws IOException {
 			int magic = buf.getInt();
@@ -494,6 +1038,13 @@ public class DDSImage {
 			ddsCapsReserved1 = buf.getInt();
 			ddsCapsReserved2 = buf.getInt();
 			textureStage = buf.getInt();
+			if (pfFourCC == D3DFMT_DX10) {
+				dxgiFormat = buf.getInt();
+				resourceDimension = buf.getInt();
+				miscFlag = buf.getInt();
+				arraySize = buf.getInt();
+				miscFlags2 = buf.getInt();
+			}
 		}
 
 		// buf must be in little-endian byte order
@@ -530,6 +1081,13 @@ public class DDSImage {
 			buf.putInt(ddsCapsReserved1);
 			buf.putInt(ddsCapsReserved2);
 			buf.putInt(textureStage);
+			if (pfFourCC == D3DFMT_DX10) {
+				buf.putInt(dxgiFormat);
+				buf.putInt(resourceDimension);
+				buf.putInt(miscFlag);
+				buf.putInt(arraySize);
+				buf.putInt(miscFlags2);
+			}
 		}
 
 		private static int size() {
@@ -540,107 +1098,154 @@ public class DDSImage {
 			return 32;
 		}
 
-		private static int writtenSize() {
+		private static int legacyWrittenSize() {
 			return 128;
 		}
+
+		private static int dx10Size() {
+			return 20;
+		}
+
+		private int writtenSize() {
+			return pfFourCC == D3DFMT_DX10 ? legacyWrittenSize() + dx10Size() : legacyWrittenSize();
+		}
 	}
 
 	private DDSImage() {
 	}
 
 	private void readFromFile(File file) throws IOException {
+		StageTimer timer = StageTimer.start(Stage.READ);
 		fis = new FileInputStream(file);
 		chan = fis.getChannel();
 		ByteBuffer buf = chan.map(FileChannel.MapMode.READ_ONLY,
 				0, (int) file.length());
 		readFromBuffer(buf);
+		if (timer != null)
+			StageTimer.stop(timer, getPixelFormat(), getWidth(), getHeight(), -1, buf.capacity());
 	}
 
 	private void readFromBuffer(ByteBuffer buf) throws IOException {
+		StageTimer timer = StageTimer.start(Stage.HEADER);
 		this.buf = buf;
 		buf.order(ByteOrder.LITTLE_ENDIAN);
 		header = new Header();
 		header.read(buf);
+		dataOffset = header.writtenSize();
 		fixupHeader();
+		if (getNumMipMaps() > Layout.MAX_LEVELS) {
+			throw new IOException("Illegal mipmap count " + getNumMipMaps() + " (at most " + Layout.MAX_LEVELS + ")");
+		}
+		layout = new Layout(this);
+		if (timer != null)
+			StageTimer.stop(timer, getPixelFormat(), getWidth(), getHeight(), -1, dataOffset);
 	}
 
 	private void initFromData(int d3dFormat,
 							  int width,
 							  int height,
 							  ByteBuffer[] mipmapData) throws IllegalArgumentException {
+		initFromData(d3dFormat, width, height, 1, new ByteBuffer[][]{mipmapData});
+	}
+
+	/**
+	 * @param sideMipmapData the mipmap levels of each side, one side for
+	 *                       2D and volume textures and six for cubemaps
+	 */
+	private void initFromData(int d3dFormat,
+							  int width,
+							  int height,
+							  int depth,
+							  ByteBuffer[][] sideMipmapData) throws IllegalArgumentException {
 		// Check size of mipmap data compared against format, width and
 		// height
-		int topmostMipmapSize = width * height;
-		int pitchOrLinearSize = width;
+		int bytesPerPixel = 0;
 		boolean isCompressed = false;
 		switch (d3dFormat) {
 			case D3DFMT_R8G8B8:
-				topmostMipmapSize *= 3;
-				pitchOrLinearSize *= 3;
+				bytesPerPixel = 3;
 				break;
 			case D3DFMT_A8R8G8B8:
-				topmostMipmapSize *= 4;
-				pitchOrLinearSize *= 4;
+				bytesPerPixel = 4;
 				break;
 			case D3DFMT_X8R8G8B8:
-				topmostMipmapSize *= 4;
-				pitchOrLinearSize *= 4;
+				bytesPerPixel = 4;
 				break;
 			case D3DFMT_DXT1:
 			case D3DFMT_DXT2:
 			case D3DFMT_DXT3:
 			case D3DFMT_DXT4:
 			case D3DFMT_DXT5:
-				topmostMipmapSize = computeCompressedBlockSize(width, height, 1, d3dFormat);
-				pitchOrLinearSize = topmostMipmapSize;
+			case D3DFMT_ATI1:
+			case D3DFMT_ATI2:
+			case D3DFMT_BC7:
 				isCompressed = true;
 				break;
 			default:
 				throw new IllegalArgumentException("d3dFormat must be one of the known formats");
 		}
+		int pitchOrLinearSize = isCompressed ? computeCompressedBlockSize(width, height, 1, d3dFormat) : width * bytesPerPixel;
 
-		// Now check the mipmaps against this size
-		int curSize = topmostMipmapSize;
-		int mipmapWidth = width;
-		int mipmapHeight = height;
+		// Now check the mipmaps of every side against this size
+		int numMipMaps = sideMipmapData[0].length;
 		int totalSize = 0;
-		for (int i = 0; i < mipmapData.length; i++) {
-			if (mipmapData[i].remaining() != curSize) {
-				throw new IllegalArgumentException("Mipmap level " + i +
-						" didn't match expected data size (expected " + curSize + ", got " +
-						mipmapData[i].remaining() + ")");
+		for (ByteBuffer[] mipmapData : sideMipmapData) {
+			if (mipmapData.length != numMipMaps) {
+				throw new IllegalArgumentException("All sides must have " + numMipMaps + " mipmap levels");
 			}
-			/* Change Daniel Senff 
-			 * I got the problem, that MipMaps below the dimension of 8x8 blocks with DXT5 
-			 * where assume smaller than they are created. 
-			 * Assumed: < 16byte where 16byte where used by the me.nallar.jdds.internal.compression. */
-			if (isCompressed) {
-				// size calculation for compressed mipmaps 
+			int mipmapWidth = width;
+			int mipmapHeight = height;
+			int mipmapDepth = depth;
+			for (int i = 0; i < mipmapData.length; i++) {
+				int curSize = isCompressed ?
+						computeCompressedBlockSize(mipmapWidth, mipmapHeight, mipmapDepth, d3dFormat) :
+						mipmapWidth * mipmapHeight * mipmapDepth * bytesPerPixel;
+				if (mipmapData[i].remaining() != curSize) {
+					throw new IllegalArgumentException("Mipmap level " + i +
+							" didn't match expected data size (expected " + curSize + ", got " +
+							mipmapData[i].remaining() + ")");
+				}
+				/* Change Daniel Senff
+				 * I got the problem, that MipMaps below the dimension of 8x8 blocks with DXT5
+				 * where assume smaller than they are created.
+				 * Assumed: < 16byte where 16byte where used by the me.nallar.jdds.internal.compression. */
 				if (mipmapWidth > 1) mipmapWidth /= 2;
 				if (mipmapHeight > 1) mipmapHeight /= 2;
-				curSize = computeCompressedBlockSize(mipmapWidth, mipmapHeight, 1, d3dFormat);
-			} else {
-				curSize /= 4;
+				if (mipmapDepth > 1) mipmapDepth /= 2;
+				totalSize += curSize;
 			}
-			totalSize += mipmapData[i].remaining();
 		}
 
 		// OK, create one large ByteBuffer to hold all of the mipmap data
-		totalSize += Header.writtenSize();
+		totalSize += Header.legacyWrittenSize();
 		ByteBuffer buf = ByteBuffer.allocate(totalSize);
-		buf.position(Header.writtenSize());
-		for (ByteBuffer aMipmapData : mipmapData) {
-			buf.put(aMipmapData);
+		buf.position(Header.legacyWrittenSize());
+		for (ByteBuffer[] mipmapData : sideMipmapData) {
+			for (ByteBuffer aMipmapData : mipmapData) {
+				buf.put(aMipmapData.duplicate());
+			}
 		}
 		this.buf = buf;
+		this.dataOffset = Header.legacyWrittenSize();
 
 		// Allocate and initialize a Header
 		header = new Header();
 		header.size = Header.size();
 		header.flags = DDSD_CAPS | DDSD_HEIGHT | DDSD_WIDTH | DDSD_PIXELFORMAT;
-		if (mipmapData.length > 1) {
+		header.ddsCaps1 = DDSCAPS_TEXTURE;
+		if (numMipMaps > 1) {
 			header.flags |= DDSD_MIPMAPCOUNT;
-			header.mipMapCountOrAux = mipmapData.length;
+			header.mipMapCountOrAux = numMipMaps;
+			header.ddsCaps1 |= DDSCAPS_COMPLEX | DDSCAPS_MIPMAP;
+		}
+		if (sideMipmapData.length == CUBEMAP_SIDES) {
+			header.ddsCaps1 |= DDSCAPS_COMPLEX;
+			header.ddsCaps2 |= DDSCAPS2_CUBEMAP | DDSCAPS2_CUBEMAP_ALLFACES;
+		} else if (depth > 1) {
+			header.flags |= DDSD_DEPTH;
+			header.backBufferCountOrDepth = depth;
+			header.ddsCaps1 |= DDSCAPS_COMPLEX;
+			header.ddsCaps2 |= DDSCAPS2_VOLUME;
 		}
 		header.width = width;
 		header.height = height;
@@ -675,6 +1280,10 @@ public class DDSImage {
 		header.pfSize = Header.pfSize();
 		// Not sure whether we can get away with leaving the rest of the
 		// header blank
+		if (d3dFormat == D3DFMT_BC7) {
+			setDX10Header(true);
+		}
+		layout = new Layout(this);
 	}
 
 	// Microsoft doesn't follow their own specifications and the
@@ -699,80 +1308,86 @@ public class DDSImage {
 												  int height,
 												  int depth,
 												  int compressionFormat) {
-		int blockSize = ((width + 3) / 4) * ((height + 3) / 4) * ((depth + 3) / 4);
-		switch (compressionFormat) {
-			case D3DFMT_DXT1:
-				blockSize *= 8;
-				break;
-			default:
-				blockSize *= 16;
-				break;
-		}
-		return blockSize;
-	}
-
-	private int mipMapWidth(int map) {
-		int width = getWidth();
-		for (int i = 0; i < map; i++) {
-			width >>= 1;
-		}
-		return Math.max(width, 1);
+		// every slice of a volume texture is compressed on its own
+		return ((width + 3) / 4) * ((height + 3) / 4) * depth * blockSizeInBytes(compressionFormat);
 	}
 
-	private int mipMapHeight(int map) {
-		int height = getHeight();
-		for (int i = 0; i < map; i++) {
-			height >>= 1;
-		}
-		return Math.max(height, 1);
+	/**
+	 * Depth of the <i>i</i>th mipmap of a volume texture, 1 for other textures
+	 */
+	public int mipMapDepth(int map) {
+		checkMipMap(map);
+		return layout.depth[map];
 	}
 
+	/**
+	 * Size of the <i>i</i>th mipmap including all of its volume slices
+	 */
 	public int mipMapSizeInBytes(int map) {
-		int width = mipMapWidth(map);
-		int height = mipMapHeight(map);
-		if (isCompressed()) {
-			int blockSize = (getCompressionFormat() == D3DFMT_DXT1 ? 8 : 16);
-			return ((width + 3) / 4) * ((height + 3) / 4) * blockSize;
-		} else {
-			return width * height * (getDepth() / 8);
-		}
+		checkMipMap(map);
+		return layout.size[map];
 	}
 
-	private int sideSizeInBytes() {
-		int numLevels = getNumMipMaps();
-		if (numLevels == 0) {
-			numLevels = 1;
-		}
-
-		int size = 0;
-		for (int i = 0; i < numLevels; i++) {
-			size += mipMapSizeInBytes(i);
+	private int sideShiftInBytes(int side) {
+		int face = Integer.numberOfTrailingZeros(side & DDSCAPS2_CUBEMAP_ALLFACES);
+		if (face >= Integer.SIZE) {
+			throw new RuntimeException("Illegal side: " + side);
 		}
-
-		return size;
+		// faces are stored in the order of their flags, +X first
+		return (face - Integer.numberOfTrailingZeros(DDSCAPS2_CUBEMAP_POSITIVEX)) * layout.sideSize;
 	}
 
-	private int sideShiftInBytes(int side) {
-		int[] sides = {
-				DDSCAPS2_CUBEMAP_POSITIVEX,
-				DDSCAPS2_CUBEMAP_NEGATIVEX,
-				DDSCAPS2_CUBEMAP_POSITIVEY,
-				DDSCAPS2_CUBEMAP_NEGATIVEY,
-				DDSCAPS2_CUBEMAP_POSITIVEZ,
-				DDSCAPS2_CUBEMAP_NEGATIVEZ
-		};
-
-		int shift = 0;
-		int sideSize = sideSizeInBytes();
-		for (int temp : sides) {
-			if ((temp & side) != 0) {
-				return shift;
+	/**
+	 * Immutable table of the dimensions, sizes and offsets of all mipmaps,
+	 * computed once from the header so the accessors don't have to loop.
+	 */
+	private static final class Layout {
+		// more levels than this would need textures larger than 2^32 pixels
+		static final int MAX_LEVELS = 32;
+
+		final int[] width;
+		final int[] height;
+		final int[] depth;
+		// size of one volume slice of each mipmap
+		final int[] sliceSize;
+		// size of each mipmap including all of its volume slices
+		final int[] size;
+		// offset of each mipmap from the start of its cubemap side
+		final int[] offset;
+		// size of all mipmaps of one cubemap side
+		final int sideSize;
+
+		Layout(DDSImage image) {
+			int levels = Math.max(image.getNumMipMaps(), 1);
+			width = new int[levels];
+			height = new int[levels];
+			depth = new int[levels];
+			sliceSize = new int[levels];
+			size = new int[levels];
+			offset = new int[levels];
+
+			boolean compressed = image.isCompressed();
+			int blockSize = compressed ? blockSizeInBytes(image.getCompressionFormat()) : 0;
+			int bytesPerPixel = image.getDepth() / 8;
+			int seek = 0;
+			for (int map = 0; map < levels; map++) {
+				int shift = Math.min(map, Integer.SIZE - 1);
+				width[map] = Math.max(image.getWidth() >> shift, 1);
+				height[map] = Math.max(image.getHeight() >> shift, 1);
+				depth[map] = Math.max(image.getVolumeDepth() >> shift, 1);
+				sliceSize[map] = compressed ?
+						((width[map] + 3) / 4) * ((height[map] + 3) / 4) * blockSize :
+						width[map] * height[map] * bytesPerPixel;
+				size[map] = sliceSize[map] * depth[map];
+				offset[map] = seek;
+				seek += size[map];
 			}
-
-			shift += sideSize;
+			sideSize = seek;
 		}
 
-		throw new RuntimeException("Illegal side: " + side);
+		int levels() {
+			return width.length;
+		}
 	}
 
 }
@@ -0,0 +1,114 @@
+package me.nallar.jdds.internal.jogl;
+
+import java.nio.*;
+
+
+/**
+ * The raw data of one mipmap level of one side of a {@link DDSImage},
+ * as it is stored in the file and ready to be uploaded with e.g. glCompressedTexImage2D.
+ * <p>
+ * The data is a read-only view of the image's buffer, so slices of a memory-mapped
+ * file are not copied. Format, offset and dimensions are computed once when the
+ * slices of the image are created.
+ * Instances are immutable and may be shared between threads.
+ */
+public final class MipSlice {
+
+	private final ByteBuffer data;
+	private final int side;
+	private final int level;
+	private final int width;
+	private final int height;
+	private final int depth;
+	private final int offset;
+	private final int pixelFormat;
+	private final boolean compressed;
+
+	MipSlice(final ByteBuffer data,
+			 final int side,
+			 final int level,
+			 final int width,
+			 final int height,
+			 final int depth,
+			 final int offset,
+			 final int pixelFormat,
+			 final boolean compressed) {
+		this.data = data;
+		this.side = side;
+		this.level = level;
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.offset = offset;
+		this.pixelFormat = pixelFormat;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * A new read-only little-endian view of the data, positioned at its start.
+	 * Each call returns an independent buffer, the bytes are not copied.
+	 */
+	public ByteBuffer getData() {
+		return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Cubemap side (DDSCAPS2_CUBEMAP_*) or 0 for 2D and volume textures
+	 */
+	public int getSide() {
+		return side;
+	}
+
+	/**
+	 * Mipmap level, 0 for the topmost
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Number of volume slices, 1 for other textures
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Absolute offset of the data in the file
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Size of the data in bytes
+	 */
+	public int getSize() {
+		return data.capacity();
+	}
+
+	/**
+	 * Pixel format of the data (D3DFMT_*)
+	 */
+	public int getPixelFormat() {
+		return pixelFormat;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	@Override
+	public String toString() {
+		return "MipSlice{side=" + side + ", level=" + level + ", " + width + 'x' + height + 'x' + depth +
+				", offset=" + offset + ", size=" + getSize() + ", format=0x" + Integer.toHexString(pixelFormat) + '}';
+	}
+}
@@ -39,12 +39,15 @@
 
 package me.nallar.jdds.internal.jogl;
 
+import me.nallar.jdds.JDDSMetrics.Stage;
+import me.nallar.jdds.internal.ddsutil.StageTimer;
 import me.nallar.jdds.internal.jogl.TEXImage.Header.EmbeddedBuffer;
 
 import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 
 /**
@@ -53,13 +56,18 @@ import java.util.*;
  * levels in one file. This class is currently minimal and does not
  * support all of the possible file formats.
  * http://www.realgpx.com/partage/texformat.htm
+ * <p>
+ * Reading only parses the header table, the embedded DDS images are
+ * views of the file's buffer which are parsed when they are first requested.
  */
 
 public class TEXImage {
 
 
+	private ByteBuffer buf;
 	private Header header;
-	private final Vector<DDSImage> embeddedMap;
+	// embedded images parsed so far, in the order of header.embeddedMap
+	private AtomicReferenceArray<DDSImage> embeddedMap;
 
 
 	/**
@@ -93,6 +101,100 @@ public class TEXImage {
 		return header.height;
 	}
 
+	/**
+	 * Number of format tables in the header of a TEX-file
+	 */
+	public static final int TABLES = 5;
+
+	/**
+	 * Number of embedded maps per format table, one for each mipmap level
+	 */
+	public static final int MAPS_PER_TABLE = 8;
+
+	/**
+	 * The format table (0..TABLES - 1) storing maps of the pixel format,
+	 * -1 if a TEX-file can't hold the format.
+	 */
+	public static int tableOf(int d3dFormat) {
+		switch (d3dFormat) {
+			case DDSImage.D3DFMT_R8G8B8:
+			case DDSImage.D3DFMT_X8R8G8B8:
+			case DDSImage.D3DFMT_R5G6B5:
+			case DDSImage.D3DFMT_X1R5G5B5:
+				return 0;
+			case DDSImage.D3DFMT_A8R8G8B8:
+			case DDSImage.D3DFMT_A4R4G4B4:
+			case DDSImage.D3DFMT_DXT2:
+			case DDSImage.D3DFMT_DXT3:
+			case DDSImage.D3DFMT_DXT4:
+				return 1;
+			case DDSImage.D3DFMT_A1R5G5B5:
+				return 2;
+			case DDSImage.D3DFMT_DXT1:
+				return 3;
+			case DDSImage.D3DFMT_DXT5:
+				return 4;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Writes a TEX-file embedding the given DDS images.
+	 * The images are streamed into the file one after another,
+	 * the header table is written last once all offsets and sizes are known.
+	 *
+	 * @param file   File object to write to
+	 * @param width  width of the topmost mipmap
+	 * @param height height of the topmost mipmap
+	 * @param tables the embedded images of each format table, indexed by [table][mipmap level],
+	 *               missing tables and null entries are left blank
+	 * @throws java.io.IOException if an I/O exception occurred
+	 */
+	public static void write(File file, int width, int height, DDSImage[][] tables) throws IOException {
+		if (tables.length > TABLES) {
+			throw new IllegalArgumentException("A TEX-file has " + TABLES + " tables, got " + tables.length);
+		}
+		Header header = new Header();
+		header.width = width;
+		header.height = height;
+		header.embeddedMap = new ArrayList<>();
+		for (DDSImage[] table : tables) {
+			if (table != null && table.length > MAPS_PER_TABLE) {
+				throw new IllegalArgumentException("A TEX-table has " + MAPS_PER_TABLE + " maps, got " + table.length);
+			}
+			if (table != null) {
+				header.mipMapCountOrAux = Math.max(header.mipMapCountOrAux, table.length);
+			}
+		}
+
+		StageTimer timer = StageTimer.start(Stage.WRITE);
+		int offset = Header.writtenSize();
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			FileChannel chan = fos.getChannel();
+			chan.position(offset);
+			for (int t = 0; t < tables.length; t++) {
+				for (int i = 0; tables[t] != null && i < tables[t].length; i++) {
+					if (tables[t][i] != null) {
+						int size = tables[t][i].writeTo(chan);
+						header.embeddedMap.add(new EmbeddedBuffer(t, i, offset, size));
+						offset += size;
+					}
+				}
+			}
+
+			ByteBuffer hdr = ByteBuffer.allocate(Header.writtenSize());
+			hdr.order(ByteOrder.LITTLE_ENDIAN);
+			header.write(hdr);
+			hdr.flip();
+			while (hdr.hasRemaining()) {
+				chan.write(hdr, hdr.position());
+			}
+			chan.force(true);
+		}
+		StageTimer.stop(timer, 0, width, height, -1, offset);
+	}
+
 
 	//----------------------------------------------------------------------
 	// Internals only below this point
@@ -106,7 +208,7 @@ public class TEXImage {
 		int width;                // width of input surface
 		int mipMapCountOrAux;     // number of mip-map levels requested (in this context), range of 1 to 8
 		int alphaBitDepth;        // depth of alpha buffer requested
-		Vector<EmbeddedBuffer> embeddedMap;
+		List<EmbeddedBuffer> embeddedMap;
 
 		void read(ByteBuffer buf) throws IOException {
 			int magic = buf.getInt();
@@ -122,15 +224,11 @@ public class TEXImage {
 			mipMapCountOrAux = buf.getInt();
 
 			embeddedMap = readHeaderTable(buf); // header data for embedded dds
-
-//			for (EmbeddedBuffer embBuffer : embeddedMap) {
-//				DDSImage image = DDSImage.read(embBuffer.buffer);
-//			}
 		}
 
-		private Vector<EmbeddedBuffer> readHeaderTable(ByteBuffer buf) {
-			int offset, size, currentPos;
-			Vector<EmbeddedBuffer> embeddedBuffer = new Vector<>();
+		private List<EmbeddedBuffer> readHeaderTable(ByteBuffer buf) throws IOException {
+			int offset, size;
+			List<EmbeddedBuffer> embeddedBuffer = new ArrayList<>();
 			/*
 			 *  iterate over 5 tables, mapping pixelformat
 			 *  Table #1 : r8g8b8, x8r8g8b8, r5g6b5, x1r5g5b5 
@@ -139,35 +237,46 @@ public class TEXImage {
 			 * 	Table #4 : DXT1 
 			 *  Table #5 : DXT5
 			 */
-			for (int t = 0; t < 5; t++) {
+			for (int t = 0; t < TABLES; t++) {
 				// iterate over 8 maps
-//				System.out.println("Table: "+t);
-				for (int i = 0; i < 8; i++) {
+				for (int i = 0; i < MAPS_PER_TABLE; i++) {
 					offset = buf.getInt();
 					size = buf.getInt();
-//					System.out.println("offset="+offset+" size="+size);
-					EmbeddedBuffer embBuffer = new EmbeddedBuffer();
 					if ((offset != -1) && (size != -1)) { // if not blank
-						currentPos = buf.position();
-						byte[] ddsbuffer = new byte[size];
-						buf.position(offset);
-						buf.get(ddsbuffer);
-						embBuffer.buffer = ByteBuffer.wrap(ddsbuffer);
-						embeddedBuffer.add(embBuffer);
-						buf.position(currentPos);
+						if (offset < 0 || size < 0 || offset > buf.limit() - size) {
+							throw new IOException("Embedded map " + t + "/" + i + " at " + offset +
+									" of " + size + " bytes exceeds the file of " + buf.limit() + " bytes");
+						}
+						// only the location is kept, the embedded dds is sliced when it is requested
+						embeddedBuffer.add(new EmbeddedBuffer(t, i, offset, size));
 					}
 				}
 			}
-			for (EmbeddedBuffer embeddedBuffer2 : embeddedBuffer) {
-				embeddedBuffer2.buffer.rewind();
-				embeddedBuffer2.buffer.order(ByteOrder.LITTLE_ENDIAN);
-			}
-
 			return embeddedBuffer;
 		}
 
-		class EmbeddedBuffer {
-			ByteBuffer buffer;
+		static class EmbeddedBuffer {
+			final int table;
+			final int map;
+			final int offset;
+			final int size;
+
+			EmbeddedBuffer(int table, int map, int offset, int size) {
+				this.table = table;
+				this.map = map;
+				this.offset = offset;
+				this.size = size;
+			}
+
+			/**
+			 * A little-endian view of the embedded dds, buf is not moved
+			 */
+			ByteBuffer slice(ByteBuffer buf) {
+				ByteBuffer ddsbuffer = buf.duplicate();
+				ddsbuffer.limit(offset + size);
+				ddsbuffer.position(offset);
+				return ddsbuffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+			}
 		}
 
 		// buf must be in little-endian byte order
@@ -178,11 +287,18 @@ public class TEXImage {
 			buf.putInt(alphaBitDepth);
 			buf.putInt(mipMapCountOrAux);
 
-			// header table
-
-
-			// embedded buffer
+			// header table, offset and size of each embedded dds or -1 if blank
+			int[][] entries = new int[TABLES * MAPS_PER_TABLE][];
+			for (EmbeddedBuffer embeddedBuffer : embeddedMap) {
+				entries[embeddedBuffer.table * MAPS_PER_TABLE + embeddedBuffer.map] =
+						new int[]{embeddedBuffer.offset, embeddedBuffer.size};
+			}
+			for (int[] entry : entries) {
+				buf.putInt(entry == null ? -1 : entry[0]);
+				buf.putInt(entry == null ? -1 : entry[1]);
+			}
 
+			// the embedded dds follow the header, see TEXImage#write
 		}
 
 		private static int writtenSize() {
@@ -191,36 +307,54 @@ public class TEXImage {
 	}
 
 	private TEXImage() {
-		embeddedMap = new Vector<>();
 	}
 
 	private void readFromFile(File file) throws IOException {
-		FileInputStream fis = new FileInputStream(file);
-		FileChannel chan = fis.getChannel();
-		ByteBuffer buf = chan.map(FileChannel.MapMode.READ_ONLY,
-				0, (int) file.length());
-		readFromBuffer(buf);
+		StageTimer timer = StageTimer.start(Stage.READ);
+		try (FileInputStream fis = new FileInputStream(file)) {
+			// the mapping stays valid after the channel is closed
+			FileChannel chan = fis.getChannel();
+			ByteBuffer buf = chan.map(FileChannel.MapMode.READ_ONLY,
+					0, (int) file.length());
+			readFromBuffer(buf);
+		}
+		StageTimer.stop(timer, 0, getWidth(), getHeight(), -1, buf.capacity());
 	}
 
 	private void readFromBuffer(ByteBuffer buf) throws IOException {
-		ByteBuffer buf1 = buf;
+		StageTimer timer = StageTimer.start(Stage.HEADER);
+		this.buf = buf;
 		buf.order(ByteOrder.LITTLE_ENDIAN);
 		header = new Header();
 		header.read(buf);
-		for (EmbeddedBuffer embBuffer : header.embeddedMap) {
-			embBuffer.buffer.rewind();
-			embeddedMap.add(DDSImage.read(embBuffer.buffer));
-		}
+		embeddedMap = new AtomicReferenceArray<>(header.embeddedMap.size());
+		StageTimer.stop(timer, 0, getWidth(), getHeight(), -1, Header.writtenSize());
 	}
 
 	/**
 	 * Get a {@link DDSImage} embedded in this TEX-file.
+	 * It is parsed on the first request, later requests return the same image.
 	 *
 	 * @param index
 	 * @return
+	 * @throws IOException if the embedded image is not a valid DDS
+	 */
+	public DDSImage getEmbeddedMaps(int index) throws IOException {
+		DDSImage image = embeddedMap.get(index);
+		if (image == null) {
+			image = DDSImage.read(header.embeddedMap.get(index).slice(buf));
+			if (!embeddedMap.compareAndSet(index, null, image)) {
+				image = embeddedMap.get(index);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Number of {@link DDSImage}s embedded in this TEX-file.
 	 */
-	public DDSImage getEmbeddedMaps(int index) {
-		return embeddedMap.get(index);
+	public int getNumEmbeddedMaps() {
+		return embeddedMap.length();
 	}
 
 }
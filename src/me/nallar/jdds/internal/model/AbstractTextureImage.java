@@ -79,7 +79,7 @@ public abstract class AbstractTextureImage implements TextureImage {
 
 
 	/**
-	 * Returns true if the dds-file is compressed as DXT1-5
+	 * Returns true if the dds-file is block compressed, as DXT1-5, BC4 (ATI1), BC5 (ATI2) or BC7
 	 *
 	 * @return boolean
 	 */
@@ -5,12 +5,23 @@ package me.nallar.jdds.internal.model;
 
 import gr.zdimensions.jsquish.Squish;
 import gr.zdimensions.jsquish.Squish.CompressionType;
+import me.nallar.jdds.JDDSMetrics.Stage;
+import me.nallar.jdds.internal.compression.BC7BlockCodec;
+import me.nallar.jdds.internal.compression.BC7Encoder;
+import me.nallar.jdds.internal.compression.ChannelOrder;
+import me.nallar.jdds.internal.compression.CompressionQuality;
 import me.nallar.jdds.internal.compression.DXTBufferCompressor;
+import me.nallar.jdds.internal.compression.RGTCBlockCodec;
 import me.nallar.jdds.internal.ddsutil.PixelFormats;
+import me.nallar.jdds.internal.ddsutil.StageTimer;
+import me.nallar.jdds.internal.ddsutil.TaskExecutors;
+import me.nallar.jdds.internal.jogl.DDSImage;
 
 import javax.activation.UnsupportedDataTypeException;
 import java.awt.image.*;
 import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -26,10 +37,186 @@ public abstract class AbstractTextureMap implements TextureMap {
 	@Override
 	public ByteBuffer[] getDXTCompressedBuffer(final int pixelformat)
 			throws UnsupportedDataTypeException {
+		if (PixelFormats.isRGTCCompressed(pixelformat)) {
+			ByteBuffer[] mipmapBuffer = new ByteBuffer[getMipMapCount()];
+			for (int i = 0; i < mipmapBuffer.length; i++) {
+				TextureSurface surface = getSurface(i);
+				StageTimer timer = StageTimer.start(Stage.COMPRESS);
+				mipmapBuffer[i] = compressRGTC(surface, pixelformat == DDSImage.D3DFMT_ATI2);
+				StageTimer.stop(timer, pixelformat, surface.getWidth(), surface.getHeight(), i, mipmapBuffer[i].remaining());
+			}
+			return mipmapBuffer;
+		}
+		if (PixelFormats.isBC7Compressed(pixelformat))
+			return getBC7CompressedBuffer(BC7Encoder.DEFAULT, null);
 		CompressionType compressionType = PixelFormats.getSquishCompressionFormat(pixelformat);
 		return this.getDXTCompressedBuffer(compressionType);
 	}
 
+	@Override
+	public ByteBuffer[] getBC7CompressedBuffer(final BC7Encoder encoder, ExecutorService executor) {
+		ByteBuffer[] mipmapBuffer = new ByteBuffer[getMipMapCount()];
+		boolean temporaryExecutor = executor == null;
+		if (temporaryExecutor)
+			executor = TaskExecutors.newTemporaryExecutor(Runtime.getRuntime().availableProcessors());
+		try {
+			for (int i = 0; i < mipmapBuffer.length; i++) {
+				TextureSurface surface = getSurface(i);
+				StageTimer timer = StageTimer.start(Stage.COMPRESS);
+				mipmapBuffer[i] = compressBC7(surface, encoder, executor);
+				StageTimer.stop(timer, DDSImage.D3DFMT_BC7, surface.getWidth(), surface.getHeight(), i,
+						mipmapBuffer[i].remaining());
+			}
+		} finally {
+			if (temporaryExecutor)
+				executor.shutdownNow();
+		}
+		return mipmapBuffer;
+	}
+
+	@Override
+	public ByteBuffer[] getDXTCompressedBuffer(final CompressionType compressionType,
+											   final List<CompressionQuality> qualities) {
+		ByteBuffer[] mipmapBuffer = new ByteBuffer[getMipMapCount()];
+		for (int i = 0; i < mipmapBuffer.length; i++) {
+			CompressionQuality quality = new CompressionQuality();
+			mipmapBuffer[i] = compressLevel(i, compressionType, quality);
+			qualities.add(quality);
+		}
+		return mipmapBuffer;
+	}
+
+	/**
+	 * D3DFMT_R8G8B8, D3DFMT_X8R8G8B8 and D3DFMT_A8R8G8B8 are stored according to their bit masks,
+	 * i.e. in BGR, BGRX and BGRA byte order.
+	 */
+	@Override
+	public ByteBuffer[] getUncompressedBuffer(final int pixelformat)
+			throws UnsupportedDataTypeException {
+		switch (pixelformat) {
+			case DDSImage.D3DFMT_R8G8B8:
+			case DDSImage.D3DFMT_X8R8G8B8:
+			case DDSImage.D3DFMT_A8R8G8B8:
+				ByteBuffer[] mipmapBuffer = new ByteBuffer[getMipMapCount()];
+				for (int i = 0; i < mipmapBuffer.length; i++) {
+					mipmapBuffer[i] = toBGR(getSurface(i), pixelformat == DDSImage.D3DFMT_R8G8B8 ? 3 : 4);
+				}
+				return mipmapBuffer;
+			default:
+				throw new UnsupportedDataTypeException("Unsupported uncompressed pixelformat: " + pixelformat);
+		}
+	}
+
+	/**
+	 * Converts the RGBA-pixels of the surface into BGR or BGRA order.
+	 */
+	private static ByteBuffer toBGR(final TextureSurface surface, final int bytesPerPixel) {
+		ByteBuffer rgba = surface.getData();
+		int pixels = surface.getWidth() * surface.getHeight();
+		ByteBuffer target = ByteBuffer.allocate(pixels * bytesPerPixel);
+		for (int pixel = 0; pixel < pixels * 4; pixel += 4) {
+			target.put(rgba.get(pixel + 2));
+			target.put(rgba.get(pixel + 1));
+			target.put(rgba.get(pixel));
+			if (bytesPerPixel == 4)
+				target.put(rgba.get(pixel + 3));
+		}
+		target.flip();
+		return target;
+	}
+
+	/**
+	 * Compresses the MipMap of the given level with DXT, reporting it as {@link Stage#COMPRESS}.
+	 *
+	 * @param level
+	 * @param compressionType
+	 * @return
+	 */
+	protected ByteBuffer compressLevel(final int level, final Squish.CompressionType compressionType) {
+		return compressLevel(level, compressionType, null);
+	}
+
+	/**
+	 * Compresses the MipMap of the given level with DXT, reporting it as {@link Stage#COMPRESS}.
+	 *
+	 * @param level
+	 * @param compressionType
+	 * @param quality         receives the error of the compressed pixels, may be null
+	 * @return
+	 */
+	protected ByteBuffer compressLevel(final int level,
+									   final Squish.CompressionType compressionType,
+									   final CompressionQuality quality) {
+		TextureSurface surface = getSurface(level);
+		StageTimer timer = StageTimer.start(Stage.COMPRESS);
+		ByteBuffer compressed = compress(surface, compressionType, quality);
+		if (timer != null)
+			StageTimer.stop(timer, PixelFormats.getD3DFormat(compressionType),
+					surface.getWidth(), surface.getHeight(), level, compressed.remaining());
+		return compressed;
+	}
+
+	/**
+	 * Number of contained MipMaps.
+	 *
+	 * @return
+	 */
+	public abstract int getMipMapCount();
+
+	/**
+	 * Returns the {@link TextureSurface} of the given level.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public abstract TextureSurface getSurface(final int index);
+
+	/**
+	 * Compresses the surface into BC4 (ATI1) or BC5 (ATI2) blocks.
+	 *
+	 * @param surface
+	 * @param twoChannels true for BC5, false for BC4
+	 * @return
+	 */
+	public ByteBuffer compressRGTC(final TextureSurface surface, final boolean twoChannels) {
+		int width = surface.getWidth();
+		int height = surface.getHeight();
+		ByteBuffer compressed = ByteBuffer.allocate(RGTCBlockCodec.getStorageRequirements(width, height, twoChannels));
+		RGTCBlockCodec.compressImage(surface.getData(), width, height, twoChannels, compressed);
+		compressed.flip();
+		return compressed;
+	}
+
+	/**
+	 * Compresses the surface into BC7 blocks, using a temporary thread pool.
+	 *
+	 * @param surface
+	 * @param encoder search budget of the encoder
+	 * @return
+	 */
+	public ByteBuffer compressBC7(final TextureSurface surface, final BC7Encoder encoder) {
+		return compressBC7(surface, encoder, null);
+	}
+
+	/**
+	 * Compresses the surface into BC7 blocks.
+	 *
+	 * @param surface
+	 * @param encoder  search budget of the encoder
+	 * @param executor executor compressing the blocks, if null a temporary pool is used
+	 * @return
+	 */
+	public ByteBuffer compressBC7(final TextureSurface surface,
+								  final BC7Encoder encoder,
+								  final ExecutorService executor) {
+		int width = surface.getWidth();
+		int height = surface.getHeight();
+		ByteBuffer compressed = ByteBuffer.allocate(BC7BlockCodec.getStorageRequirements(width, height));
+		encoder.compressImage(surface.getData(), width, height, width * 4, ChannelOrder.RGBA, compressed, executor);
+		compressed.flip();
+		return compressed;
+	}
+
 	/**
 	 * @param bi
 	 * @param compressionType
@@ -41,4 +228,39 @@ public abstract class AbstractTextureMap implements TextureMap {
 		return compi.getByteBuffer();
 	}
 
+	/**
+	 * Compresses the surface, reading off-heap surfaces without creating a {@link BufferedImage}.
+	 *
+	 * @param surface
+	 * @param compressionType
+	 * @return
+	 */
+	public ByteBuffer compress(final TextureSurface surface,
+							   final Squish.CompressionType compressionType) {
+		return compress(surface, compressionType, null);
+	}
+
+	/**
+	 * Compresses the surface, measuring the error of the compressed pixels while doing so.
+	 *
+	 * @param surface
+	 * @param compressionType
+	 * @param quality         receives the error of the compressed pixels, may be null
+	 * @return
+	 */
+	public ByteBuffer compress(final TextureSurface surface,
+							   final Squish.CompressionType compressionType,
+							   final CompressionQuality quality) {
+		if (surface.isImageBacked())
+			return new DXTBufferCompressor(surface.getImage(), compressionType).getByteBuffer(quality);
+
+		int width = surface.getWidth();
+		int height = surface.getHeight();
+		ByteBuffer compressed = ByteBuffer.allocate(Squish.getStorageRequirements(width, height, compressionType));
+		DXTBufferCompressor.compressBuffer(surface.getData(), width, height, width * 4,
+				ChannelOrder.RGBA, compressionType, null, compressed, quality);
+		compressed.flip();
+		return compressed;
+	}
+
 }
@@ -4,10 +4,9 @@ package me.nallar.jdds.internal.model;
  *
  */
 
-import gr.zdimensions.jsquish.Squish.CompressionType;
-import me.nallar.jdds.internal.compression.ARGBBufferDecompressor;
+import me.nallar.jdds.internal.compression.BitMaskBufferDecompressor;
+import me.nallar.jdds.internal.compression.BitMaskDecoder;
 import me.nallar.jdds.internal.compression.BufferDecompressor;
-import me.nallar.jdds.internal.compression.DXTBufferDecompressor;
 import me.nallar.jdds.internal.ddsutil.PixelFormats;
 import me.nallar.jdds.internal.jogl.DDSImage;
 
@@ -78,24 +77,29 @@ public class DDSFile extends AbstractTextureImage {
 
 			BufferDecompressor bufferDecompressor;
 			if (isCompressed()) {
-				CompressionType compressionType =
-						PixelFormats.getSquishCompressionFormat(ddsimage.getPixelFormat());
-				bufferDecompressor = new DXTBufferDecompressor(
+				bufferDecompressor = BufferDecompressor.forPixelFormat(
 						data,
 						width,
 						height,
-						compressionType);
+						ddsimage.getPixelFormat());
 			} else {
-				bufferDecompressor = new ARGBBufferDecompressor(
+				bufferDecompressor = new BitMaskBufferDecompressor(
 						data,
 						width,
 						height,
-						this.pixelformat);
+						BitMaskDecoder.get(ddsimage));
 			}
-			this.mipMaps.addMipMap(bufferDecompressor.getImage());
+			this.mipMaps.addMipMap(bufferDecompressor.getSurface());
 		}
 	}
 
+	/**
+	 * Releases the storage of all loaded MipMaps.
+	 */
+	public void releaseImageData() {
+		this.mipMaps.release();
+	}
+
 	@Override
 	public String toString() {
 		return this.file.getAbsolutePath() + PixelFormats.verbosePixelformat(this.pixelformat);
@@ -4,6 +4,7 @@
 package me.nallar.jdds.internal.model;
 
 import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.JDDSMetrics.Stage;
 import me.nallar.jdds.internal.ddsutil.*;
 import me.nallar.jdds.internal.jogl.DDSImage;
 
@@ -25,7 +26,7 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 	 */
 	public static final int TOP_MOST_MIP_MAP = 0;
 
-	final List<BufferedImage> mipmaps;
+	final List<TextureSurface> mipmaps;
 	/**
 	 * {@link Rescaler} providing the scaling algorithm.
 	 */
@@ -51,18 +52,19 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 	 * @param topmost
 	 */
 	public void generateMipMaps(BufferedImage topmost) {
+		StageTimer timer = StageTimer.start(Stage.MIPMAPS);
 		addMipMap(topmost);
-		System.out.println("Generate Mipmaps");
 
 		if (!DDSFile.isPowerOfTwo(topmost.getWidth())
 				&& !DDSFile.isPowerOfTwo(topmost.getHeight()))
 			throw new NonCubicDimensionException();
 
 		generateMipMapArray();
+		StageTimer.stop(timer, 0, topmost.getWidth(), topmost.getHeight(), -1, 0);
 	}
 
 	private void generateMipMapArray() {
-		BufferedImage topmost = getMipMaps().get(0);
+		BufferedImage topmost = getMipMap(0);
 		// dimensions of first map
 		int mipmapWidth = topmost.getWidth();
 		int mipmapHeight = topmost.getHeight();
@@ -86,22 +88,34 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 
 	@Override
 	public int getHeight() {
-		return getMipMap(TOP_MOST_MIP_MAP).getHeight();
+		return getSurface(TOP_MOST_MIP_MAP).getHeight();
 	}
 
 
 	@Override
 	public int getWidth() {
-		return getMipMap(TOP_MOST_MIP_MAP).getWidth();
+		return getSurface(TOP_MOST_MIP_MAP).getWidth();
 	}
 
 	/**
 	 * Returns a Map of the given level.
+	 * Off-heap MipMaps are copied into a new image on each call, see {@link TextureSurface#getImage()}.
 	 *
 	 * @param index
 	 * @return
 	 */
 	public BufferedImage getMipMap(final int index) {
+		return getMipMaps().get(index).getImage();
+	}
+
+	/**
+	 * Returns the {@link TextureSurface} of the given level.
+	 *
+	 * @param index
+	 * @return
+	 */
+	@Override
+	public TextureSurface getSurface(final int index) {
 		return getMipMaps().get(index);
 	}
 
@@ -112,13 +126,28 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 	 * @param image
 	 */
 	public void setMipMap(int mipmapIndex, BufferedImage image) {
+		setMipMap(mipmapIndex, TextureSurface.wrap(image));
+	}
+
+	/**
+	 * Set the given {@link TextureSurface} as MipMap in the index.
+	 *
+	 * @param mipmapIndex
+	 * @param surface
+	 */
+	public void setMipMap(int mipmapIndex, TextureSurface surface) {
 		if (getMipMaps().size() == mipmapIndex)
-			addMipMap(mipmapIndex, image);
+			addMipMap(mipmapIndex, surface);
 		else
-			getMipMaps().set(mipmapIndex, image);
+			getMipMaps().set(mipmapIndex, surface);
+	}
+
+	@Override
+	public int getMipMapCount() {
+		return this.numMipMaps;
 	}
 
-	private List<BufferedImage> getMipMaps() {
+	private List<TextureSurface> getMipMaps() {
 		return this.mipmaps;
 	}
 
@@ -126,11 +155,28 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 	 * @param image
 	 */
 	public void addMipMap(final BufferedImage image) {
-		getMipMaps().add(image);
+		addMipMap(TextureSurface.wrap(image));
 	}
 
-	private void addMipMap(final int mipmapIndex, final BufferedImage image) {
-		getMipMaps().add(mipmapIndex, image);
+	/**
+	 * @param surface
+	 */
+	public void addMipMap(final TextureSurface surface) {
+		getMipMaps().add(surface);
+	}
+
+	private void addMipMap(final int mipmapIndex, final TextureSurface surface) {
+		getMipMaps().add(mipmapIndex, surface);
+	}
+
+	/**
+	 * Releases the storage of all contained MipMaps.
+	 */
+	public void release() {
+		for (TextureSurface surface : getMipMaps()) {
+			surface.release();
+		}
+		getMipMaps().clear();
 	}
 
 	/**
@@ -145,8 +191,7 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 		ByteBuffer[] mipmapBuffer = new ByteBuffer[this.numMipMaps];
 
 		for (int j = 0; j < this.numMipMaps; j++) {
-			System.out.println("compress mipmap " + j);
-			mipmapBuffer[j] = compress(getMipMap(j), compressionType);
+			mipmapBuffer[j] = compressLevel(j, compressionType);
 		}
 		return mipmapBuffer;
 	}
@@ -157,7 +202,7 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 	public ByteBuffer[] getUncompressedBuffer() {
 		ByteBuffer[] mipmapBuffer = new ByteBuffer[numMipMaps];
 		for (int i = 0; i < numMipMaps; i++) {
-			mipmapBuffer[i] = ByteBuffer.wrap(ByteBufferedImage.convertBIintoARGBArray(getMipMap(i)));
+			mipmapBuffer[i] = getSurface(i).getData();
 		}
 		return mipmapBuffer;
 	}
@@ -200,7 +245,7 @@ public class MipMaps extends AbstractTextureMap implements Iterable<BufferedImag
 
 			@Override
 			public BufferedImage next() {
-				return mipmaps.get(count);
+				return mipmaps.get(count).getImage();
 			}
 
 			@Override
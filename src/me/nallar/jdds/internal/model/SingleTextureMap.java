@@ -4,7 +4,6 @@
 package me.nallar.jdds.internal.model;
 
 import gr.zdimensions.jsquish.Squish.CompressionType;
-import me.nallar.jdds.internal.ddsutil.ByteBufferedImage;
 
 import java.awt.image.*;
 import java.nio.*;
@@ -17,14 +16,40 @@ import java.nio.*;
  */
 public class SingleTextureMap extends AbstractTextureMap {
 
-	final BufferedImage bi;
+	final TextureSurface surface;
 
 	/**
 	 * @param bi
 	 */
 	public SingleTextureMap(final BufferedImage bi) {
+		this(TextureSurface.wrap(bi));
+	}
+
+	/**
+	 * @param surface
+	 */
+	public SingleTextureMap(final TextureSurface surface) {
 		super();
-		this.bi = bi;
+		this.surface = surface;
+	}
+
+	/**
+	 * @return the contained {@link TextureSurface}
+	 */
+	public TextureSurface getSurface() {
+		return this.surface;
+	}
+
+	@Override
+	public TextureSurface getSurface(final int index) {
+		if (index != 0)
+			throw new IndexOutOfBoundsException("A SingleTextureMap has no MipMap " + index);
+		return this.surface;
+	}
+
+	@Override
+	public int getMipMapCount() {
+		return 1;
 	}
 
 	/* (non-Javadoc)
@@ -33,7 +58,7 @@ public class SingleTextureMap extends AbstractTextureMap {
 	@Override
 	public ByteBuffer[] getDXTCompressedBuffer(final CompressionType compressionType) {
 		ByteBuffer[] buffer = new ByteBuffer[1];
-		buffer[0] = super.compress(bi, compressionType);
+		buffer[0] = compressLevel(0, compressionType);
 		return buffer;
 	}
 
@@ -43,7 +68,7 @@ public class SingleTextureMap extends AbstractTextureMap {
 	 */
 	@Override
 	public int getHeight() {
-		return this.bi.getHeight();
+		return this.surface.getHeight();
 	}
 
 	/* (non-Javadoc)
@@ -51,7 +76,7 @@ public class SingleTextureMap extends AbstractTextureMap {
 	 */
 	@Override
 	public int getWidth() {
-		return this.bi.getWidth();
+		return this.surface.getWidth();
 	}
 
 	/* (non-Javadoc)
@@ -60,7 +85,7 @@ public class SingleTextureMap extends AbstractTextureMap {
 	@Override
 	public ByteBuffer[] getUncompressedBuffer() {
 		ByteBuffer[] mipmapBuffer = new ByteBuffer[1];
-		mipmapBuffer[0] = ByteBuffer.wrap(ByteBufferedImage.convertBIintoARGBArray(this.bi));
+		mipmapBuffer[0] = this.surface.getData();
 		return mipmapBuffer;
 	}
 
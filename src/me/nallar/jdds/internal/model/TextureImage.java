@@ -28,7 +28,8 @@ public interface TextureImage {
 	 */
 	enum PixelFormat {
 		DXT5, DXT4, DXT3, DXT2, DXT1,
-		X8R8G8B8, R8G8B8,
+		ATI1, ATI2, BC7,
+		A8R8G8B8, X8R8G8B8, R8G8B8,
 		Unknown
 	}
 
@@ -1,10 +1,14 @@
 package me.nallar.jdds.internal.model;
 
 import gr.zdimensions.jsquish.Squish;
+import me.nallar.jdds.internal.compression.BC7Encoder;
+import me.nallar.jdds.internal.compression.CompressionQuality;
 
 import javax.activation.UnsupportedDataTypeException;
 import java.awt.image.*;
 import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Interface for TextureMaps.
@@ -37,6 +41,27 @@ public interface TextureMap {
 	 */
 	ByteBuffer[] getDXTCompressedBuffer(final Squish.CompressionType compressionType);
 
+	/**
+	 * All contained MipMaps compressed with DXT in {@link ByteBuffer},
+	 * measuring the error of each MipMap while it is compressed.
+	 *
+	 * @param compressionType
+	 * @param qualities       receives the error of each MipMap, from the largest to the smallest
+	 * @return
+	 */
+	ByteBuffer[] getDXTCompressedBuffer(final Squish.CompressionType compressionType,
+										final List<CompressionQuality> qualities);
+
+	/**
+	 * All contained MipMaps compressed with BC7 in {@link ByteBuffer}
+	 *
+	 * @param encoder  search budget of the encoder, e.g. {@link BC7Encoder#DEFAULT}
+	 * @param executor executor compressing the blocks of all MipMaps,
+	 *                 if null one temporary pool is used for all of them
+	 * @return
+	 */
+	ByteBuffer[] getBC7CompressedBuffer(final BC7Encoder encoder, final ExecutorService executor);
+
 	/**
 	 * All contained MipMaps as {@link ByteBuffer}
 	 *
@@ -44,6 +69,17 @@ public interface TextureMap {
 	 */
 	ByteBuffer[] getUncompressedBuffer();
 
+	/**
+	 * All contained MipMaps as {@link ByteBuffer} in the uncompressed pixelformat,
+	 * e.g. D3DFMT_R8G8B8.
+	 *
+	 * @param pixelformat
+	 * @return
+	 * @throws UnsupportedDataTypeException
+	 */
+	ByteBuffer[] getUncompressedBuffer(final int pixelformat)
+			throws UnsupportedDataTypeException;
+
 	/**
 	 * Returns a ByteBuffer for each MipMap.
 	 *
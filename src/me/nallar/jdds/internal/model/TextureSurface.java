@@ -0,0 +1,154 @@
+package me.nallar.jdds.internal.model;
+
+import me.nallar.jdds.internal.ddsutil.ByteBufferedImage;
+
+import java.awt.image.*;
+import java.nio.*;
+
+
+/**
+ * A single uncompressed texture surface, width * height pixels in RGBA-order.
+ * <p>
+ * Surfaces created by {@link #allocate(int, int)} or {@link #copyOf(int, int, ByteBuffer)}
+ * keep their pixels in a direct {@link ByteBuffer} outside of the java heap,
+ * so many decoded textures can be kept alive without growing the heap.
+ * {@link #getImage()} copies their pixels into a new heap {@link BufferedImage} on every call, which is not kept.
+ * Surfaces wrapping a {@link BufferedImage} keep using it as their storage.
+ * <p>
+ * After {@link #release()} the surface drops its storage and may no longer be used.
+ * The off-heap memory is given back once the buffer is collected.
+ */
+public class TextureSurface {
+
+	private final int width;
+	private final int height;
+	private ByteBuffer data;
+	private BufferedImage image;
+	private boolean released;
+
+	private TextureSurface(final int width, final int height, final ByteBuffer data, final BufferedImage image) {
+		this.width = width;
+		this.height = height;
+		this.data = data;
+		this.image = image;
+	}
+
+	/**
+	 * Allocates a new off-heap surface.
+	 *
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public static TextureSurface allocate(final int width, final int height) {
+		return new TextureSurface(width, height, ByteBuffer.allocateDirect(width * height * 4), null);
+	}
+
+	/**
+	 * Creates an off-heap surface holding a copy of the remaining RGBA pixels of the buffer.
+	 *
+	 * @param width
+	 * @param height
+	 * @param rgba   pixels in RGBA-order, the buffer's position is not changed
+	 * @return
+	 */
+	public static TextureSurface copyOf(final int width, final int height, final ByteBuffer rgba) {
+		TextureSurface surface = allocate(width, height);
+		ByteBuffer source = rgba.duplicate();
+		source.limit(source.position() + width * height * 4);
+		surface.data.put(source);
+		surface.data.clear();
+		return surface;
+	}
+
+	/**
+	 * Creates a surface using the {@link ByteBuffer} as storage, the buffer is not copied.
+	 *
+	 * @param width
+	 * @param height
+	 * @param rgba   pixels in RGBA-order, starting at position 0
+	 * @return
+	 */
+	public static TextureSurface wrap(final int width, final int height, final ByteBuffer rgba) {
+		if (rgba.capacity() < width * height * 4)
+			throw new IllegalArgumentException("Buffer has not the expected length: " + rgba.capacity() +
+					" instead of " + width * height * 4);
+		return new TextureSurface(width, height, rgba, null);
+	}
+
+	/**
+	 * Creates a surface using the {@link BufferedImage} as storage.
+	 *
+	 * @param image
+	 * @return
+	 */
+	public static TextureSurface wrap(final BufferedImage image) {
+		return new TextureSurface(image.getWidth(), image.getHeight(), null, image);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns true if the pixels are held in a {@link BufferedImage}.
+	 *
+	 * @return
+	 */
+	public synchronized boolean isImageBacked() {
+		checkReleased();
+		return data == null;
+	}
+
+	/**
+	 * Returns the pixels in RGBA-order as a new view positioned at 0.
+	 * For surfaces wrapping a {@link BufferedImage} the pixels are copied into a heap buffer.
+	 *
+	 * @return
+	 */
+	public synchronized ByteBuffer getData() {
+		checkReleased();
+		if (data == null)
+			return ByteBuffer.wrap(ByteBufferedImage.convertBIintoARGBArray(image));
+		ByteBuffer view = data.duplicate();
+		view.clear();
+		return view;
+	}
+
+	/**
+	 * Returns the surface as {@link BufferedImage}.
+	 * For surfaces wrapping a {@link BufferedImage} that image is returned, all others copy their pixels
+	 * into a new image on each call, which the surface doesn't keep.
+	 *
+	 * @return
+	 */
+	public synchronized BufferedImage getImage() {
+		checkReleased();
+		if (image != null)
+			return image;
+		return new ByteBufferedImage(width, height, getData());
+	}
+
+	/**
+	 * Drops the pixel storage of this surface.
+	 * No other methods may be called on this object once this is called.
+	 */
+	public synchronized void release() {
+		released = true;
+		data = null;
+		image = null;
+	}
+
+	public synchronized boolean isReleased() {
+		return released;
+	}
+
+	private void checkReleased() {
+		if (released)
+			throw new IllegalStateException("TextureSurface has been released");
+	}
+}
@@ -0,0 +1,242 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.compression.BC7BlockCodec;
+import me.nallar.jdds.internal.compression.BC7Encoder;
+import me.nallar.jdds.internal.compression.ChannelOrder;
+import org.junit.Test;
+
+import java.nio.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Decodes hand assembled BC7 blocks of the different modes and checks the encoder presets round trip.
+ */
+public class BC7BlockCodecTest {
+
+	@Test
+	public void decodesMode1WithSharedPBits() {
+		Block block = new Block(1);
+		block.put(13, 6); // partition 0xFF00, the lower two rows are subset 1
+		// endpoints s0e0, s0e1, s1e0, s1e1 of 6 bits per channel
+		block.put(63, 6).put(0, 6).put(0, 6).put(0, 6);
+		block.put(0, 6).put(0, 6).put(0, 6).put(0, 6);
+		block.put(0, 6).put(0, 6).put(0, 6).put(63, 6);
+		block.put(1, 1).put(0, 1); // shared p-bit per subset
+		block.indices(3, 15, 0, 7, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3);
+
+		byte[] rgba = decode(block);
+		assertPixel(rgba, 0, 255, 2, 2, 255);
+		assertPixel(rgba, 1, 2, 2, 2, 255);
+		assertPixel(rgba, 8, 0, 0, 0, 255);
+		// anchor of subset 1 at weight 27 of 64 between black and 253
+		assertPixel(rgba, 15, 0, 0, 107, 255);
+	}
+
+	@Test
+	public void decodesMode3WithEndpointPBits() {
+		Block block = new Block(3);
+		block.put(0, 6); // partition 0xCCCC, the right two columns are subset 1
+		block.put(127, 7).put(0, 7).put(0, 7).put(0, 7);
+		block.put(0, 7).put(127, 7).put(0, 7).put(0, 7);
+		block.put(0, 7).put(0, 7).put(0, 7).put(127, 7);
+		block.put(1, 1).put(0, 1).put(0, 1).put(1, 1);
+		block.indices(2, 15, 1, 2, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1);
+
+		byte[] rgba = decode(block);
+		assertPixel(rgba, 0, 171, 84, 1, 255);
+		assertPixel(rgba, 1, 84, 171, 0, 255);
+		assertPixel(rgba, 2, 0, 0, 0, 255);
+		assertPixel(rgba, 3, 1, 1, 255, 255);
+		assertPixel(rgba, 15, 0, 0, 84, 255);
+	}
+
+	@Test
+	public void decodesMode7WithAlpha() {
+		Block block = new Block(7);
+		block.put(13, 6);
+		block.put(31, 5).put(0, 5).put(0, 5).put(0, 5);
+		block.put(0, 5).put(0, 5).put(0, 5).put(0, 5);
+		block.put(0, 5).put(0, 5).put(31, 5).put(0, 5);
+		block.put(31, 5).put(0, 5).put(0, 5).put(31, 5);
+		block.put(1, 1).put(0, 1).put(0, 1).put(1, 1);
+		block.indices(2, 15, 0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 0, 1);
+
+		byte[] rgba = decode(block);
+		assertPixel(rgba, 0, 255, 4, 4, 255);
+		assertPixel(rgba, 7, 0, 0, 0, 0);
+		assertPixel(rgba, 8, 0, 0, 251, 0);
+		assertPixel(rgba, 15, 1, 1, 170, 84);
+	}
+
+	@Test
+	public void decodesMode4WithRotationAndIndexSelection() {
+		Block block = new Block(4);
+		block.put(1, 2); // alpha is swapped with red
+		block.put(1, 1); // colour uses the 3 bit, alpha the 2 bit indices
+		block.put(31, 5).put(0, 5);
+		block.put(0, 5).put(31, 5);
+		block.put(0, 5).put(0, 5);
+		block.put(0, 6).put(63, 6);
+		block.indices(2, 0, 1, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		block.indices(3, 0, 3, 7, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+		byte[] rgba = decode(block);
+		// colour at weight 27 of 64, alpha at weight 21 of 64, then red and alpha are swapped
+		assertPixel(rgba, 0, 84, 108, 0, 147);
+		assertPixel(rgba, 1, 255, 255, 0, 0);
+		assertPixel(rgba, 2, 0, 0, 0, 255);
+	}
+
+	@Test
+	public void decodesMode5WithRotation() {
+		Block block = new Block(5);
+		block.put(3, 2); // alpha is swapped with blue
+		block.put(0, 7).put(0, 7);
+		block.put(0, 7).put(0, 7);
+		block.put(127, 7).put(0, 7);
+		block.put(0x40, 8).put(0xC0, 8);
+		// colour indices, then alpha indices
+		block.indices(2, 0, 0, 0, 0, 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		block.indices(2, 0, 1, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+		byte[] rgba = decode(block);
+		assertPixel(rgba, 0, 0, 0, 106, 255);
+		assertPixel(rgba, 5, 0, 0, 192, 84);
+		assertPixel(rgba, 6, 0, 0, 64, 255);
+	}
+
+	@Test
+	public void decodesInvalidModeToTransparentBlack() {
+		byte[] block = new byte[BC7BlockCodec.BLOCK_SIZE];
+		block[15] = (byte) 0xFF; // no mode bit in the first byte
+		byte[] rgba = new byte[64];
+		Arrays.fill(rgba, (byte) 0x55);
+		BC7BlockCodec.decompressImage(ByteBuffer.wrap(block), 4, 4, rgba);
+		assertArrayEquals(new byte[64], rgba);
+	}
+
+	@Test
+	public void fastKeepsQuality() {
+		assertRoundTrips(BC7Encoder.FAST, 38);
+	}
+
+	@Test
+	public void defaultKeepsQuality() {
+		assertRoundTrips(BC7Encoder.DEFAULT, 43);
+	}
+
+	@Test
+	public void bestKeepsQuality() {
+		assertRoundTrips(BC7Encoder.BEST, 43);
+	}
+
+	/**
+	 * Round trips a full size image and two sizes ending in partial blocks.
+	 */
+	private static void assertRoundTrips(final BC7Encoder encoder, final double minPsnr) {
+		assertRoundTrip(encoder, 64, 64, minPsnr);
+		assertRoundTrip(encoder, 3, 5, minPsnr);
+		assertRoundTrip(encoder, 37, 23, minPsnr);
+	}
+
+	/**
+	 * Compresses a gradient with noise and an alpha ramp and checks the PSNR of the decoded pixels.
+	 */
+	private static void assertRoundTrip(final BC7Encoder encoder, final int width, final int height,
+										 final double minPsnr) {
+		byte[] source = image(width, height);
+		ByteBuffer blocks = ByteBuffer.allocate(BC7BlockCodec.getStorageRequirements(width, height));
+		encoder.compressImage(ByteBuffer.wrap(source), width, height, width * 4, ChannelOrder.RGBA, blocks);
+		assertEquals(0, blocks.remaining());
+		blocks.flip();
+
+		byte[] decoded = BC7BlockCodec.decompressImage(blocks, width, height, null);
+		assertEquals(source.length, decoded.length);
+		double psnr = psnr(source, decoded);
+		assertTrue(width + "x" + height + " PSNR " + psnr + " below " + minPsnr, psnr >= minPsnr);
+	}
+
+	/**
+	 * Red and green ramps, noisy blue and an alpha ramp, with the same steps for every size.
+	 */
+	static byte[] image(final int width, final int height) {
+		Random random = new Random(width * 31 + height);
+		byte[] rgba = new byte[width * height * 4];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int i = 4 * (y * width + x);
+				rgba[i] = (byte) (4 * x);
+				rgba[i + 1] = (byte) (4 * y);
+				rgba[i + 2] = (byte) (128 + random.nextInt(9) - 4);
+				rgba[i + 3] = (byte) (255 - 2 * x);
+			}
+		}
+		return rgba;
+	}
+
+	static double psnr(final byte[] expected, final byte[] actual) {
+		double error = 0;
+		for (int i = 0; i < expected.length; i++) {
+			int diff = (expected[i] & 0xFF) - (actual[i] & 0xFF);
+			error += diff * diff;
+		}
+		if (error == 0)
+			return Double.POSITIVE_INFINITY;
+		return 10 * Math.log10(255.0 * 255.0 * expected.length / error);
+	}
+
+	private static byte[] decode(final Block block) {
+		return BC7BlockCodec.decompressImage(block.buffer(), 4, 4, null);
+	}
+
+	private static void assertPixel(final byte[] rgba, final int pixel,
+									final int r, final int g, final int b, final int a) {
+		assertEquals("red of " + pixel, r, rgba[4 * pixel] & 0xFF);
+		assertEquals("green of " + pixel, g, rgba[4 * pixel + 1] & 0xFF);
+		assertEquals("blue of " + pixel, b, rgba[4 * pixel + 2] & 0xFF);
+		assertEquals("alpha of " + pixel, a, rgba[4 * pixel + 3] & 0xFF);
+	}
+
+	/**
+	 * Writes the fields of a 128 bit block, lowest bit first.
+	 */
+	private static final class Block {
+		private long low;
+		private long high;
+		private int position;
+
+		Block(final int mode) {
+			put(1 << mode, mode + 1);
+		}
+
+		Block put(final long value, final int count) {
+			for (int i = 0; i < count; i++, position++) {
+				long bit = (value >>> i) & 1;
+				if (position < 64)
+					low |= bit << position;
+				else
+					high |= bit << (position - 64);
+			}
+			return this;
+		}
+
+		/**
+		 * Writes the 16 indices, pixel 0 and the anchor of the second subset are written with one bit less.
+		 */
+		Block indices(final int bits, final int anchor, final int... indices) {
+			assertEquals(16, indices.length);
+			for (int i = 0; i < 16; i++)
+				put(indices[i], i == 0 || i == anchor ? bits - 1 : bits);
+			return this;
+		}
+
+		ByteBuffer buffer() {
+			assertEquals(128, position);
+			return ByteBuffer.allocate(BC7BlockCodec.BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+					.putLong(0, low).putLong(8, high);
+		}
+	}
+}
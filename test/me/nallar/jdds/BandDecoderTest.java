@@ -0,0 +1,86 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.compression.BC7BlockCodec;
+import me.nallar.jdds.internal.compression.BC7Encoder;
+import me.nallar.jdds.internal.compression.BandDecoder;
+import me.nallar.jdds.internal.compression.BitMaskDecoder;
+import me.nallar.jdds.internal.compression.ChannelOrder;
+import org.junit.Test;
+
+import java.nio.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that {@link BandDecoder#decodeRegion} matches the whole image and rejects regions outside of it.
+ */
+public class BandDecoderTest {
+
+	private static final int WIDTH = 37;
+	private static final int HEIGHT = 23;
+
+	@Test
+	public void decodesBlockRegionsLikeTheWholeImage() {
+		ByteBuffer blocks = bc7();
+		byte[] whole = BC7BlockCodec.decompressImage(blocks, WIDTH, HEIGHT, null);
+		assertRegion(BandDecoder.bc7(), blocks, whole, 0, 0, WIDTH, HEIGHT);
+		assertRegion(BandDecoder.bc7(), blocks, whole, 5, 6, 9, 11);
+		// the partial blocks at the right and bottom edge
+		assertRegion(BandDecoder.bc7(), blocks, whole, 33, 19, 4, 4);
+		assertRegion(BandDecoder.bc7(), blocks, whole, 36, 22, 1, 1);
+	}
+
+	@Test
+	public void decodesPixelRegionsLikeTheWholeImage() {
+		BitMaskDecoder decoder = BitMaskDecoder.get(32, 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000, false);
+		ByteBuffer pixels = ByteBuffer.wrap(BC7BlockCodecTest.image(WIDTH, HEIGHT));
+		byte[] whole = decoder.decode(pixels, WIDTH, HEIGHT, null);
+		assertRegion(BandDecoder.bitMask(decoder), pixels, whole, 3, 1, 7, 5);
+		assertRegion(BandDecoder.bitMask(decoder), pixels, whole, 36, 0, 1, HEIGHT);
+	}
+
+	@Test
+	public void rejectsRegionsOutsideOfTheImage() {
+		ByteBuffer blocks = bc7();
+		assertRejected(blocks, -1, 0, 4, 4);
+		assertRejected(blocks, 0, -1, 4, 4);
+		assertRejected(blocks, 34, 0, 4, 4);
+		assertRejected(blocks, 0, 20, 4, 4);
+		assertRejected(blocks, 0, 0, 0, 4);
+		assertRejected(blocks, 0, 0, 4, 0);
+		assertRejected(blocks, Integer.MAX_VALUE, 0, 4, 4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsShortData() {
+		ByteBuffer blocks = bc7();
+		blocks.limit(blocks.limit() - BC7BlockCodec.BLOCK_SIZE);
+		BandDecoder.bc7().decodeRegion(blocks, WIDTH, HEIGHT, 33, 19, 4, 4, null);
+	}
+
+	private static ByteBuffer bc7() {
+		ByteBuffer blocks = ByteBuffer.allocate(BC7BlockCodec.getStorageRequirements(WIDTH, HEIGHT));
+		BC7Encoder.FAST.compressImage(ByteBuffer.wrap(BC7BlockCodecTest.image(WIDTH, HEIGHT)), WIDTH, HEIGHT,
+				WIDTH * 4, ChannelOrder.RGBA, blocks);
+		blocks.flip();
+		return blocks;
+	}
+
+	private static void assertRegion(final BandDecoder decoder, final ByteBuffer data, final byte[] whole,
+									 final int x, final int y, final int width, final int height) {
+		byte[] region = decoder.decodeRegion(data, WIDTH, HEIGHT, x, y, width, height, null);
+		byte[] expected = new byte[width * height * 4];
+		for (int row = 0; row < height; row++)
+			System.arraycopy(whole, ((y + row) * WIDTH + x) * 4, expected, row * width * 4, width * 4);
+		assertArrayEquals(expected, region);
+	}
+
+	private static void assertRejected(final ByteBuffer data, final int x, final int y, final int width, final int height) {
+		try {
+			BandDecoder.bc7().decodeRegion(data, WIDTH, HEIGHT, x, y, width, height, null);
+			fail("Region " + x + "," + y + " " + width + "x" + height + " was decoded");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
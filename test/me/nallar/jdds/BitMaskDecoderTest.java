@@ -0,0 +1,78 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.compression.BitMaskDecoder;
+import org.junit.Test;
+
+import java.nio.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Decodes single pixels of the common uncompressed layouts.
+ */
+public class BitMaskDecoderTest {
+
+	@Test
+	public void decodesR5G6B5() {
+		BitMaskDecoder decoder = BitMaskDecoder.get(16, 0xF800, 0x07E0, 0x001F, 0, false);
+		assertDecodes(decoder, 0xF800, 255, 0, 0, 255);
+		assertDecodes(decoder, 0x07E0, 0, 255, 0, 255);
+		assertDecodes(decoder, 0x001F, 0, 0, 255, 255);
+		// 16 of 31, 32 of 63 and 16 of 31, rounded to the nearest 8 bit value
+		assertDecodes(decoder, 0x8410, 132, 130, 132, 255);
+	}
+
+	@Test
+	public void decodesA4R4G4B4() {
+		BitMaskDecoder decoder = BitMaskDecoder.get(16, 0x0F00, 0x00F0, 0x000F, 0xF000, false);
+		assertDecodes(decoder, 0x7F30, 255, 51, 0, 119);
+		assertDecodes(decoder, 0x000F, 0, 0, 255, 0);
+	}
+
+	@Test
+	public void decodesL8AsOpaqueGrey() {
+		BitMaskDecoder decoder = BitMaskDecoder.get(8, 0xFF, 0, 0, 0, true);
+		assertDecodes(decoder, 0x80, 128, 128, 128, 255);
+	}
+
+	@Test
+	public void decodesA8L8() {
+		BitMaskDecoder decoder = BitMaskDecoder.get(16, 0x00FF, 0, 0, 0xFF00, true);
+		assertDecodes(decoder, 0x40C0, 192, 192, 192, 64);
+	}
+
+	@Test
+	public void decodesA8AsBlack() {
+		BitMaskDecoder decoder = BitMaskDecoder.get(8, 0, 0, 0, 0xFF, false);
+		assertDecodes(decoder, 0x80, 0, 0, 0, 128);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMasksWiderThanThePixel() {
+		BitMaskDecoder.get(16, 0xFF0000, 0xFF00, 0xFF, 0, false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsShortData() {
+		BitMaskDecoder.get(16, 0xF800, 0x07E0, 0x001F, 0, false).decode(ByteBuffer.allocate(7), 2, 2, null);
+	}
+
+	/**
+	 * Decodes the pixel once alone and once behind another pixel
+	 */
+	private static void assertDecodes(final BitMaskDecoder decoder, final int pixel,
+									  final int r, final int g, final int b, final int a) {
+		int bytes = decoder.getBytesPerPixel();
+		ByteBuffer source = ByteBuffer.allocate(2 * bytes);
+		for (int i = 0; i < bytes; i++) {
+			source.put(i, (byte) ~(pixel >>> (8 * i)));
+			source.put(bytes + i, (byte) (pixel >>> (8 * i)));
+		}
+		byte[] rgba = decoder.decode(source, 2, 1, null);
+		assertEquals("red", r, rgba[4] & 0xFF);
+		assertEquals("green", g, rgba[5] & 0xFF);
+		assertEquals("blue", b, rgba[6] & 0xFF);
+		assertEquals("alpha", a, rgba[7] & 0xFF);
+	}
+}
@@ -0,0 +1,86 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.jogl.DDSImage;
+import org.junit.Test;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that uncompressed pixels described only by the DXGI_FORMAT of a DX10 header are decoded.
+ */
+public class DXGIFormatTest {
+
+	private static final int MAGIC = 0x20534444; // "DDS "
+
+	// offsets in a DDS-file with DX10 header
+	private static final int PIXEL_FORMAT_FLAGS = 80;
+	private static final int FOUR_CC = 84;
+	private static final int DXGI_FORMAT = 128;
+	private static final int DATA = 148;
+
+	@Test
+	public void decodesR8G8B8A8() throws IOException {
+		assertDecodes(DDSImage.DXGI_FORMAT_R8G8B8A8_UNORM, DDSImage.D3DFMT_A8B8G8R8);
+	}
+
+	@Test
+	public void decodesR8G8B8A8AsSRGB() throws IOException {
+		assertDecodes(DDSImage.DXGI_FORMAT_R8G8B8A8_UNORM_SRGB, DDSImage.D3DFMT_A8B8G8R8);
+	}
+
+	@Test
+	public void decodesB8G8R8A8AsSRGB() throws IOException {
+		assertDecodes(DDSImage.DXGI_FORMAT_B8G8R8A8_UNORM_SRGB, DDSImage.D3DFMT_A8R8G8B8);
+	}
+
+	@Test
+	public void ignoresAlphaOfB8G8R8X8AsSRGB() {
+		BufferedImage image = JDDS.readDDS(file(DDSImage.DXGI_FORMAT_B8G8R8X8_UNORM_SRGB, new byte[]{
+				0x00, 0x00, (byte) 0xFF, 0x00,
+				(byte) 0xFF, 0x00, 0x00, 0x00}));
+		assertEquals(0xFFFF0000, image.getRGB(0, 0));
+		assertEquals(0xFF0000FF, image.getRGB(0, 1));
+	}
+
+	/**
+	 * Decodes an opaque red and a half transparent blue pixel of the layout
+	 */
+	private static void assertDecodes(final int dxgiFormat, final int pixelformat) throws IOException {
+		byte[] pixels = pixelformat == DDSImage.D3DFMT_A8B8G8R8
+				? new byte[]{(byte) 0xFF, 0x00, 0x00, (byte) 0xFF, 0x00, 0x00, (byte) 0xFF, (byte) 0x80}
+				: new byte[]{0x00, 0x00, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00, 0x00, (byte) 0x80};
+		ByteBuffer file = file(dxgiFormat, pixels);
+		assertEquals(pixelformat, DDSImage.read(file.duplicate()).getPixelFormat());
+
+		BufferedImage image = JDDS.readDDS(file);
+		assertEquals(0xFFFF0000, image.getRGB(0, 0));
+		assertEquals(0x800000FF, image.getRGB(0, 1));
+	}
+
+	/**
+	 * A 1x2 DDS-file with a DX10 header
+	 */
+	private static ByteBuffer file(final int dxgiFormat, final byte[] pixels) {
+		ByteBuffer file = ByteBuffer.allocate(DATA + pixels.length).order(ByteOrder.LITTLE_ENDIAN);
+		file.putInt(0, MAGIC);
+		file.putInt(4, 124); // header size
+		file.putInt(8, DDSImage.DDSD_CAPS | DDSImage.DDSD_HEIGHT | DDSImage.DDSD_WIDTH | DDSImage.DDSD_PIXELFORMAT);
+		file.putInt(12, 2); // height
+		file.putInt(16, 1); // width
+		file.putInt(76, 32); // pixel format size
+		file.putInt(PIXEL_FORMAT_FLAGS, DDSImage.DDPF_FOURCC);
+		file.putInt(FOUR_CC, DDSImage.D3DFMT_DX10);
+		file.putInt(108, DDSImage.DDSCAPS_TEXTURE);
+		file.putInt(DXGI_FORMAT, dxgiFormat);
+		file.putInt(DXGI_FORMAT + 4, 3); // D3D10_RESOURCE_DIMENSION_TEXTURE2D
+		file.putInt(DXGI_FORMAT + 12, 1); // array size
+		((ByteBuffer) file.position(DATA)).put(pixels);
+		file.clear();
+		return file;
+	}
+}
@@ -0,0 +1,90 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.compression.RGTCBlockCodec;
+import org.junit.Test;
+
+import java.nio.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Decodes hand assembled BC4 and BC5 blocks and checks the encoder round trip.
+ */
+public class RGTCBlockCodecTest {
+
+	@Test
+	public void decodesEightValueCodebookAsGrey() {
+		// red0 > red1 interpolates six values between them
+		byte[] rgba = RGTCBlockCodec.decompressImage(block(200, 60, 0, 1, 2, 7), 4, 4, false, null);
+		assertPixel(rgba, 0, 200, 200, 200);
+		assertPixel(rgba, 1, 60, 60, 60);
+		assertPixel(rgba, 2, 180, 180, 180);
+		assertPixel(rgba, 3, 80, 80, 80);
+	}
+
+	@Test
+	public void decodesSixValueCodebookWithBlackAndWhite() {
+		// red0 <= red1 interpolates four values and adds 0 and 255
+		byte[] rgba = RGTCBlockCodec.decompressImage(block(60, 200, 2, 5, 6, 7), 4, 4, false, null);
+		assertPixel(rgba, 0, 88, 88, 88);
+		assertPixel(rgba, 1, 172, 172, 172);
+		assertPixel(rgba, 2, 0, 0, 0);
+		assertPixel(rgba, 3, 255, 255, 255);
+	}
+
+	@Test
+	public void decodesRedAndGreenBlocks() {
+		ByteBuffer blocks = ByteBuffer.allocate(2 * RGTCBlockCodec.BLOCK_SIZE);
+		blocks.put(block(200, 60, 0, 1, 0, 0)).put(block(10, 20, 1, 0, 0, 0));
+		blocks.flip();
+		byte[] rgba = RGTCBlockCodec.decompressImage(blocks, 4, 4, true, null);
+		assertPixel(rgba, 0, 200, 20, 0);
+		assertPixel(rgba, 1, 60, 10, 0);
+	}
+
+	@Test
+	public void roundTripsOddSizes() {
+		assertRoundTrip(3, 5, false);
+		assertRoundTrip(37, 23, true);
+	}
+
+	private static void assertRoundTrip(final int width, final int height, final boolean twoChannels) {
+		byte[] source = BC7BlockCodecTest.image(width, height);
+		ByteBuffer blocks = ByteBuffer.allocate(RGTCBlockCodec.getStorageRequirements(width, height, twoChannels));
+		RGTCBlockCodec.compressImage(ByteBuffer.wrap(source), width, height, twoChannels, blocks);
+		assertEquals(0, blocks.remaining());
+		blocks.flip();
+
+		byte[] decoded = RGTCBlockCodec.decompressImage(blocks, width, height, twoChannels, null);
+		for (int i = 0; i < width * height; i++) {
+			for (int channel = 0; channel < (twoChannels ? 2 : 1); channel++) {
+				int error = Math.abs((source[4 * i + channel] & 0xFF) - (decoded[4 * i + channel] & 0xFF));
+				assertTrue("error " + error + " of pixel " + i, error <= 2);
+			}
+			assertEquals(255, decoded[4 * i + 3] & 0xFF);
+		}
+	}
+
+	/**
+	 * A block of the two values, the first four pixels use the given indices, all others index 0
+	 */
+	private static ByteBuffer block(final int red0, final int red1, final int... indices) {
+		long bits = 0;
+		for (int i = 0; i < indices.length; i++)
+			bits |= (long) indices[i] << (3 * i);
+		ByteBuffer block = ByteBuffer.allocate(RGTCBlockCodec.BLOCK_SIZE);
+		block.put((byte) red0).put((byte) red1);
+		for (int i = 0; i < 6; i++)
+			block.put((byte) (bits >>> (8 * i)));
+		block.flip();
+		return block;
+	}
+
+	private static void assertPixel(final byte[] rgba, final int pixel, final int r, final int g, final int b) {
+		assertEquals("red of " + pixel, r, rgba[4 * pixel] & 0xFF);
+		assertEquals("green of " + pixel, g, rgba[4 * pixel + 1] & 0xFF);
+		assertEquals("blue of " + pixel, b, rgba[4 * pixel + 2] & 0xFF);
+		assertEquals("alpha of " + pixel, 255, rgba[4 * pixel + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,77 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.jogl.DDSImage;
+import me.nallar.jdds.internal.jogl.TEXImage;
+import me.nallar.jdds.internal.model.SingleTextureMap;
+import me.nallar.jdds.internal.model.TextureSurface;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks the pixels of the tables written by {@link JDDS#writeTEX}.
+ */
+public class TEXWriteTest {
+
+	// offset of the header table in a TEX-file, behind magic, width, height, alpha bit depth and MipMap count
+	private static final int TABLE = 20;
+	// offset of the pixels in an embedded dds
+	private static final int DATA = 128;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesA8R8G8B8AsBGRA() throws IOException {
+		File file = folder.newFile("argb.tex");
+		write(file, DDSImage.D3DFMT_A8R8G8B8);
+
+		assertPixels(file, DDSImage.D3DFMT_A8R8G8B8, new byte[]{
+				0x00, 0x00, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x00, 0x00, (byte) 0x80});
+
+		BufferedImage read = JDDS.read(file);
+		assertEquals(0xFFFF0000, read.getRGB(0, 0));
+		assertEquals(0x800000FF, read.getRGB(0, 1));
+	}
+
+	@Test
+	public void writesR8G8B8AsBGR() throws IOException {
+		File file = folder.newFile("rgb.tex");
+		write(file, DDSImage.D3DFMT_R8G8B8);
+
+		assertPixels(file, DDSImage.D3DFMT_R8G8B8, new byte[]{
+				0x00, 0x00, (byte) 0xFF,
+				(byte) 0xFF, 0x00, 0x00});
+	}
+
+	/**
+	 * Writes a 1x2 TEX-file of an opaque red and a half transparent blue pixel
+	 */
+	private static void write(final File file, final int pixelformat) throws IOException {
+		TextureSurface surface = TextureSurface.copyOf(1, 2, ByteBuffer.wrap(new byte[]{
+				(byte) 0xFF, 0x00, 0x00, (byte) 0xFF,
+				0x00, 0x00, (byte) 0xFF, (byte) 0x80}));
+		JDDS.writeTEX(file, new SingleTextureMap(surface), new int[]{pixelformat}, null);
+	}
+
+	/**
+	 * Checks the pixels of the topmost MipMap in the table of the pixelformat
+	 */
+	private static void assertPixels(final File file, final int pixelformat, final byte[] expected) throws IOException {
+		ByteBuffer bytes = UncompressedFormatTest.read(file);
+		int offset = bytes.getInt(TABLE + TEXImage.tableOf(pixelformat) * TEXImage.MAPS_PER_TABLE * 8);
+		int size = bytes.getInt(TABLE + TEXImage.tableOf(pixelformat) * TEXImage.MAPS_PER_TABLE * 8 + 4);
+		assertEquals(DATA + expected.length, size);
+		byte[] pixels = new byte[expected.length];
+		((ByteBuffer) bytes.position(offset + DATA)).get(pixels);
+		assertArrayEquals(expected, pixels);
+	}
+}
@@ -0,0 +1,97 @@
+package me.nallar.jdds;
+
+import me.nallar.jdds.internal.jogl.DDSImage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks that uncompressed pixels are written in the byte order their header declares.
+ */
+public class UncompressedFormatTest {
+
+	// offsets in a DDS-file, behind the magic
+	private static final int PIXEL_FORMAT_FLAGS = 80;
+	private static final int RGB_BIT_COUNT = 88;
+	private static final int RED_MASK = 92;
+	private static final int GREEN_MASK = 96;
+	private static final int BLUE_MASK = 100;
+	private static final int ALPHA_MASK = 104;
+	private static final int DATA = 128;
+
+	private static final int OPAQUE_RED = 0xFFFF0000;
+	private static final int GRADED_BLUE = 0x800000FF;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void autoWritesSmallImagesAsBGRA() throws IOException {
+		File file = folder.newFile("auto.dds");
+		JDDS.write(file, image(OPAQUE_RED, GRADED_BLUE), JDDS.AUTO, false);
+
+		ByteBuffer bytes = read(file);
+		assertEquals(0x41, bytes.getInt(PIXEL_FORMAT_FLAGS)); // DDPF_RGB | DDPF_ALPHAPIXELS
+		assertEquals(32, bytes.getInt(RGB_BIT_COUNT));
+		assertEquals(0x00FF0000, bytes.getInt(RED_MASK));
+		assertEquals(0x0000FF00, bytes.getInt(GREEN_MASK));
+		assertEquals(0x000000FF, bytes.getInt(BLUE_MASK));
+		assertEquals(0xFF000000, bytes.getInt(ALPHA_MASK));
+		assertPixels(bytes, new byte[]{
+				0x00, 0x00, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x00, 0x00, (byte) 0x80});
+
+		BufferedImage read = JDDS.read(file);
+		assertEquals(OPAQUE_RED, read.getRGB(0, 0));
+		assertEquals(GRADED_BLUE, read.getRGB(0, 1));
+	}
+
+	@Test
+	public void writesA8R8G8B8AsBGRA() throws IOException {
+		File file = folder.newFile("argb.dds");
+		JDDS.write(file, image(OPAQUE_RED, GRADED_BLUE), DDSImage.D3DFMT_A8R8G8B8, false);
+
+		assertPixels(read(file), new byte[]{
+				0x00, 0x00, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x00, 0x00, (byte) 0x80});
+	}
+
+	@Test
+	public void writesR8G8B8AsBGR() throws IOException {
+		File file = folder.newFile("rgb.dds");
+		JDDS.write(file, image(OPAQUE_RED, 0xFF0000FF), DDSImage.D3DFMT_R8G8B8, false);
+
+		assertPixels(read(file), new byte[]{
+				0x00, 0x00, (byte) 0xFF,
+				(byte) 0xFF, 0x00, 0x00});
+	}
+
+	/**
+	 * A 1x2 image of the given ARGB-pixels
+	 */
+	static BufferedImage image(final int top, final int bottom) {
+		BufferedImage image = new BufferedImage(1, 2, BufferedImage.TYPE_4BYTE_ABGR);
+		image.setRGB(0, 0, top);
+		image.setRGB(0, 1, bottom);
+		return image;
+	}
+
+	static ByteBuffer read(final File file) throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void assertPixels(final ByteBuffer file, final byte[] expected) {
+		assertEquals(DATA + expected.length, file.limit());
+		byte[] pixels = new byte[expected.length];
+		((ByteBuffer) file.position(DATA)).get(pixels);
+		assertArrayEquals(expected, pixels);
+	}
+}
@@ -0,0 +1,309 @@
+package me.nallar.jdds.internal.compression;
+
+import gr.zdimensions.jsquish.Squish.CompressionType;
+import jdk.incubator.vector.*;
+
+import java.nio.*;
+
+
+/**
+ * {@link Kernels} using the Vector API of Java 17 and later, needs --add-modules jdk.incubator.vector.
+ * <p>
+ * A row of a DXT block is decoded as one 128 bit vector of 4 packed RGBA pixels, selecting the
+ * palette entries of the 2 or 3 bit indices with lane masks, which compile to blends on SSE4, AVX and NEON.
+ * The cluster errors of the encoder are computed for one candidate per lane, the lanes evaluate exactly the
+ * expressions of the scalar kernels, so both return bit identical errors.
+ */
+final class VectorKernels extends Kernels {
+
+	private static final VectorSpecies<Integer> PIXELS = IntVector.SPECIES_128;
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED.length() > 16 ? FloatVector.SPECIES_512 : FloatVector.SPECIES_PREFERRED;
+
+	/**
+	 * Rows of the workspace at the end of the sums, holding the least squares terms and the error of up to 16 + 16 lanes,
+	 * so vectors never cross a method boundary and the loads and stores need no masks.
+	 */
+	private static final int STRIDE = 32;
+	private static final int ALPHA2 = WORKSPACE;
+	private static final int BETA2 = ALPHA2 + STRIDE;
+	private static final int ALPHA_BETA = BETA2 + STRIDE;
+	private static final int RCP = ALPHA_BETA + STRIDE;
+	private static final int ALPHA_X = RCP + STRIDE;
+	private static final int BETA_X = ALPHA_X + 3 * STRIDE;
+	private static final int ERROR = BETA_X + 3 * STRIDE;
+
+	/**
+	 * Adding and subtracting 2^23 rounds a non-negative float below 2^23 to the nearest integer
+	 */
+	private static final float RINT = 8388608.0f;
+
+	private static final IntVector COLOUR_SHIFTS = IntVector.fromArray(PIXELS, new int[]{0, 2, 4, 6}, 0);
+	private static final IntVector DXT3_SHIFTS = IntVector.fromArray(PIXELS, new int[]{0, 4, 8, 12}, 0);
+	private static final IntVector DXT5_SHIFTS = IntVector.fromArray(PIXELS, new int[]{0, 3, 6, 9}, 0);
+
+	/**
+	 * Reverses the 4 bytes of every pixel
+	 */
+	private static final VectorShuffle<Byte> REVERSE_PIXEL = VectorShuffle.fromOp(BYTES, i -> (i & ~3) + 3 - (i & 3));
+
+	VectorKernels() {
+		if (PIXELS.length() != 4 || ERROR + STRIDE != SUMS_SIZE)
+			throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isSimd() {
+		return true;
+	}
+
+	@Override
+	public void decompressBlock(final ByteBuffer blocks,
+								final int offset,
+								final CompressionType type,
+								final int[] codes,
+								final byte[] rgba,
+								final int rgbaOffset,
+								final int rgbaStride) {
+		final int colours = offset + type.blockOffset;
+		final int a = u16(blocks, colours);
+		final int b = u16(blocks, colours + 2);
+		final int r0 = expand5(a >> 11), g0 = expand6(a >> 5), b0 = expand5(a);
+		final int r1 = expand5(b >> 11), g1 = expand6(b >> 5), b1 = expand5(b);
+
+		// the palette as packed RGBA, the same midpoints as DXTBlockDecoder
+		final int c0 = pack(r0, g0, b0, 255);
+		final int c1 = pack(r1, g1, b1, 255);
+		final int c2, c3;
+		if (type == CompressionType.DXT1 && a <= b) {
+			c2 = pack((r0 + r1) / 2, (g0 + g1) / 2, (b0 + b1) / 2, 255);
+			c3 = 0;
+		} else {
+			c2 = pack((2 * r0 + r1) / 3, (2 * g0 + g1) / 3, (2 * b0 + b1) / 3, 255);
+			c3 = pack((r0 + 2 * r1) / 3, (g0 + 2 * g1) / 3, (b0 + 2 * b1) / 3, 255);
+		}
+
+		long alphaIndices = 0;
+		if (type == CompressionType.DXT5) {
+			final int alpha0 = blocks.get(offset) & 0xFF;
+			final int alpha1 = blocks.get(offset + 1) & 0xFF;
+			codes[0] = alpha0;
+			codes[1] = alpha1;
+			if (alpha0 <= alpha1) {
+				for (int i = 1; i < 5; ++i)
+					codes[1 + i] = ((5 - i) * alpha0 + i * alpha1) / 5;
+				codes[6] = 0;
+				codes[7] = 255;
+			} else {
+				for (int i = 1; i < 7; ++i)
+					codes[1 + i] = ((7 - i) * alpha0 + i * alpha1) / 7;
+			}
+			for (int i = 0; i < 6; ++i)
+				alphaIndices |= (long) (blocks.get(offset + 2 + i) & 0xFF) << (8 * i);
+		}
+
+		for (int py = 0; py < 4; ++py) {
+			final IntVector indices = IntVector.broadcast(PIXELS, blocks.get(colours + 4 + py) & 0xFF)
+					.lanewise(VectorOperators.LSHR, COLOUR_SHIFTS)
+					.and(3);
+			IntVector pixels = IntVector.broadcast(PIXELS, c0)
+					.blend(c1, indices.eq(1))
+					.blend(c2, indices.eq(2))
+					.blend(c3, indices.eq(3));
+
+			if (type == CompressionType.DXT3) {
+				final IntVector alpha = IntVector.broadcast(PIXELS, u16(blocks, offset + 2 * py))
+						.lanewise(VectorOperators.LSHR, DXT3_SHIFTS)
+						.and(0xF)
+						.mul(0x11);
+				pixels = pixels.and(0x00FFFFFF).or(alpha.lanewise(VectorOperators.LSHL, 24));
+			} else if (type == CompressionType.DXT5) {
+				final IntVector alphaIndex = IntVector.broadcast(PIXELS, (int) (alphaIndices >>> (12 * py)) & 0xFFF)
+						.lanewise(VectorOperators.LSHR, DXT5_SHIFTS)
+						.and(7);
+				IntVector alpha = IntVector.broadcast(PIXELS, codes[0]);
+				for (int i = 1; i < 8; ++i)
+					alpha = alpha.blend(codes[i], alphaIndex.eq(i));
+				pixels = pixels.and(0x00FFFFFF).or(alpha.lanewise(VectorOperators.LSHL, 24));
+			}
+
+			// lanes are reinterpreted little-endian, so the packed ints become R, G, B, A bytes
+			pixels.reinterpretAsBytes().intoArray(rgba, rgbaOffset + py * rgbaStride);
+		}
+	}
+
+	@Override
+	public void reversePixelBytes(final byte[] source,
+								  final int sourceOffset,
+								  final byte[] target,
+								  final int targetOffset,
+								  final int pixels) {
+		final int length = pixels * 4;
+		final int bound = BYTES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += BYTES.length())
+			ByteVector.fromArray(BYTES, source, sourceOffset + i)
+					.rearrange(REVERSE_PIXEL)
+					.intoArray(target, targetOffset + i);
+		super.reversePixelBytes(source, sourceOffset + i, target, targetOffset + i, (length - i) / 4);
+	}
+
+	@Override
+	void clusterErrors3(final float[] sums, final int count, final int i, final float[] errors) {
+		int first = i;
+		if (i == 0 || i == count) {
+			// the only candidate with an empty start or end cluster, solved without the determinant
+			errors[i] = clusterError3(sums, count, i, i, null);
+			first++;
+		}
+		if (first > count)
+			return;
+		terms3(sums, count, i, first);
+		errors(sums, count, first, errors);
+	}
+
+	@Override
+	void clusterErrors4(final float[] sums, final int count, final int i, final int j, final float[] errors) {
+		int first = j;
+		if (i == j && (i == 0 || i == count)) {
+			// the only candidate with an empty start or end cluster, solved without the determinant
+			errors[j] = clusterError4(sums, count, i, j, j, null);
+			first++;
+		}
+		if (first > count)
+			return;
+		terms4(sums, count, i, j, first);
+		errors(sums, count, first, errors);
+	}
+
+	/**
+	 * The least squares terms of the 3 colour candidates (i, j) for j = first..count
+	 */
+	private static void terms3(final float[] sums, final int count, final int i, final int first) {
+		final float w0 = sums[SUM_WEIGHTS + i], wn = sums[SUM_WEIGHTS + count];
+		final float x0 = sums[SUM_X + i], xn = sums[SUM_X + count];
+		final float y0 = sums[SUM_Y + i], yn = sums[SUM_Y + count];
+		final float z0 = sums[SUM_Z + i], zn = sums[SUM_Z + count];
+		for (int j = first; j <= count; j += FLOATS.length()) {
+			final FloatVector wj = FloatVector.fromArray(FLOATS, sums, SUM_WEIGHTS + j);
+			final FloatVector xj = FloatVector.fromArray(FLOATS, sums, SUM_X + j);
+			final FloatVector yj = FloatVector.fromArray(FLOATS, sums, SUM_Y + j);
+			final FloatVector zj = FloatVector.fromArray(FLOATS, sums, SUM_Z + j);
+			final FloatVector x1 = xj.sub(x0), y1 = yj.sub(y0), z1 = zj.sub(z0);
+			final FloatVector alphaBeta = wj.sub(w0).mul(0.25f);
+			terms(sums, j,
+					alphaBeta.add(w0),
+					alphaBeta.add(FloatVector.broadcast(FLOATS, wn).sub(wj)),
+					alphaBeta);
+			x1.mul(0.5f).add(x0).intoArray(sums, ALPHA_X + j);
+			y1.mul(0.5f).add(y0).intoArray(sums, ALPHA_X + STRIDE + j);
+			z1.mul(0.5f).add(z0).intoArray(sums, ALPHA_X + 2 * STRIDE + j);
+			x1.mul(0.5f).add(FloatVector.broadcast(FLOATS, xn).sub(xj)).intoArray(sums, BETA_X + j);
+			y1.mul(0.5f).add(FloatVector.broadcast(FLOATS, yn).sub(yj)).intoArray(sums, BETA_X + STRIDE + j);
+			z1.mul(0.5f).add(FloatVector.broadcast(FLOATS, zn).sub(zj)).intoArray(sums, BETA_X + 2 * STRIDE + j);
+		}
+	}
+
+	/**
+	 * The least squares terms of the 4 colour candidates (i, j, k) for k = first..count
+	 */
+	private static void terms4(final float[] sums, final int count, final int i, final int j, final int first) {
+		final float w0 = sums[SUM_WEIGHTS + i];
+		final float w1 = sums[SUM_WEIGHTS + j] - w0;
+		final float wj = sums[SUM_WEIGHTS + j], wn = sums[SUM_WEIGHTS + count];
+		final float x0 = sums[SUM_X + i], x1 = sums[SUM_X + j] - x0, xj = sums[SUM_X + j], xn = sums[SUM_X + count];
+		final float y0 = sums[SUM_Y + i], y1 = sums[SUM_Y + j] - y0, yj = sums[SUM_Y + j], yn = sums[SUM_Y + count];
+		final float z0 = sums[SUM_Z + i], z1 = sums[SUM_Z + j] - z0, zj = sums[SUM_Z + j], zn = sums[SUM_Z + count];
+		for (int k = first; k <= count; k += FLOATS.length()) {
+			final FloatVector wk = FloatVector.fromArray(FLOATS, sums, SUM_WEIGHTS + k);
+			final FloatVector xk = FloatVector.fromArray(FLOATS, sums, SUM_X + k);
+			final FloatVector yk = FloatVector.fromArray(FLOATS, sums, SUM_Y + k);
+			final FloatVector zk = FloatVector.fromArray(FLOATS, sums, SUM_Z + k);
+			final FloatVector w2 = wk.sub(wj);
+			final FloatVector x2 = xk.sub(xj), y2 = yk.sub(yj), z2 = zk.sub(zj);
+			terms(sums, k,
+					w2.mul(ONE_NINTH).add(w0 + FOUR_NINTHS * w1),
+					w2.mul(FOUR_NINTHS).add(ONE_NINTH * w1).add(FloatVector.broadcast(FLOATS, wn).sub(wk)),
+					w2.add(w1).mul(TWO_NINTHS));
+			x2.mul(ONE_THIRD).add(x0 + TWO_THIRDS * x1).intoArray(sums, ALPHA_X + k);
+			y2.mul(ONE_THIRD).add(y0 + TWO_THIRDS * y1).intoArray(sums, ALPHA_X + STRIDE + k);
+			z2.mul(ONE_THIRD).add(z0 + TWO_THIRDS * z1).intoArray(sums, ALPHA_X + 2 * STRIDE + k);
+			x2.mul(TWO_THIRDS).add(ONE_THIRD * x1).add(FloatVector.broadcast(FLOATS, xn).sub(xk)).intoArray(sums, BETA_X + k);
+			y2.mul(TWO_THIRDS).add(ONE_THIRD * y1).add(FloatVector.broadcast(FLOATS, yn).sub(yk)).intoArray(sums, BETA_X + STRIDE + k);
+			z2.mul(TWO_THIRDS).add(ONE_THIRD * z1).add(FloatVector.broadcast(FLOATS, zn).sub(zk)).intoArray(sums, BETA_X + 2 * STRIDE + k);
+		}
+	}
+
+	private static void terms(final float[] sums, final int offset, final FloatVector alpha2, final FloatVector beta2, final FloatVector alphaBeta) {
+		alpha2.intoArray(sums, ALPHA2 + offset);
+		beta2.intoArray(sums, BETA2 + offset);
+		alphaBeta.intoArray(sums, ALPHA_BETA + offset);
+		FloatVector.broadcast(FLOATS, 1.0f).div(alpha2.mul(beta2).sub(alphaBeta.mul(alphaBeta))).intoArray(sums, RCP + offset);
+	}
+
+	/**
+	 * Lane-wise {@link Kernels#solveLeastSquares} of the terms for the candidates first..count, one channel at a time
+	 * so that each pass stays small enough for C2 to keep every vector in registers.
+	 * <p>
+	 * The determinant is never zero as every point has a weight of at least one, so this holds
+	 * for all candidates but the first of a row with i == j == 0 or i == j == count.
+	 */
+	private static void errors(final float[] sums, final int count, final int first, final float[] errors) {
+		channelError(sums, count, first, 0, GRID_X, GRID_X_RCP);
+		channelError(sums, count, first, 1, GRID_Y, GRID_Y_RCP);
+		channelError(sums, count, first, 2, GRID_Z, GRID_Z_RCP);
+		System.arraycopy(sums, ERROR + first, errors, first, count + 1 - first);
+	}
+
+	private static void channelError(final float[] sums, final int count, final int first, final int channel, final float grid, final float gridRcp) {
+		final float xx = sums[SUM_XX + channel];
+		final float metric = sums[METRIC + channel];
+		for (int k = first; k <= count; k += FLOATS.length()) {
+			final FloatVector alpha2 = FloatVector.fromArray(FLOATS, sums, ALPHA2 + k);
+			final FloatVector beta2 = FloatVector.fromArray(FLOATS, sums, BETA2 + k);
+			final FloatVector alphaBeta = FloatVector.fromArray(FLOATS, sums, ALPHA_BETA + k);
+			final FloatVector rcp = FloatVector.fromArray(FLOATS, sums, RCP + k);
+			final FloatVector alphaX = FloatVector.fromArray(FLOATS, sums, ALPHA_X + channel * STRIDE + k);
+			final FloatVector betaX = FloatVector.fromArray(FLOATS, sums, BETA_X + channel * STRIDE + k);
+			// Kernels.clamp: grid * gridRcp is exactly 1 for all three grids, and as the value is never negative the int
+			// cast is a floor, taken from rint as Java 17 does not intrinsify the float to int convert
+			final FloatVector aGrid = alphaX.mul(beta2).sub(betaX.mul(alphaBeta)).mul(rcp).max(0.0f).min(1.0f).mul(grid).add(0.5f);
+			final FloatVector bGrid = betaX.mul(alpha2).sub(alphaX.mul(alphaBeta)).mul(rcp).max(0.0f).min(1.0f).mul(grid).add(0.5f);
+			final FloatVector aRint = aGrid.add(RINT).sub(RINT);
+			final FloatVector bRint = bGrid.add(RINT).sub(RINT);
+			final FloatVector a = aRint.sub(1.0f, aRint.compare(VectorOperators.GT, aGrid)).mul(gridRcp);
+			final FloatVector b = bRint.sub(1.0f, bRint.compare(VectorOperators.GT, bGrid)).mul(gridRcp);
+			final FloatVector error = a.mul(a).mul(alpha2).add(b.mul(b).mul(beta2)).add(xx)
+					.add(a.mul(b).mul(alphaBeta).sub(a.mul(alphaX)).sub(b.mul(betaX)).mul(2.0f))
+					.mul(metric);
+			if (channel == 0) {
+				error.intoArray(sums, ERROR + k);
+			} else if (channel == 1) {
+				FloatVector.fromArray(FLOATS, sums, ERROR + k).add(error).intoArray(sums, ERROR + k);
+			} else {
+				FloatVector.fromArray(FLOATS, sums, ERROR + k).add(error)
+						.blend(Float.MAX_VALUE, rcp.eq(Float.POSITIVE_INFINITY))
+						.intoArray(sums, ERROR + k);
+			}
+		}
+	}
+
+
+	private static int u16(final ByteBuffer buffer, final int offset) {
+		return (buffer.get(offset) & 0xFF) | ((buffer.get(offset + 1) & 0xFF) << 8);
+	}
+
+	private static int expand5(final int value) {
+		final int v = value & 0x1f;
+		return (v << 3) | (v >> 2);
+	}
+
+	private static int expand6(final int value) {
+		final int v = value & 0x3f;
+		return (v << 2) | (v >> 4);
+	}
+
+	private static int pack(final int r, final int g, final int b, final int a) {
+		return r | (g << 8) | (b << 16) | (a << 24);
+	}
+}